@@ -0,0 +1,92 @@
+package ru.practicum.bench;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+// Записанные ответы моделей и ответы API провайдеров для бенчмарков
+public final class Payloads {
+    public static final String CODE_ANSWER = "code-answer";
+    public static final String TABLE_ANSWER = "table-answer";
+    public static final String CYRILLIC_ANSWER = "cyrillic-answer";
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private Payloads() {
+    }
+
+    public static String markdown(String name) {
+        return read("/payloads/" + name + ".md");
+    }
+
+    // Ответ OpenAI Responses API с текстом answer
+    public static String openAiResponse(String answer) {
+        ObjectNode root = tree("/payloads/openai-response.json");
+        ((ObjectNode) root.path("output").get(1).path("content").get(0)).put("text", answer);
+        return root.toString();
+    }
+
+    // Ответ в формате chat/completions (Sonar, OpenRouter, Grok, DeepSeek, Llama)
+    public static String chatCompletionResponse(String answer) {
+        ObjectNode root = tree("/payloads/chat-completion-response.json");
+        ((ObjectNode) root.path("choices").get(0).path("message")).put("content", answer);
+        return root.toString();
+    }
+
+    public static String anthropicResponse(String answer) {
+        ObjectNode root = tree("/payloads/anthropic-response.json");
+        ((ObjectNode) root.path("content").get(0)).put("text", answer);
+        return root.toString();
+    }
+
+    public static String geminiResponse(String answer) {
+        ObjectNode root = tree("/payloads/gemini-response.json");
+        ((ObjectNode) root.path("candidates").get(0).path("content").path("parts").get(0)).put("text", answer);
+        return root.toString();
+    }
+
+    // История чата из чередующихся вопросов и записанных ответов
+    public static List<Map<String, String>> history(int messages) {
+        String[] answers = {markdown(CODE_ANSWER), markdown(TABLE_ANSWER), markdown(CYRILLIC_ANSWER)};
+        List<Map<String, String>> history = new ArrayList<>(messages);
+        for (int i = 0; i < messages; i++) {
+            history.add(i % 2 == 0
+                    ? Map.of("role", "user", "content", "Вопрос номер " + i + ": объясни подробнее, с примерами кода")
+                    : Map.of("role", "assistant", "content", answers[(i / 2) % answers.length]));
+        }
+        return history;
+    }
+
+    // JPEG-данные по энтропии близки к случайным: детерминированный шум нужного размера
+    public static String base64Image(int sizeBytes) {
+        byte[] bytes = new byte[sizeBytes];
+        new Random(42).nextBytes(bytes);
+        return Base64.getEncoder().encodeToString(bytes);
+    }
+
+    private static ObjectNode tree(String resource) {
+        try {
+            return (ObjectNode) MAPPER.readTree(read(resource));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static String read(String resource) {
+        try (InputStream in = Payloads.class.getResourceAsStream(resource)) {
+            if (in == null) throw new IllegalArgumentException("Payload not found: " + resource);
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package ru.practicum.client;
+
+import org.openjdk.jmh.annotations.*;
+import ru.practicum.bench.Payloads;
+import ru.practicum.usage.UsageListener;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// Сборка тела запроса и разбор ответа каждого клиента; HTTP не участвует
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ClientSerializationBenchmark {
+    private static final String QUESTION = "Перепиши этот кэш на Caffeine и добавь метрики попаданий";
+
+    // Размер истории: 0 — первый вопрос, 6 — полный контекст ConversationContext
+    @Param({"0", "6"})
+    public int historySize;
+
+    private List<Map<String, String>> history;
+    private String base64Image;
+
+    private String answer;
+    private String openAiResponse;
+    private String chatCompletionResponse;
+    private String anthropicResponse;
+    private String geminiResponse;
+
+    private OpenAiClient openAi;
+    private AnthropicClient anthropic;
+    private GeminiClient gemini;
+    private SonarClient sonar;
+    private DeepSeekClient deepSeek;
+    private OpenRouterClient openRouter;
+    private GrokClient grok;
+    private LlamaClient llama;
+
+    @Setup
+    public void setup() {
+        history = Payloads.history(historySize);
+        base64Image = Payloads.base64Image(180 * 1024);
+
+        answer = Payloads.markdown(Payloads.CODE_ANSWER);
+        openAiResponse = Payloads.openAiResponse(answer);
+        chatCompletionResponse = Payloads.chatCompletionResponse(answer);
+        anthropicResponse = Payloads.anthropicResponse(answer);
+        geminiResponse = Payloads.geminiResponse(answer);
+
+        // HTTP-клиент не нужен: вызываются только сборка тела и разбор ответа
+        openAi = new OpenAiClient("http://localhost", "key", "gpt-5-nano", null, null, UsageListener.NONE);
+        anthropic = new AnthropicClient("http://localhost", "key", "claude-sonnet-4-20250514", null, null, UsageListener.NONE);
+        gemini = new GeminiClient("http://localhost", "key", "gemini-2.5-flash", null, null, UsageListener.NONE, () -> true);
+        sonar = new SonarClient("http://localhost", "key", "sonar", null, null, UsageListener.NONE);
+        deepSeek = new DeepSeekClient("http://localhost", "key", "deepseek-chat", null, null, UsageListener.NONE);
+        openRouter = new OpenRouterClient("http://localhost", "key", "moonshot/kimi-k2", null, null, UsageListener.NONE);
+        grok = new GrokClient("http://localhost", "key", "grok-4-fast", null, null, UsageListener.NONE);
+        llama = new LlamaClient("http://localhost", "key", "llama-4-scout", null, null, UsageListener.NONE);
+    }
+
+    @Benchmark
+    public String openAiRequest() throws Exception {
+        return openAi.createOpenAiRequestBody(QUESTION, history);
+    }
+
+    @Benchmark
+    public String openAiImageRequest() throws Exception {
+        return openAi.createOpenAiImageRequestBody(QUESTION, base64Image, history);
+    }
+
+    @Benchmark
+    public String openAiParse() throws Exception {
+        return openAi.parseOpenAiResponse(openAiResponse);
+    }
+
+    @Benchmark
+    public String anthropicRequest() throws Exception {
+        return anthropic.createClaudeRequestBody(QUESTION, history);
+    }
+
+    @Benchmark
+    public String anthropicImageRequest() throws Exception {
+        return anthropic.createClaudeImageRequestBody(QUESTION, base64Image, history);
+    }
+
+    @Benchmark
+    public String anthropicParse() throws Exception {
+        return anthropic.parseClaudeResponse(anthropicResponse);
+    }
+
+    @Benchmark
+    public String geminiRequest() throws Exception {
+        return gemini.createGeminiRequestBody(QUESTION, history);
+    }
+
+    @Benchmark
+    public String geminiImageRequest() throws Exception {
+        return gemini.createGeminiImageRequestBody(QUESTION, base64Image, history);
+    }
+
+    @Benchmark
+    public String geminiParse() throws Exception {
+        return gemini.parseGeminiResponse(geminiResponse);
+    }
+
+    @Benchmark
+    public String sonarRequest() throws Exception {
+        return sonar.createSonarRequestBody(QUESTION, history);
+    }
+
+    @Benchmark
+    public String sonarImageRequest() throws Exception {
+        return sonar.createSonarImageRequestBody(QUESTION, base64Image, history);
+    }
+
+    @Benchmark
+    public String sonarParse() throws Exception {
+        return sonar.parseSonarResponse(chatCompletionResponse);
+    }
+
+    @Benchmark
+    public String deepSeekRequest() throws Exception {
+        return deepSeek.createDeepSeekTextBody(QUESTION, history);
+    }
+
+    @Benchmark
+    public String deepSeekImageRequest() throws Exception {
+        return deepSeek.createDeepSeekImageBody(QUESTION, base64Image, history);
+    }
+
+    @Benchmark
+    public String deepSeekParse() throws Exception {
+        return deepSeek.parseDeepSeekResponse(chatCompletionResponse);
+    }
+
+    @Benchmark
+    public String openRouterRequest() throws Exception {
+        return openRouter.createOpenRouterRequestBody(QUESTION, history);
+    }
+
+    @Benchmark
+    public String openRouterImageRequest() throws Exception {
+        return openRouter.createOpenRouterImageRequestBody(QUESTION, base64Image, history);
+    }
+
+    @Benchmark
+    public String openRouterParse() throws Exception {
+        return openRouter.parseOpenRouterResponse(chatCompletionResponse);
+    }
+
+    @Benchmark
+    public String grokRequest() throws Exception {
+        return grok.createRequestBody(QUESTION, history);
+    }
+
+    @Benchmark
+    public String grokParse() throws Exception {
+        return grok.parseResponse(chatCompletionResponse);
+    }
+
+    @Benchmark
+    public String llamaRequest() throws Exception {
+        return llama.createLlamaRequestBody(QUESTION, history);
+    }
+
+    @Benchmark
+    public String llamaParse() throws Exception {
+        return llama.parseLlamaResponse(chatCompletionResponse);
+    }
+}
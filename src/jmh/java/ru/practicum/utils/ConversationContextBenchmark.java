@@ -0,0 +1,59 @@
+package ru.practicum.utils;
+
+import org.openjdk.jmh.annotations.*;
+import ru.practicum.state.InMemoryStateStore;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Конкуренция за общую карту контекстов: каждый поток ведёт свой чат, как при обработке апдейтов
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ConversationContextBenchmark {
+    private static final AtomicLong CHAT_IDS = new AtomicLong(1_000_000);
+
+    private ConversationContext context;
+
+    @State(Scope.Thread)
+    public static class Chat {
+        long chatId;
+        String message;
+
+        @Setup
+        public void setup() {
+            chatId = CHAT_IDS.incrementAndGet();
+            message = "Сообщение пользователя из чата " + chatId;
+        }
+    }
+
+    @Setup
+    public void setup() {
+        context = new ConversationContext(new InMemoryStateStore());
+    }
+
+    @Benchmark
+    @Group("readWrite")
+    @GroupThreads(4)
+    public void addMessage(Chat chat) {
+        context.addMessage(chat.chatId, "user", chat.message);
+    }
+
+    @Benchmark
+    @Group("readWrite")
+    @GroupThreads(4)
+    public List<Map<String, String>> getHistory(Chat chat) {
+        return context.getHistory(chat.chatId);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public List<Map<String, String>> turn(Chat chat) {
+        List<Map<String, String>> history = context.getHistory(chat.chatId);
+        context.addMessage(chat.chatId, "user", chat.message);
+        context.addMessage(chat.chatId, "assistant", chat.message);
+        return history;
+    }
+}
@@ -0,0 +1,60 @@
+package ru.practicum.utils;
+
+import org.openjdk.jmh.annotations.*;
+import ru.practicum.bench.Payloads;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TextProcessingBenchmark {
+    private static final int TG_LIMIT = 4096;
+
+    @Param({Payloads.CODE_ANSWER, Payloads.TABLE_ANSWER, Payloads.CYRILLIC_ANSWER})
+    public String payload;
+
+    // Сколько раз повторить ответ: 3 даёт ответ на несколько сообщений Telegram
+    @Param({"1", "3"})
+    public int repeat;
+
+    private MarkdownToHtmlConverter htmlConverter;
+    private MarkdownToEntitiesConverter entitiesConverter;
+    private MessageSplitter splitter;
+
+    private String markdown;
+    private String html;
+    private FormattedText formatted;
+
+    @Setup
+    public void setup() {
+        htmlConverter = new MarkdownToHtmlConverter();
+        entitiesConverter = new MarkdownToEntitiesConverter();
+        splitter = new MessageSplitter();
+
+        markdown = (Payloads.markdown(payload) + "\n\n").repeat(repeat);
+        html = htmlConverter.convertMarkdownToTelegramHtml(markdown);
+        formatted = entitiesConverter.convertMarkdownToEntities(markdown);
+    }
+
+    @Benchmark
+    public String convertToHtml() {
+        return htmlConverter.convertMarkdownToTelegramHtml(markdown);
+    }
+
+    @Benchmark
+    public FormattedText convertToEntities() {
+        return entitiesConverter.convertMarkdownToEntities(markdown);
+    }
+
+    @Benchmark
+    public List<String> splitHtml() {
+        return splitter.splitMessageForTelegram(html, TG_LIMIT);
+    }
+
+    @Benchmark
+    public List<FormattedText> splitEntities() {
+        return splitter.splitFormattedText(formatted, TG_LIMIT);
+    }
+}
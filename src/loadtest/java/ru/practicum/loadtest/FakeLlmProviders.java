@@ -0,0 +1,142 @@
+package ru.practicum.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Заглушки всех восьми провайдеров на одном HTTP-сервере: /openai, /anthropic, /gemini, ...
+@Slf4j
+public class FakeLlmProviders implements AutoCloseable {
+
+    enum Format { OPENAI_RESPONSES, ANTHROPIC, GEMINI, CHAT_COMPLETIONS }
+
+    static final Map<String, Format> PROVIDERS = Map.of(
+            "openai", Format.OPENAI_RESPONSES,
+            "anthropic", Format.ANTHROPIC,
+            "gemini", Format.GEMINI,
+            "perplexity", Format.CHAT_COMPLETIONS,
+            "openrouter", Format.CHAT_COMPLETIONS,
+            "grok", Format.CHAT_COMPLETIONS,
+            "deepseek", Format.CHAT_COMPLETIONS,
+            "groq", Format.CHAT_COMPLETIONS
+    );
+
+    private static final String ANSWER = """
+            Конечно! Вот краткий ответ с **форматированием** и примером кода:
+
+            ```java
+            var client = HttpClient.newHttpClient();
+            var response = client.send(request, BodyHandlers.ofString());
+            ```
+
+            - пункт первый — `inline code`
+            - пункт второй — [ссылка](https://example.com)
+
+            Если нужно подробнее, спросите ещё раз.""";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Map<String, ProviderProfile> profiles;
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final long startedAt = System.currentTimeMillis();
+
+    public FakeLlmProviders(Map<String, ProviderProfile> profiles) throws IOException {
+        this.profiles = profiles;
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        for (Map.Entry<String, Format> provider : PROVIDERS.entrySet()) {
+            server.createContext("/" + provider.getKey(), exchange -> handle(provider.getKey(), provider.getValue(), exchange));
+        }
+        server.setExecutor(executor);
+    }
+
+    public void start() {
+        server.start();
+        log.info("Fake LLM providers listening on port {}", server.getAddress().getPort());
+    }
+
+    public String baseUrl(String provider) {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/" + provider;
+    }
+
+    private void handle(String provider, Format format, HttpExchange exchange) throws IOException {
+        try (exchange) {
+            exchange.getRequestBody().readAllBytes();
+            ProviderProfile profile = profiles.getOrDefault(provider, ProviderProfile.DEFAULT);
+
+            Thread.sleep(profile.sampleLatencyMs());
+
+            if (profile.inRateLimitBurst(System.currentTimeMillis() - startedAt)) {
+                respond(exchange, 429, "{\"error\":{\"message\":\"Rate limit exceeded\",\"type\":\"rate_limit\"}}");
+            } else if (profile.sampleError()) {
+                respond(exchange, 500, "{\"error\":{\"message\":\"Internal error\",\"type\":\"server_error\"}}");
+            } else {
+                respond(exchange, 200, objectMapper.writeValueAsString(body(format)));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private ObjectNode body(Format format) {
+        ObjectNode root = objectMapper.createObjectNode();
+        switch (format) {
+            case OPENAI_RESPONSES -> {
+                ObjectNode message = root.putArray("output").addObject();
+                message.put("type", "message");
+                message.put("role", "assistant");
+                ObjectNode text = message.putArray("content").addObject();
+                text.put("type", "output_text");
+                text.put("text", ANSWER);
+                root.putObject("usage").put("input_tokens", 120).put("output_tokens", 80).put("total_tokens", 200);
+            }
+            case ANTHROPIC -> {
+                ObjectNode text = root.putArray("content").addObject();
+                text.put("type", "text");
+                text.put("text", ANSWER);
+                root.put("stop_reason", "end_turn");
+                root.putObject("usage").put("input_tokens", 120).put("output_tokens", 80);
+            }
+            case GEMINI -> {
+                ObjectNode candidate = root.putArray("candidates").addObject();
+                ArrayNode parts = candidate.putObject("content").put("role", "model").putArray("parts");
+                parts.addObject().put("text", ANSWER);
+                candidate.put("finishReason", "STOP");
+                root.putObject("usageMetadata")
+                        .put("promptTokenCount", 120).put("candidatesTokenCount", 80).put("totalTokenCount", 200);
+            }
+            case CHAT_COMPLETIONS -> {
+                ObjectNode choice = root.putArray("choices").addObject();
+                choice.putObject("message").put("role", "assistant").put("content", ANSWER);
+                choice.put("finish_reason", "stop");
+                root.putObject("usage").put("prompt_tokens", 120).put("completion_tokens", 80).put("total_tokens", 200);
+            }
+        }
+        return root;
+    }
+
+    private void respond(HttpExchange exchange, int status, String json) throws IOException {
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
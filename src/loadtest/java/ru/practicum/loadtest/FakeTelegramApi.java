@@ -0,0 +1,245 @@
+package ru.practicum.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Встроенный Bot API: getUpdates (long polling) или доставка в webhook, sendMessage, editMessageText,
+// getFile и скачивание файлов
+@Slf4j
+public class FakeTelegramApi implements AutoCloseable {
+
+    // Отправленное ботом сообщение, каким его увидел бы пользователь
+    public record Reply(String method, String text, long receivedAtNanos) {
+    }
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final String token;
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    private final BlockingQueue<ObjectNode> incoming = new LinkedBlockingQueue<>();
+    private final Deque<ObjectNode> unconfirmed = new ArrayDeque<>();
+    private final Map<Long, BlockingQueue<Reply>> replies = new ConcurrentHashMap<>();
+
+    // Адреса webhook экземпляров: апдейт уходит на случайный, как через балансировщик
+    private volatile List<String> webhookUrls = List.of();
+    private volatile String webhookSecret;
+    private final HttpClient webhookClient = HttpClient.newHttpClient();
+
+    private final AtomicLong updateIds = new AtomicLong(1);
+    private final AtomicInteger messageIds = new AtomicInteger(1);
+    private final byte[] photoBytes;
+
+    public FakeTelegramApi(String token) throws IOException {
+        this.token = token;
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        this.server.createContext("/bot" + token + "/", this::handleMethod);
+        this.server.createContext("/file/bot" + token + "/", this::handleFile);
+        this.server.setExecutor(executor);
+
+        this.photoBytes = new byte[120 * 1024];
+        new Random(7).nextBytes(photoBytes);
+    }
+
+    public void start() {
+        server.start();
+        log.info("Fake Telegram Bot API listening on port {}", server.getAddress().getPort());
+    }
+
+    public String apiUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    // Переключает доставку с getUpdates на POST в webhook
+    public void pushTo(List<String> urls, String secret) {
+        this.webhookSecret = secret;
+        this.webhookUrls = List.copyOf(urls);
+    }
+
+    public void sendText(long chatId, String text) {
+        ObjectNode message = message(chatId);
+        message.put("text", text);
+        enqueue("message", message);
+    }
+
+    public void sendPhoto(long chatId, String caption) {
+        ObjectNode message = message(chatId);
+        ObjectNode photo = message.putArray("photo").addObject();
+        photo.put("file_id", "photo-" + chatId);
+        photo.put("file_unique_id", "photo-" + chatId);
+        photo.put("width", 1280);
+        photo.put("height", 960);
+        photo.put("file_size", photoBytes.length);
+        if (caption != null) message.put("caption", caption);
+        enqueue("message", message);
+    }
+
+    public void sendCallback(long chatId, String data) {
+        ObjectNode callback = objectMapper.createObjectNode();
+        callback.put("id", "cb-" + updateIds.get());
+        callback.set("from", user(chatId));
+        callback.set("message", message(chatId));
+        callback.put("chat_instance", String.valueOf(chatId));
+        callback.put("data", data);
+        enqueue("callback_query", callback);
+    }
+
+    // Ждёт следующее сообщение бота в чат (sendMessage / editMessageText)
+    public Reply awaitReply(long chatId, long timeoutMs) throws InterruptedException {
+        return replyQueue(chatId).poll(timeoutMs, TimeUnit.MILLISECONDS);
+    }
+
+    private void enqueue(String type, ObjectNode payload) {
+        ObjectNode update = objectMapper.createObjectNode();
+        update.put("update_id", updateIds.getAndIncrement());
+        update.set(type, payload);
+
+        List<String> urls = webhookUrls;
+        if (urls.isEmpty()) {
+            incoming.add(update);
+            return;
+        }
+
+        String url = urls.get(ThreadLocalRandom.current().nextInt(urls.size()));
+        try {
+            HttpRequest request = HttpRequest.newBuilder(URI.create(url))
+                    .header("Content-Type", "application/json")
+                    .header("X-Telegram-Bot-Api-Secret-Token", webhookSecret)
+                    .POST(HttpRequest.BodyPublishers.ofByteArray(objectMapper.writeValueAsBytes(update)))
+                    .build();
+            webhookClient.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                    .whenComplete((response, e) -> {
+                        if (e != null || response.statusCode() != 200) {
+                            log.warn("Webhook delivery to {} failed: {}", url, e != null ? e.getMessage() : response.statusCode());
+                        }
+                    });
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private ObjectNode message(long chatId) {
+        ObjectNode message = objectMapper.createObjectNode();
+        message.put("message_id", messageIds.getAndIncrement());
+        message.put("date", System.currentTimeMillis() / 1000);
+        message.set("from", user(chatId));
+        message.putObject("chat").put("id", chatId).put("type", "private");
+        return message;
+    }
+
+    private ObjectNode user(long chatId) {
+        return objectMapper.createObjectNode()
+                .put("id", chatId)
+                .put("is_bot", false)
+                .put("first_name", "Load")
+                .put("username", "load_" + chatId);
+    }
+
+    private BlockingQueue<Reply> replyQueue(long chatId) {
+        return replies.computeIfAbsent(chatId, k -> new LinkedBlockingQueue<>());
+    }
+
+    private void handleMethod(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            String path = exchange.getRequestURI().getPath();
+            String method = path.substring(path.lastIndexOf('/') + 1);
+            byte[] body = exchange.getRequestBody().readAllBytes();
+            JsonNode params = body.length > 0 ? objectMapper.readTree(body) : objectMapper.createObjectNode();
+
+            JsonNode result = switch (method) {
+                case "getUpdates" -> getUpdates(params);
+                case "sendMessage", "editMessageText" -> recordReply(method, params);
+                case "getFile" -> objectMapper.createObjectNode()
+                        .put("file_id", params.path("file_id").asText())
+                        .put("file_unique_id", params.path("file_id").asText())
+                        .put("file_size", photoBytes.length)
+                        .put("file_path", "photos/" + params.path("file_id").asText() + ".jpg");
+                case "getMe" -> user(0).put("is_bot", true).put("username", "load_test_bot");
+                default -> objectMapper.getNodeFactory().booleanNode(true);
+            };
+
+            ObjectNode response = objectMapper.createObjectNode();
+            response.put("ok", true);
+            response.set("result", result);
+            respond(exchange, "application/json", objectMapper.writeValueAsBytes(response));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void handleFile(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            respond(exchange, "image/jpeg", photoBytes);
+        }
+    }
+
+    // Long polling: отдаёт неподтверждённые апдейты, иначе ждёт новые до timeout секунд
+    private synchronized ArrayNode getUpdates(JsonNode params) throws InterruptedException {
+        long offset = params.path("offset").asLong(0);
+        int limit = params.path("limit").asInt(100);
+        int timeout = params.path("timeout").asInt(0);
+
+        while (!unconfirmed.isEmpty() && unconfirmed.peekFirst().path("update_id").asLong() < offset) {
+            unconfirmed.pollFirst();
+        }
+        if (unconfirmed.isEmpty()) {
+            ObjectNode first = incoming.poll(timeout, TimeUnit.SECONDS);
+            if (first != null) unconfirmed.add(first);
+        }
+        while (unconfirmed.size() < limit) {
+            ObjectNode next = incoming.poll();
+            if (next == null) break;
+            unconfirmed.add(next);
+        }
+
+        ArrayNode result = objectMapper.createArrayNode();
+        for (ObjectNode update : unconfirmed) {
+            if (result.size() >= limit) break;
+            result.add(update);
+        }
+        return result;
+    }
+
+    private ObjectNode recordReply(String method, JsonNode params) {
+        long chatId = params.path("chat_id").asLong();
+        String text = params.path("text").asText();
+        replyQueue(chatId).add(new Reply(method, text, System.nanoTime()));
+
+        ObjectNode message = message(chatId);
+        message.put("text", text);
+        return message;
+    }
+
+    private void respond(HttpExchange exchange, String contentType, byte[] bytes) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(200, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
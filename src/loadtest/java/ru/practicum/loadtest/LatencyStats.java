@@ -0,0 +1,54 @@
+package ru.practicum.loadtest;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+// Сквозные задержки по моделям: от отправки апдейта до последнего сообщения бота
+public class LatencyStats {
+    private final Map<String, ConcurrentLinkedQueue<Long>> samples = new ConcurrentHashMap<>();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+
+    public void record(String model, long latencyNanos, boolean error) {
+        samples.computeIfAbsent(model, k -> new ConcurrentLinkedQueue<>()).add(latencyNanos);
+        if (error) errors.increment();
+    }
+
+    public void timeout() {
+        timeouts.increment();
+    }
+
+    public String report(long elapsedNanos) {
+        long[] all = samples.values().stream().flatMap(ConcurrentLinkedQueue::stream).mapToLong(Long::longValue).toArray();
+        double seconds = elapsedNanos / 1e9;
+
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%nReplies: %d in %.1f s, throughput %.2f replies/s, error replies %d, timeouts %d%n",
+                all.length, seconds, all.length / seconds, errors.sum(), timeouts.sum()));
+        sb.append(String.format("%-20s %8s %10s %10s %10s%n", "model", "count", "p50, ms", "p99, ms", "max, ms"));
+        sb.append(row("ALL", all));
+
+        Map<String, ConcurrentLinkedQueue<Long>> sorted = new TreeMap<>(samples);
+        for (Map.Entry<String, ConcurrentLinkedQueue<Long>> entry : sorted.entrySet()) {
+            sb.append(row(entry.getKey(), entry.getValue().stream().mapToLong(Long::longValue).toArray()));
+        }
+        return sb.toString();
+    }
+
+    private String row(String name, long[] latencies) {
+        Arrays.sort(latencies);
+        return String.format("%-20s %8d %10.1f %10.1f %10.1f%n", name, latencies.length,
+                percentileMs(latencies, 0.50), percentileMs(latencies, 0.99),
+                latencies.length == 0 ? 0.0 : latencies[latencies.length - 1] / 1e6);
+    }
+
+    private double percentileMs(long[] sorted, double p) {
+        if (sorted.length == 0) return 0.0;
+        int idx = (int) Math.ceil(p * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(idx, sorted.length - 1))] / 1e6;
+    }
+}
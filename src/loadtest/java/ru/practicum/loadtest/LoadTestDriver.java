@@ -0,0 +1,179 @@
+package ru.practicum.loadtest;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import ru.practicum.TelegramBotApplication;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+
+// Нагрузочный прогон без реальных токенов: заглушки Bot API и провайдеров + настоящее Spring-приложение.
+// Запуск: mvn -Ploadtest verify -Dloadtest.args="--chats=100 --messages=20 --provider.gemini=800,0.7,0.02"
+// С --instances=N в одном процессе поднимается N экземпляров в режиме webhook с общим состоянием и маршрутизацией чатов.
+@Slf4j
+public class LoadTestDriver {
+    private static final String TOKEN = "000000:LOADTEST";
+    private static final String WEBHOOK_SECRET = "loadtest-secret";
+
+    // Ключ модели → провайдер, как в application.yml из README
+    private static final Map<String, String> MODELS = new LinkedHashMap<>();
+
+    static {
+        MODELS.put("gpt-5-nano", "openai");
+        MODELS.put("claude-haiku", "anthropic");
+        MODELS.put("gemini-flash", "gemini");
+        MODELS.put("sonar", "perplexity");
+        MODELS.put("kimi-k2", "openrouter");
+        MODELS.put("grok-4-fast", "grok");
+        MODELS.put("deepseek", "deepseek");
+        MODELS.put("llama-scout", "groq");
+    }
+
+    // Провайдеры, клиенты которых умеют принимать изображения
+    private static final Set<String> IMAGE_PROVIDERS = Set.of("openai", "anthropic", "gemini", "perplexity", "openrouter", "deepseek");
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parseArgs(args);
+        int chats = Integer.parseInt(options.getOrDefault("chats", "20"));
+        int messages = Integer.parseInt(options.getOrDefault("messages", "10"));
+        double photoRatio = Double.parseDouble(options.getOrDefault("photo-ratio", "0.1"));
+        long replyTimeoutMs = Long.parseLong(options.getOrDefault("reply-timeout-ms", "120000"));
+        int instances = Integer.parseInt(options.getOrDefault("instances", "1"));
+
+        Map<String, ProviderProfile> profiles = new HashMap<>();
+        for (String provider : FakeLlmProviders.PROVIDERS.keySet()) {
+            String spec = options.get("provider." + provider);
+            profiles.put(provider, spec != null ? ProviderProfile.parse(spec) : ProviderProfile.DEFAULT);
+        }
+
+        try (FakeTelegramApi telegram = new FakeTelegramApi(TOKEN);
+             FakeLlmProviders providers = new FakeLlmProviders(profiles)) {
+            telegram.start();
+            providers.start();
+
+            List<ConfigurableApplicationContext> apps = new ArrayList<>();
+            if (instances <= 1) {
+                apps.add(SpringApplication.run(TelegramBotApplication.class,
+                        springArgs(telegram, providers, "target/loadtest-usage.tsv")));
+            } else {
+                List<String> webhookUrls = new ArrayList<>();
+                for (int i = 0; i < instances; i++) {
+                    int port = freePort();
+                    List<String> instanceArgs = new ArrayList<>(List.of(
+                            springArgs(telegram, providers, "target/loadtest-usage-" + i + ".tsv")));
+                    instanceArgs.addAll(clusterArgs(i, port));
+                    apps.add(SpringApplication.run(TelegramBotApplication.class, instanceArgs.toArray(String[]::new)));
+                    webhookUrls.add("http://127.0.0.1:" + port + "/telegram/webhook");
+                }
+                telegram.pushTo(webhookUrls, WEBHOOK_SECRET);
+            }
+
+            LatencyStats stats = new LatencyStats();
+            List<String> modelKeys = new ArrayList<>(MODELS.keySet());
+            long started = System.nanoTime();
+
+            try (ExecutorService users = Executors.newVirtualThreadPerTaskExecutor()) {
+                for (int i = 0; i < chats; i++) {
+                    long chatId = 10_000 + i;
+                    String model = modelKeys.get(i % modelKeys.size());
+                    users.submit(() -> runChat(telegram, stats, chatId, model, messages, photoRatio, replyTimeoutMs));
+                }
+            }
+
+            System.out.println(stats.report(System.nanoTime() - started));
+            apps.forEach(ConfigurableApplicationContext::close);
+        }
+        System.exit(0);
+    }
+
+    // Замкнутый цикл одного пользователя: выбрать модель, затем слать сообщения и ждать ответа на каждое
+    private static Void runChat(FakeTelegramApi telegram, LatencyStats stats, long chatId, String model,
+                                int messages, double photoRatio, long replyTimeoutMs) throws InterruptedException {
+        telegram.sendCallback(chatId, "model:" + model);
+        if (telegram.awaitReply(chatId, replyTimeoutMs) == null) {
+            stats.timeout();
+            return null;
+        }
+
+        boolean images = IMAGE_PROVIDERS.contains(MODELS.get(model));
+        for (int m = 0; m < messages; m++) {
+            long sentAt = System.nanoTime();
+            if (images && ThreadLocalRandom.current().nextDouble() < photoRatio) {
+                telegram.sendPhoto(chatId, "Что на этой картинке?");
+            } else {
+                telegram.sendText(chatId, "Вопрос " + m + ": объясни разницу между процессом и потоком");
+            }
+
+            FakeTelegramApi.Reply reply = telegram.awaitReply(chatId, replyTimeoutMs);
+            if (reply == null) {
+                stats.timeout();
+                continue;
+            }
+            stats.record(model, reply.receivedAtNanos() - sentAt, isError(reply.text()));
+        }
+        return null;
+    }
+
+    private static boolean isError(String text) {
+        return text.contains("quota") || text.contains("Error") || text.contains("error")
+                || text.contains("ошибка") || text.contains("Ошибка");
+    }
+
+    private static String[] springArgs(FakeTelegramApi telegram, FakeLlmProviders providers, String usageFile) {
+        List<String> args = new ArrayList<>();
+        args.add("--telegrambot.bot-token=" + TOKEN);
+        args.add("--telegrambot.bot-username=@load_test_bot");
+        args.add("--telegrambot.api-url=" + telegram.apiUrl());
+        args.add("--ai.default-model=gpt-5-nano");
+        // учёт токенов стенда не смешиваем с боевым файлом
+        args.add("--usage.file=" + usageFile);
+        for (String provider : FakeLlmProviders.PROVIDERS.keySet()) {
+            args.add("--ai.providers." + provider + ".base-url=" + providers.baseUrl(provider));
+            args.add("--ai.providers." + provider + ".api-key=stub");
+        }
+        for (Map.Entry<String, String> model : MODELS.entrySet()) {
+            args.add("--ai.models." + model.getKey() + ".provider=" + model.getValue());
+            args.add("--ai.models." + model.getKey() + ".model-name=" + model.getKey());
+        }
+        return args.toArray(String[]::new);
+    }
+
+    // Экземпляр i локального кластера: свой порт и узел, общее in-memory состояние
+    private static List<String> clusterArgs(int i, int port) {
+        String url = "http://127.0.0.1:" + port;
+        return List.of(
+                "--server.port=" + port,
+                "--spring.main.web-application-type=servlet",
+                "--telegrambot.mode=webhook",
+                "--telegrambot.webhook-url=" + url,
+                "--telegrambot.webhook-secret=" + WEBHOOK_SECRET,
+                "--state.store=memory",
+                "--state.shared-name=loadtest",
+                "--cluster.enabled=true",
+                "--cluster.node-id=node-" + i,
+                "--cluster.node-url=" + url
+        );
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private static Map<String, String> parseArgs(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--")) continue;
+            int eq = arg.indexOf('=');
+            if (eq == -1) options.put(arg.substring(2), "true");
+            else options.put(arg.substring(2, eq), arg.substring(eq + 1));
+        }
+        return options;
+    }
+}
@@ -0,0 +1,34 @@
+package ru.practicum.loadtest;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+// Поведение заглушки провайдера: логнормальная задержка, доля ошибок 5xx и периодические всплески 429
+public record ProviderProfile(long medianMs, double sigma, double errorRate, long burstEveryMs, long burstLengthMs) {
+
+    public static final ProviderProfile DEFAULT = new ProviderProfile(400, 0.5, 0.01, 60_000, 2_000);
+
+    // Формат: median,sigma,errorRate[,burstEveryMs,burstLengthMs], например 300,0.6,0.02,30000,3000
+    public static ProviderProfile parse(String spec) {
+        String[] parts = spec.split(",");
+        return new ProviderProfile(
+                Long.parseLong(parts[0].trim()),
+                Double.parseDouble(parts[1].trim()),
+                Double.parseDouble(parts[2].trim()),
+                parts.length > 3 ? Long.parseLong(parts[3].trim()) : 0,
+                parts.length > 4 ? Long.parseLong(parts[4].trim()) : 0
+        );
+    }
+
+    public long sampleLatencyMs() {
+        double gaussian = ThreadLocalRandom.current().nextGaussian();
+        return Math.max(0, Math.round(medianMs * Math.exp(sigma * gaussian)));
+    }
+
+    public boolean sampleError() {
+        return ThreadLocalRandom.current().nextDouble() < errorRate;
+    }
+
+    public boolean inRateLimitBurst(long elapsedMs) {
+        return burstEveryMs > 0 && elapsedMs % burstEveryMs < burstLengthMs;
+    }
+}
@@ -7,9 +7,14 @@ import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.scheduling.annotation.EnableScheduling;
 import org.telegram.telegrambots.meta.TelegramBotsApi;
+import org.telegram.telegrambots.meta.api.objects.Update;
 import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
 import org.telegram.telegrambots.updatesreceivers.DefaultBotSession;
+import ru.practicum.config.TelegramBotConfig;
+import ru.practicum.service.PendingUpdates;
 import ru.practicum.service.TelegramChatService;
+import ru.practicum.utils.RenderingWarmUp;
+import ru.practicum.webhook.WebhookRegistrar;
 
 @Slf4j
 @EnableScheduling
@@ -17,6 +22,10 @@ import ru.practicum.service.TelegramChatService;
 @SpringBootApplication
 public class TelegramBotApplication implements CommandLineRunner {
     private final TelegramChatService bot;
+    private final TelegramBotConfig telegramBotConfig;
+    private final WebhookRegistrar webhookRegistrar;
+    private final RenderingWarmUp warmUp;
+    private final PendingUpdates pendingUpdates;
 
     public static void main(String[] args) {
         log.info("Starting Telegram ChatGPT Bot with Spring Boot...");
@@ -26,9 +35,23 @@ public class TelegramBotApplication implements CommandLineRunner {
     @Override
     public void run(String... args) {
         try {
+            // до первого апдейта: иначе первые ответы рендерит интерпретатор
+            warmUp.run();
+
+            // недоделанное прошлым запуском — раньше новых апдейтов
+            for (Update update : pendingUpdates.takeRestored()) {
+                bot.replay(update);
+            }
+
+            if (telegramBotConfig.isWebhookMode()) {
+                log.info("Registering Telegram webhook...");
+                webhookRegistrar.register();
+                return;
+            }
+
             log.info("Registering Telegram bot...");
             TelegramBotsApi botsApi = new TelegramBotsApi(DefaultBotSession.class);
-            botsApi.registerBot(bot);
+            pendingUpdates.attach(botsApi.registerBot(bot));
             log.info("Telegram bot registered successfully!");
         } catch (TelegramApiException e) {
             log.error("Failed to register Telegram bot: {}", e.getMessage(), e);
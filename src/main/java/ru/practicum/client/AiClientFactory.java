@@ -5,6 +5,13 @@ import lombok.extern.slf4j.Slf4j;
 import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
 import org.springframework.stereotype.Service;
 import ru.practicum.config.AiModelsConfig;
+import ru.practicum.metrics.BotMetrics;
+import ru.practicum.metrics.ProviderMetrics;
+import ru.practicum.overload.BrownoutController;
+import ru.practicum.routing.EndpointRouter;
+import ru.practicum.usage.ChatQuotas;
+import ru.practicum.usage.UsageLedger;
+import ru.practicum.usage.UsageListener;
 
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
@@ -16,13 +23,66 @@ public class AiClientFactory {
 
     private final AiModelsConfig aiConfig;
     private final CloseableHttpClient httpClient;
+    private final BotMetrics botMetrics;
+    private final UsageLedger usageLedger;
+    private final ChatQuotas quotas;
+    private final EndpointRouter router;
+    private final BrownoutController brownout;
 
-    // Кэш: "chatId:modelKey" → AiClient
+    // Кэш: "chatId:modelKey:provider" → AiClient; inline-клиенты общие — "inline:modelKey:provider"
     private final Map<String, AiClient> clientCache = new ConcurrentHashMap<>();
+    // Пользователь, которому засчитывается расход общего inline-клиента в текущем потоке
+    private static final ThreadLocal<Long> INLINE_USER = new ThreadLocal<>();
+
+    // Клиент и провайдер, через которого пойдёт запрос
+    public record Route(AiClient client, String provider) {
+    }
+
+    @FunctionalInterface
+    public interface Scope extends AutoCloseable {
+        @Override
+        void close();
+    }
 
     public AiClient create(String modelKey, Long chatId) {
-        String cacheKey = chatId + ":" + modelKey;
-        return clientCache.computeIfAbsent(cacheKey, k -> buildClient(modelKey));
+        return route(modelKey, chatId).client();
+    }
+
+    // Путь выбирается на каждый запрос: с деградировавшего endpoint'а трафик уходит сам
+    public Route route(String modelKey, Long chatId) {
+        AiModelsConfig.Model model = requireModel(modelKey);
+        AiModelsConfig.Endpoint endpoint = router.choose(modelKey, model);
+        String cacheKey = chatId + ":" + modelKey + ":" + endpoint.getProvider();
+        AiClient client = clientCache.computeIfAbsent(cacheKey,
+                k -> buildClient(modelKey, endpoint, usageLedger.listener(chatId, modelKey)
+                        .andThen(usage -> quotas.onUsage(chatId, usage))));
+        return new Route(client, endpoint.getProvider());
+    }
+
+    // Inline-запросы идут без истории: один клиент на модель и endpoint для всех пользователей,
+    // расход засчитывается тому, кто указан в chargeTo на потоке вызова
+    public Route inlineRoute(String modelKey) {
+        AiModelsConfig.Model model = requireModel(modelKey);
+        AiModelsConfig.Endpoint endpoint = router.choose(modelKey, model);
+        AiClient client = clientCache.computeIfAbsent("inline:" + modelKey + ":" + endpoint.getProvider(),
+                k -> buildClient(modelKey, endpoint, usage -> {
+                    Long userId = INLINE_USER.get();
+                    if (userId == null) return;
+                    usageLedger.record(userId, modelKey, usage);
+                    quotas.onUsage(userId, usage);
+                }));
+        return new Route(client, endpoint.getProvider());
+    }
+
+    public Scope chargeTo(Long userId) {
+        INLINE_USER.set(userId);
+        return INLINE_USER::remove;
+    }
+
+    // Клиент для фоновых проб: не привязан к чату, расход в учёт не попадает
+    public AiClient probeClient(String modelKey, AiModelsConfig.Endpoint endpoint) {
+        return clientCache.computeIfAbsent("probe:" + modelKey + ":" + endpoint.getProvider(),
+                k -> buildClient(modelKey, endpoint, UsageListener.NONE));
     }
 
     public void invalidateCache(Long chatId) {
@@ -30,30 +90,39 @@ public class AiClientFactory {
         log.debug("Cache invalidated for chat {}", chatId);
     }
 
-    private AiClient buildClient(String modelKey) {
+    private AiModelsConfig.Model requireModel(String modelKey) {
         AiModelsConfig.Model model = aiConfig.getModel(modelKey);
         if (model == null) {
             throw new IllegalArgumentException("Model not found: " + modelKey);
         }
+        return model;
+    }
+
+    private AiClient buildClient(String modelKey, AiModelsConfig.Endpoint endpoint, UsageListener usage) {
+        String provider = endpoint.getProvider();
+
+        String baseUrl = endpoint.getBaseUrl() != null ? endpoint.getBaseUrl() :
+                aiConfig.getProvider(provider).getBaseUrl();
 
-        String baseUrl = model.getBaseUrl() != null ? model.getBaseUrl() :
-                aiConfig.getProvider(model.getProvider()).getBaseUrl();
+        String apiKey = endpoint.getApiKey() != null ? endpoint.getApiKey() :
+                aiConfig.getProvider(provider).getApiKey();
 
-        String apiKey = model.getApiKey() != null ? model.getApiKey() :
-                aiConfig.getProvider(model.getProvider()).getApiKey();
+        String modelName = endpoint.getModelName();
+        ProviderMetrics metrics = botMetrics.provider(provider, modelKey);
 
-        log.info("Creating client: {} with {} provider, model: {}", modelKey, model.getProvider(), model.getModelName());
+        log.info("Creating client: {} with {} provider, model: {}", modelKey, provider, modelName);
 
-        return switch (model.getProvider()) {
-            case "openai"      -> new OpenAiClient(baseUrl, apiKey, model.getModelName(), httpClient);
-            case "openrouter"  -> new OpenRouterClient(baseUrl, apiKey, model.getModelName(), httpClient);
-            case "grok"        -> new GrokClient(baseUrl, apiKey, model.getModelName(), httpClient);
-            case "perplexity"  -> new SonarClient(baseUrl, apiKey, model.getModelName(), httpClient);
-            case "gemini"      -> new GeminiClient(baseUrl, apiKey, model.getModelName(), httpClient);
-            case "deepseek"    -> new DeepSeekClient(baseUrl, apiKey, model.getModelName(), httpClient);
-            case "groq"        -> new LlamaClient(baseUrl, apiKey, model.getModelName(), httpClient);
-            case "anthropic"   -> new AnthropicClient(baseUrl, apiKey, model.getModelName(), httpClient);
-            default -> throw new IllegalArgumentException("Unknown provider: " + model.getProvider());
+        return switch (provider) {
+            case "openai"      -> new OpenAiClient(baseUrl, apiKey, modelName, httpClient, metrics, usage);
+            case "openrouter"  -> new OpenRouterClient(baseUrl, apiKey, modelName, httpClient, metrics, usage);
+            case "grok"        -> new GrokClient(baseUrl, apiKey, modelName, httpClient, metrics, usage);
+            case "perplexity"  -> new SonarClient(baseUrl, apiKey, modelName, httpClient, metrics, usage);
+            case "gemini"      -> new GeminiClient(baseUrl, apiKey, modelName, httpClient, metrics, usage,
+                    brownout::groundingAllowed);
+            case "deepseek"    -> new DeepSeekClient(baseUrl, apiKey, modelName, httpClient, metrics, usage);
+            case "groq"        -> new LlamaClient(baseUrl, apiKey, modelName, httpClient, metrics, usage);
+            case "anthropic"   -> new AnthropicClient(baseUrl, apiKey, modelName, httpClient, metrics, usage);
+            default -> throw new IllegalArgumentException("Unknown provider: " + provider);
         };
     }
 }
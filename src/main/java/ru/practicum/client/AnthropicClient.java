@@ -9,7 +9,9 @@ import org.apache.hc.client5.http.impl.classic.CloseableHttpResponse;
 import org.apache.hc.core5.http.io.entity.EntityUtils;
 import org.apache.hc.core5.http.io.entity.StringEntity;
 import ru.practicum.dto.ClaudeDto;
-import ru.practicum.utils.MarkdownToHtmlConverter;
+import ru.practicum.metrics.ProviderMetrics;
+import ru.practicum.usage.TokenUsage;
+import ru.practicum.usage.UsageListener;
 
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
@@ -22,17 +24,21 @@ public class AnthropicClient implements AiTextSender, AiImageSender {
     private final ClaudeDto dto;
     private final ObjectMapper objectMapper;
     private final CloseableHttpClient httpClient;
-    private final MarkdownToHtmlConverter markdownConverter;
+    private final ProviderMetrics metrics;
+    private final UsageListener usageListener;
+    private final EncodedHistory encodedHistory = EncodedHistory.chat();
 
-    public AnthropicClient(String baseUrl, String apiKey, String modelName, CloseableHttpClient httpClient) {
+    public AnthropicClient(String baseUrl, String apiKey, String modelName, CloseableHttpClient httpClient, ProviderMetrics metrics,
+                           UsageListener usageListener) {
         this.dto = new ClaudeDto();
         this.dto.setBaseUrl(baseUrl);
         this.dto.setApiKey(apiKey);
         this.dto.setModel(modelName);
 
         this.httpClient = httpClient;
+        this.metrics = metrics;
+        this.usageListener = usageListener;
         this.objectMapper = new ObjectMapper();
-        this.markdownConverter = new MarkdownToHtmlConverter();
     }
 
     @Override
@@ -53,7 +59,7 @@ public class AnthropicClient implements AiTextSender, AiImageSender {
             return executeRequest(httpPost);
         } catch (Exception e) {
             log.error("Error sending image to Claude", e);
-            return "Извините, произошла ошибка при отправке изображения: " + e.getMessage();
+            return CallOutcome.failure("Извините, произошла ошибка при отправке изображения: " + e.getMessage());
         }
     }
 
@@ -73,13 +79,13 @@ public class AnthropicClient implements AiTextSender, AiImageSender {
             return executeRequest(httpPost);
         } catch (Exception e) {
             log.error("Error sending message to Claude", e);
-            return "Извините, произошла ошибка при отправке сообщения: " + e.getMessage();
+            return CallOutcome.failure("Извините, произошла ошибка при отправке сообщения: " + e.getMessage());
         }
     }
 
-    private String createClaudeRequestBody(String userMessage, List<Map<String, String>> history) throws Exception {
+    String createClaudeRequestBody(String userMessage, List<Map<String, String>> history) throws Exception {
         String model = dto.getModel();
-        List<Map<String, String>> messages = new ArrayList<>(history);
+        List<Object> messages = encodedHistory.encode(history);
         messages.add(Map.of("role", "user", "content", userMessage));
 
         Map<String, Object> requestBody = new HashMap<>();
@@ -92,14 +98,11 @@ public class AnthropicClient implements AiTextSender, AiImageSender {
         return json;
     }
 
-    private String createClaudeImageRequestBody(String userMessage, String base64Image, List<Map<String, String>> history) throws Exception {
+    String createClaudeImageRequestBody(String userMessage, String base64Image, List<Map<String, String>> history) throws Exception {
         String model = dto.getModel();
 
         // Добавляем историю
-        List<Map<String, Object>> messages = new ArrayList<>();
-        for (Map<String, String> historyMessage : history) {
-            messages.add(Map.of("role", historyMessage.get("role"), "content", historyMessage.get("content")));
-        }
+        List<Object> messages = encodedHistory.encode(history);
 
         // Добавляем текущее сообщение с изображением
         List<Map<String, Object>> content = new ArrayList<>();
@@ -126,36 +129,41 @@ public class AnthropicClient implements AiTextSender, AiImageSender {
     }
 
     private String executeRequest(HttpPost httpPost) {
+        ProviderMetrics.Call call = metrics.start(httpPost);
+        CancellationToken.bind(httpPost);
         try (CloseableHttpResponse response = httpClient.execute(httpPost)) {
-            String responseBody = EntityUtils.toString(response.getEntity(), StandardCharsets.UTF_8);
+            byte[] body = EntityUtils.toByteArray(response.getEntity());
+            String responseBody = new String(body, StandardCharsets.UTF_8);
             log.debug("Received Claude response: {}", responseBody);
 
             int status = response.getCode();
+            call.finish(status, body.length);
             return switch (status) {
                 case 200 -> parseClaudeResponse(responseBody);
-                case 429 -> "Claude API quota exceeded.";
-                case 401 -> "Claude API authentication error. Check API key.";
-                default -> "Claude API error. Try again later";
+                case 429 -> CallOutcome.failure("Claude API quota exceeded.");
+                case 401 -> CallOutcome.failure("Claude API authentication error. Check API key.");
+                default -> CallOutcome.failure("Claude API error. Try again later");
             };
         } catch (Exception e) {
+            call.fail(e);
             log.error("Error sending request to Claude", e);
-            return "Error sending request to Claude: " + e.getMessage();
+            return CallOutcome.failure("Error sending request to Claude: " + e.getMessage());
         }
     }
 
-    private String parseClaudeResponse(String responseBody) throws Exception {
+    String parseClaudeResponse(String responseBody) throws Exception {
         JsonNode jsonNode = objectMapper.readTree(responseBody);
+        usageListener.onUsage(TokenUsage.from(jsonNode));
         JsonNode content = jsonNode.get("content");
         if (content != null && content.isArray() && !content.isEmpty()) {
             JsonNode firstContent = content.get(0);
             if (firstContent.has("text")) {
                 String result = firstContent.get("text").asText().trim();
-                result = markdownConverter.convertMarkdownToTelegramHtml(result);
                 log.debug("Received Claude response of length: {}", result.length());
                 return result;
             }
         }
         log.warn("Could not parse Claude response: {}", responseBody);
-        return "Извините, не удалось получить ответ от Claude";
+        return CallOutcome.failure("Извините, не удалось получить ответ от Claude");
     }
 }
\ No newline at end of file
@@ -0,0 +1,35 @@
+package ru.practicum.client;
+
+import java.util.function.Supplier;
+
+// Клиенты при сбое возвращают текст ошибки, а не бросают исключение: в чате его показывают пользователю как есть.
+// Кому нужен только настоящий ответ модели (/compare, inline с кэшем), вызывает клиента через answerOrThrow —
+// ошибку клиент помечает в потоке вызова, и она превращается в ProviderFailureException.
+public final class CallOutcome {
+    private static final ThreadLocal<CallOutcome> CURRENT = new ThreadLocal<>();
+
+    private boolean failed;
+
+    private CallOutcome() {
+    }
+
+    public static String answerOrThrow(Supplier<String> call) {
+        CallOutcome outcome = new CallOutcome();
+        CURRENT.set(outcome);
+        String response;
+        try {
+            response = call.get();
+        } finally {
+            CURRENT.remove();
+        }
+        if (outcome.failed) throw new ProviderFailureException(response);
+        return response;
+    }
+
+    // Вызывается клиентом вместо return текста ошибки; вне answerOrThrow только возвращает текст
+    static String failure(String message) {
+        CallOutcome outcome = CURRENT.get();
+        if (outcome != null) outcome.failed = true;
+        return message;
+    }
+}
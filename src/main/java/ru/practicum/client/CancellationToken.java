@@ -0,0 +1,60 @@
+package ru.practicum.client;
+
+import org.apache.hc.core5.concurrent.Cancellable;
+
+// Отмена запроса к провайдеру. Токен привязывается к потоку, клиент регистрирует в нём текущий
+// HTTP-обмен; cancel() обрывает обмен, соединение закрывается и возвращается в пул.
+public final class CancellationToken {
+    private static final ThreadLocal<CancellationToken> CURRENT = new ThreadLocal<>();
+
+    private boolean cancelled;
+    private Cancellable exchange;
+
+    @FunctionalInterface
+    public interface Scope extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    public Scope activate() {
+        CURRENT.set(this);
+        return CURRENT::remove;
+    }
+
+    // Вызывается клиентом перед execute: вне активного токена ничего не делает
+    public static void bind(Cancellable exchange) {
+        CancellationToken token = CURRENT.get();
+        if (token != null) {
+            token.attach(exchange);
+        }
+    }
+
+    private synchronized void attach(Cancellable exchange) {
+        if (cancelled) {
+            exchange.cancel();
+        } else {
+            this.exchange = exchange;
+        }
+    }
+
+    // true, если отменили именно сейчас
+    public synchronized boolean cancel() {
+        if (cancelled) return false;
+        cancelled = true;
+        if (exchange != null) {
+            exchange.cancel();
+        }
+        return true;
+    }
+
+    public synchronized boolean isCancelled() {
+        return cancelled;
+    }
+
+    // Выполняет действие, только если токен не отменён; отмена не может вклиниться посередине
+    public synchronized boolean commit(Runnable action) {
+        if (cancelled) return false;
+        action.run();
+        return true;
+    }
+}
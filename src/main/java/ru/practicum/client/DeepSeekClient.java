@@ -9,7 +9,9 @@ import org.apache.hc.client5.http.impl.classic.CloseableHttpResponse;
 import org.apache.hc.core5.http.io.entity.EntityUtils;
 import org.apache.hc.core5.http.io.entity.StringEntity;
 import ru.practicum.dto.DeepSeekDto;
-import ru.practicum.utils.MarkdownToHtmlConverter;
+import ru.practicum.metrics.ProviderMetrics;
+import ru.practicum.usage.TokenUsage;
+import ru.practicum.usage.UsageListener;
 
 import java.nio.charset.StandardCharsets;
 import java.util.*;
@@ -19,17 +21,21 @@ public class DeepSeekClient implements AiTextSender, AiImageSender {
     private final DeepSeekDto dto;
     private final ObjectMapper objectMapper;
     private final CloseableHttpClient httpClient;
-    private final MarkdownToHtmlConverter markdownConverter;
+    private final ProviderMetrics metrics;
+    private final UsageListener usageListener;
+    private final EncodedHistory encodedHistory = EncodedHistory.chat();
 
-    public DeepSeekClient(String baseUrl, String apiKey, String modelName, CloseableHttpClient httpClient) {
+    public DeepSeekClient(String baseUrl, String apiKey, String modelName, CloseableHttpClient httpClient, ProviderMetrics metrics,
+                          UsageListener usageListener) {
         this.dto = new DeepSeekDto();
         this.dto.setBaseUrl(baseUrl);
         this.dto.setApiKey(apiKey);
         this.dto.setModel(modelName);
 
         this.httpClient = httpClient;
+        this.metrics = metrics;
+        this.usageListener = usageListener;
         this.objectMapper = new ObjectMapper();
-        this.markdownConverter = new MarkdownToHtmlConverter();
     }
 
     @Override
@@ -48,7 +54,7 @@ public class DeepSeekClient implements AiTextSender, AiImageSender {
             return executeRequest(httpPost);
         } catch (Exception e) {
             log.error("Error sending message to DeepSeek", e);
-            return "Error sending message to DeepSeek: " + e.getMessage();
+            return CallOutcome.failure("Error sending message to DeepSeek: " + e.getMessage());
         }
     }
 
@@ -68,11 +74,11 @@ public class DeepSeekClient implements AiTextSender, AiImageSender {
             return executeRequest(httpPost);
         } catch (Exception e) {
             log.error("Error sending image to DeepSeek", e);
-            return "Извините, произошла ошибка при отправке изображения: " + e.getMessage();
+            return CallOutcome.failure("Извините, произошла ошибка при отправке изображения: " + e.getMessage());
         }
     }
 
-    private String createDeepSeekTextBody(String userMessage, List<Map<String, String>> history) throws Exception {
+    String createDeepSeekTextBody(String userMessage, List<Map<String, String>> history) throws Exception {
         String model = dto.getModel();
         List<Map<String, String>> messages = new ArrayList<>();
         messages.add(Map.of("role", "user", "content", userMessage));
@@ -87,13 +93,11 @@ public class DeepSeekClient implements AiTextSender, AiImageSender {
         return json;
     }
 
-    private String createDeepSeekImageBody(String userMessage, String base64Image, List<Map<String, String>> history) throws Exception {
+    String createDeepSeekImageBody(String userMessage, String base64Image, List<Map<String, String>> history) throws Exception {
         String model = dto.getModel();
-        List<Map<String, Object>> messages = new ArrayList<>();
+        List<Object> messages = new ArrayList<>();
         messages.add(Map.of("role", "system", "content", "Ты дружелюбный ассистент, отвечай кратко и на русском."));
-        for (Map<String, String> h : history) {
-            messages.add(Map.of("role", h.get("role"), "content", h.get("content")));
-        }
+        messages.addAll(encodedHistory.encode(history));
         List<Map<String, Object>> content = new ArrayList<>();
         content.add(Map.of("type", "text", "text", userMessage));
         content.add(Map.of(
@@ -113,36 +117,41 @@ public class DeepSeekClient implements AiTextSender, AiImageSender {
     }
 
     private String executeRequest(HttpPost httpPost) {
+        ProviderMetrics.Call call = metrics.start(httpPost);
+        CancellationToken.bind(httpPost);
         try (CloseableHttpResponse response = httpClient.execute(httpPost)) {
-            String responseBody = EntityUtils.toString(response.getEntity(), StandardCharsets.UTF_8);
+            byte[] body = EntityUtils.toByteArray(response.getEntity());
+            String responseBody = new String(body, StandardCharsets.UTF_8);
             log.debug("Received DeepSeek response: {}", responseBody);
 
             int status = response.getCode();
+            call.finish(status, body.length);
             return switch (status) {
                 case 200 -> parseDeepSeekResponse(responseBody);
-                case 429 -> "DeepSeek quota exceeded. Check account balance.";
-                case 401 -> "Authorisation error DeepSeek API. Check API key.";
-                default -> "DeepSeek Error (code: " + response.getCode() + "). Try again later.";
+                case 429 -> CallOutcome.failure("DeepSeek quota exceeded. Check account balance.");
+                case 401 -> CallOutcome.failure("Authorisation error DeepSeek API. Check API key.");
+                default -> CallOutcome.failure("DeepSeek Error (code: " + response.getCode() + "). Try again later.");
             };
         } catch (Exception e) {
+            call.fail(e);
             log.error("Error sending request to DeepSeek", e);
-            return "Error sending request to DeepSeek: " + e.getMessage();
+            return CallOutcome.failure("Error sending request to DeepSeek: " + e.getMessage());
         }
     }
 
-    private String parseDeepSeekResponse(String responseBody) throws Exception {
+    String parseDeepSeekResponse(String responseBody) throws Exception {
         JsonNode jsonNode = objectMapper.readTree(responseBody);
+        usageListener.onUsage(TokenUsage.from(jsonNode));
         JsonNode choices = jsonNode.get("choices");
         if (choices != null && choices.isArray() && !choices.isEmpty()) {
             JsonNode message = choices.get(0).get("message");
             if (message != null && message.has("content")) {
                 String result = message.get("content").asText().trim();
-                result = markdownConverter.convertMarkdownToTelegramHtml(result);
                 log.debug("Received DeepSeek response of length: {}", result.length());
                 return result;
             }
         }
         log.warn("Could not parse DeepSeek response: {}", responseBody);
-        return "Could not parse DeepSeek response";
+        return CallOutcome.failure("Could not parse DeepSeek response");
     }
 }
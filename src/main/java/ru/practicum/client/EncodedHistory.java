@@ -0,0 +1,58 @@
+package ru.practicum.client;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.RawValue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+// Уже сериализованные сообщения истории в формате провайдера. Клиент создаётся на чат и модель,
+// так что кэш тоже принадлежит одному чату: на каждом ходу кодируются только новые сообщения,
+// остальные вставляются в тело запроса готовым JSON через RawValue.
+// Кэш сверяется с переданной историей: вытесненные при обрезке и после /clear сообщения из него уходят.
+final class EncodedHistory {
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final Function<Map<String, String>, Object> shape;
+    private Map<Map<String, String>, RawValue> fragments = new HashMap<>();
+
+    private EncodedHistory(Function<Map<String, String>, Object> shape) {
+        this.shape = shape;
+    }
+
+    // {"role": ..., "content": ...} — OpenAI-совместимые API и Anthropic
+    static EncodedHistory chat() {
+        return new EncodedHistory(m -> Map.of("role", m.get("role"), "content", m.get("content")));
+    }
+
+    // {"role": user|model, "parts": [{"text": ...}]} — Gemini
+    static EncodedHistory gemini() {
+        return new EncodedHistory(m -> Map.of(
+                "role", "assistant".equals(m.get("role")) ? "model" : m.get("role"),
+                "parts", List.of(Map.of("text", m.get("content")))));
+    }
+
+    // Сообщения истории готовым JSON в том же порядке; один клиент могут звать параллельно (/compare)
+    synchronized List<Object> encode(List<Map<String, String>> history) throws JsonProcessingException {
+        // пустая история — вызов без контекста (/compare, inline), а не очищенный чат: кэш не трогаем
+        if (history == null || history.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        Map<Map<String, String>, RawValue> next = new HashMap<>(history.size() * 2);
+        List<Object> encoded = new ArrayList<>(history.size() + 1);
+        for (Map<String, String> message : history) {
+            RawValue raw = fragments.get(message);
+            if (raw == null) raw = next.get(message);
+            if (raw == null) raw = new RawValue(MAPPER.writeValueAsString(shape.apply(message)));
+            next.put(message, raw);
+            encoded.add(raw);
+        }
+        fragments = next;
+        return encoded;
+    }
+}
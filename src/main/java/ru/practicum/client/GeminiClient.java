@@ -9,30 +9,40 @@ import org.apache.hc.client5.http.impl.classic.CloseableHttpResponse;
 import org.apache.hc.core5.http.io.entity.EntityUtils;
 import org.apache.hc.core5.http.io.entity.StringEntity;
 import ru.practicum.dto.GeminiDto;
-import ru.practicum.utils.MarkdownToHtmlConverter;
+import ru.practicum.metrics.ProviderMetrics;
+import ru.practicum.usage.TokenUsage;
+import ru.practicum.usage.UsageListener;
 
 import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.function.BooleanSupplier;
 
 @Slf4j
 public class GeminiClient implements AiTextSender, AiImageSender {
     private final GeminiDto dto;
     private final ObjectMapper objectMapper;
     private final CloseableHttpClient httpClient;
-    private final MarkdownToHtmlConverter markdownConverter;
+    private final ProviderMetrics metrics;
+    private final UsageListener usageListener;
+    private final EncodedHistory encodedHistory = EncodedHistory.gemini();
+    // Поиск Google подключается, пока его не отключил brownout
+    private final BooleanSupplier groundingAllowed;
 
     private static final int MAX_OUTPUT_TOKENS_FLASH = 8192;
     private static final int MAX_OUTPUT_TOKENS_PRO = 32000;
 
-    public GeminiClient(String baseUrl, String apiKey, String modelName, CloseableHttpClient httpClient) {
+    public GeminiClient(String baseUrl, String apiKey, String modelName, CloseableHttpClient httpClient, ProviderMetrics metrics,
+                        UsageListener usageListener, BooleanSupplier groundingAllowed) {
         this.dto = new GeminiDto();
         this.dto.setBaseUrl(baseUrl);
         this.dto.setApiKey(apiKey);
         this.dto.setModel(modelName);
 
         this.httpClient = httpClient;
+        this.metrics = metrics;
+        this.usageListener = usageListener;
+        this.groundingAllowed = groundingAllowed;
         this.objectMapper = new ObjectMapper();
-        this.markdownConverter = new MarkdownToHtmlConverter();
     }
 
     @Override
@@ -52,7 +62,7 @@ public class GeminiClient implements AiTextSender, AiImageSender {
             return executeRequest(httpPost);
         } catch (Exception e) {
             log.error("Error sending message to Gemini", e);
-            return "Извините, произошла ошибка при отправке сообщения: " + e.getMessage();
+            return CallOutcome.failure("Извините, произошла ошибка при отправке сообщения: " + e.getMessage());
         }
     }
 
@@ -73,7 +83,7 @@ public class GeminiClient implements AiTextSender, AiImageSender {
             return executeRequest(httpPost);
         } catch (Exception e) {
             log.error("Error sending image to Gemini", e);
-            return "Извините, произошла ошибка при отправке изображения: " + e.getMessage();
+            return CallOutcome.failure("Извините, произошла ошибка при отправке изображения: " + e.getMessage());
         }
     }
 
@@ -84,27 +94,17 @@ public class GeminiClient implements AiTextSender, AiImageSender {
                 : MAX_OUTPUT_TOKENS_FLASH;
     }
 
-    private String createGeminiRequestBody(String userMessage, List<Map<String, String>> history) throws Exception {
+    String createGeminiRequestBody(String userMessage, List<Map<String, String>> history) throws Exception {
         String model = dto.getModel();
-        List<Map<String, Object>> contents = new ArrayList<>();
-
-        if (history != null) {
-            for (Map<String, String> historyMessage : history) {
-                String role = historyMessage.get("role");
-                // Конвертируем assistant в model для Gemini API
-                if ("assistant".equals(role)) {
-                    role = "model";
-                }
-                contents.add(Map.of("role", role, "parts", List.of(Map.of("text", historyMessage.get("content")))));
-            }
-        }
+        // История уже в формате Gemini (assistant → model), кодируются только новые сообщения
+        List<Object> contents = encodedHistory.encode(history);
 
         // Текущее сообщение пользователя
         contents.add(Map.of("role", "user", "parts", List.of(Map.of("text", userMessage))));
 
         Map<String, Object> requestBody = new HashMap<>();
         requestBody.put("contents", contents);
-        if (model.equals("gemini-2.5-flash")) {
+        if (model.equals("gemini-2.5-flash") && groundingAllowed.getAsBoolean()) {
             Map<String, Object> googleSearch = new HashMap<>();
 
             Map<String, Object> tool = new HashMap<>();
@@ -125,21 +125,10 @@ public class GeminiClient implements AiTextSender, AiImageSender {
         return json;
     }
 
-    private String createGeminiImageRequestBody(String userMessage, String base64Image, List<Map<String, String>> history) throws Exception {
+    String createGeminiImageRequestBody(String userMessage, String base64Image, List<Map<String, String>> history) throws Exception {
         String model = dto.getModel();
-        List<Map<String, Object>> contents = new ArrayList<>();
-
         // История с правильными ролями
-        if (history != null) {
-            for (Map<String, String> historyMessage : history) {
-                String role = historyMessage.get("role");
-                // Конвертируем assistant в model для Gemini API
-                if ("assistant".equals(role)) {
-                    role = "model";
-                }
-                contents.add(Map.of("role", role, "parts", List.of(Map.of("text", historyMessage.get("content")))));
-            }
-        }
+        List<Object> contents = encodedHistory.encode(history);
 
         // Текущее сообщение с изображением
         List<Map<String, Object>> parts = new ArrayList<>();
@@ -163,25 +152,31 @@ public class GeminiClient implements AiTextSender, AiImageSender {
     }
 
     private String executeRequest(HttpPost httpPost) {
+        ProviderMetrics.Call call = metrics.start(httpPost);
+        CancellationToken.bind(httpPost);
         try (CloseableHttpResponse response = httpClient.execute(httpPost)) {
-            String responseBody = EntityUtils.toString(response.getEntity(), StandardCharsets.UTF_8);
+            byte[] body = EntityUtils.toByteArray(response.getEntity());
+            String responseBody = new String(body, StandardCharsets.UTF_8);
             log.debug("Received Gemini response: {}", responseBody);
 
             int status = response.getCode();
+            call.finish(status, body.length);
             return switch (status) {
                 case 200 -> parseGeminiResponse(responseBody);
-                case 429 -> "Gemini quota exceeded. Check account balance.";
-                case 401 -> "Authorisation error Gemini API. Check API key.";
-                default -> "Gemini Error (code: " + response.getCode() + "). Try again later.";
+                case 429 -> CallOutcome.failure("Gemini quota exceeded. Check account balance.");
+                case 401 -> CallOutcome.failure("Authorisation error Gemini API. Check API key.");
+                default -> CallOutcome.failure("Gemini Error (code: " + response.getCode() + "). Try again later.");
             };
         } catch (Exception e) {
+            call.fail(e);
             log.error("Error sending image to Gemini", e);
-            return "Error sending request to Gemini: " + e.getMessage();
+            return CallOutcome.failure("Error sending request to Gemini: " + e.getMessage());
         }
     }
 
-    private String parseGeminiResponse(String responseBody) throws Exception {
+    String parseGeminiResponse(String responseBody) throws Exception {
         JsonNode jsonNode = objectMapper.readTree(responseBody);
+        usageListener.onUsage(TokenUsage.from(jsonNode));
         JsonNode candidates = jsonNode.get("candidates");
 
         if (candidates != null && candidates.isArray() && candidates.size() > 0) {
@@ -201,8 +196,7 @@ public class GeminiClient implements AiTextSender, AiImageSender {
                 for (JsonNode part : content.get("parts")) {
                     JsonNode textNode = part.get("text");
                     if (textNode != null) {
-                        String raw = textNode.asText().trim();
-                        String result = markdownConverter.convertMarkdownToTelegramHtml(raw);
+                        String result = textNode.asText().trim();
 
                         if ("MAX_TOKENS".equals(finishReason != null ? finishReason.asText() : "")) {
                             result += "\n\n⚠️ _Ответ мог быть обрезан. Попробуйте очистить историю командой /clear_";
@@ -213,11 +207,11 @@ public class GeminiClient implements AiTextSender, AiImageSender {
             }
 
             if ("MAX_TOKENS".equals(finishReason != null ? finishReason.asText() : "")) {
-                return "⚠️ Превышен лимит токенов. Попробуйте:\n• Очистить историю (/clear)\n• Задать более короткий вопрос\n• Разбить запрос на части";
+                return CallOutcome.failure("⚠️ Превышен лимит токенов. Попробуйте:\n\n- Очистить историю (/clear)\n- Задать более короткий вопрос\n- Разбить запрос на части");
             }
         }
 
         log.warn("Could not parse Gemini response: {}", responseBody);
-        return "Извините, не удалось получить ответ от Gemini";
+        return CallOutcome.failure("Извините, не удалось получить ответ от Gemini");
     }
 }
@@ -9,10 +9,11 @@ import org.apache.hc.client5.http.impl.classic.CloseableHttpResponse;
 import org.apache.hc.core5.http.io.entity.EntityUtils;
 import org.apache.hc.core5.http.io.entity.StringEntity;
 import ru.practicum.dto.GrokDto;
-import ru.practicum.utils.MarkdownToHtmlConverter;
+import ru.practicum.metrics.ProviderMetrics;
+import ru.practicum.usage.TokenUsage;
+import ru.practicum.usage.UsageListener;
 
 import java.nio.charset.StandardCharsets;
-import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -23,20 +24,24 @@ public class GrokClient implements AiTextSender {
     private final GrokDto dto;
     private final ObjectMapper objectMapper;
     private final CloseableHttpClient httpClient;
-    private final MarkdownToHtmlConverter markdownConverter;
+    private final ProviderMetrics metrics;
+    private final UsageListener usageListener;
+    private final EncodedHistory encodedHistory = EncodedHistory.chat();
 
     private static final int MAX_TOKENS_GROK_4 = 16384;
     private static final int MAX_TOKENS_GROK_3 = 8192;
 
-    public GrokClient(String baseUrl, String apiKey, String modelName, CloseableHttpClient httpClient) {
+    public GrokClient(String baseUrl, String apiKey, String modelName, CloseableHttpClient httpClient, ProviderMetrics metrics,
+                      UsageListener usageListener) {
         this.dto = new GrokDto();
         this.dto.setBaseUrl(baseUrl);
         this.dto.setApiKey(apiKey);
         this.dto.setModel(modelName);
 
         this.httpClient = httpClient;
+        this.metrics = metrics;
+        this.usageListener = usageListener;
         this.objectMapper = new ObjectMapper();
-        this.markdownConverter = new MarkdownToHtmlConverter();
     }
 
     @Override
@@ -53,7 +58,7 @@ public class GrokClient implements AiTextSender {
             return executeRequest(httpPost);
         } catch (Exception e) {
             log.error("Error in GrokClient", e);
-            return "Ошибка: " + e.getMessage();
+            return CallOutcome.failure("Ошибка: " + e.getMessage());
         }
     }
 
@@ -61,11 +66,8 @@ public class GrokClient implements AiTextSender {
         return dto.getModel().toLowerCase().contains("4") ? MAX_TOKENS_GROK_4 : MAX_TOKENS_GROK_3;
     }
 
-    private String createRequestBody(String userMessage, List<Map<String, String>> history) throws Exception {
-        List<Map<String, Object>> messages = new ArrayList<>();
-        for (Map<String, String> msg : history) {
-            messages.add(Map.of("role", msg.get("role"), "content", msg.get("content")));
-        }
+    String createRequestBody(String userMessage, List<Map<String, String>> history) throws Exception {
+        List<Object> messages = encodedHistory.encode(history);
         messages.add(Map.of("role", "user", "content", userMessage));
 
         Map<String, Object> body = new HashMap<>();
@@ -78,38 +80,43 @@ public class GrokClient implements AiTextSender {
     }
 
     private String executeRequest(HttpPost httpPost) {
+        ProviderMetrics.Call call = metrics.start(httpPost);
+        CancellationToken.bind(httpPost);
         try (CloseableHttpResponse response = httpClient.execute(httpPost)) {
-            String responseBody = EntityUtils.toString(response.getEntity(), StandardCharsets.UTF_8);
+            byte[] body = EntityUtils.toByteArray(response.getEntity());
+            String responseBody = new String(body, StandardCharsets.UTF_8);
             log.debug("Received Grok response: {}", responseBody);
 
             int status = response.getCode();
+            call.finish(status, body.length);
             return switch (status) {
                 case 200 -> parseResponse(responseBody);
-                case 429 -> "Grok quota exceeded. Check account balance.";
-                case 401 -> "Authorisation error Grok API. Check API key.";
-                default -> "Grok Error (code: " + response.getCode() + "). Try again later.";
+                case 429 -> CallOutcome.failure("Grok quota exceeded. Check account balance.");
+                case 401 -> CallOutcome.failure("Authorisation error Grok API. Check API key.");
+                default -> CallOutcome.failure("Grok Error (code: " + response.getCode() + "). Try again later.");
             };
         } catch (Exception e) {
+            call.fail(e);
             log.error("Error sending image to DeepSeek", e);
-            return "Error sending request to DeepSeek: " + e.getMessage();
+            return CallOutcome.failure("Error sending request to DeepSeek: " + e.getMessage());
         }
     }
 
-    private String parseResponse(String responseBody) throws Exception {
+    String parseResponse(String responseBody) throws Exception {
         JsonNode root = objectMapper.readTree(responseBody);
+        usageListener.onUsage(TokenUsage.from(root));
         JsonNode choices = root.path("choices");
 
         if (choices.isArray() && choices.size() > 0) {
             JsonNode message = choices.get(0).path("message");
             if (message.has("content")) {
                 String result = message.get("content").asText().trim();
-                result = markdownConverter.convertMarkdownToTelegramHtml(result);
                 log.debug("Grok response length: {}", result.length());
                 return result;
             }
         }
 
         log.warn("Failed to parse Grok response: {}", responseBody);
-        return "Извините, не удалось получить ответ от Grok.";
+        return CallOutcome.failure("Извините, не удалось получить ответ от Grok.");
     }
 }
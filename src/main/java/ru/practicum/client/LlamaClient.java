@@ -10,7 +10,9 @@ import org.apache.hc.core5.http.io.entity.EntityUtils;
 import org.apache.hc.core5.http.io.entity.StringEntity;
 import org.springframework.stereotype.Component;
 import ru.practicum.dto.LlamaDto;
-import ru.practicum.utils.MarkdownToHtmlConverter;
+import ru.practicum.metrics.ProviderMetrics;
+import ru.practicum.usage.TokenUsage;
+import ru.practicum.usage.UsageListener;
 
 import java.nio.charset.StandardCharsets;
 import java.util.*;
@@ -20,17 +22,21 @@ public class LlamaClient implements AiTextSender {
     private final LlamaDto dto;
     private final ObjectMapper objectMapper;
     private final CloseableHttpClient httpClient;
-    private final MarkdownToHtmlConverter markdownConverter;
+    private final ProviderMetrics metrics;
+    private final UsageListener usageListener;
+    private final EncodedHistory encodedHistory = EncodedHistory.chat();
 
-    public LlamaClient(String baseUrl, String apiKey, String modelName, CloseableHttpClient httpClient) {
+    public LlamaClient(String baseUrl, String apiKey, String modelName, CloseableHttpClient httpClient, ProviderMetrics metrics,
+                       UsageListener usageListener) {
         this.dto = new LlamaDto();
         this.dto.setBaseUrl(baseUrl);
         this.dto.setApiKey(apiKey);
         this.dto.setModel(modelName);
 
         this.httpClient = httpClient;
+        this.metrics = metrics;
+        this.usageListener = usageListener;
         this.objectMapper = new ObjectMapper();
-        this.markdownConverter = new MarkdownToHtmlConverter();
     }
 
     @Override
@@ -48,18 +54,13 @@ public class LlamaClient implements AiTextSender {
             return executeRequest(httpPost);
         } catch (Exception e) {
             log.error("Error sending message to Llama", e);
-            return "Извините, произошла ошибка при отправке сообщения: " + e.getMessage();
+            return CallOutcome.failure("Извините, произошла ошибка при отправке сообщения: " + e.getMessage());
         }
     }
 
-    private String createLlamaRequestBody(String userMessage, List<Map<String, String>> history) throws Exception {
+    String createLlamaRequestBody(String userMessage, List<Map<String, String>> history) throws Exception {
         String model = dto.getModel();
-        List<Map<String, Object>> messages = new ArrayList<>();
-        if (history != null) {
-            for (Map<String, String> h : history) {
-                messages.add(Map.of("role", h.get("role"), "content", h.get("content")));
-            }
-        }
+        List<Object> messages = encodedHistory.encode(history);
         messages.add(Map.of("role", "user", "content", userMessage));
 
         Map<String, Object> body = new HashMap<>();
@@ -74,36 +75,41 @@ public class LlamaClient implements AiTextSender {
     }
 
     private String executeRequest(HttpPost httpPost) {
+        ProviderMetrics.Call call = metrics.start(httpPost);
+        CancellationToken.bind(httpPost);
         try (CloseableHttpResponse response = httpClient.execute(httpPost)) {
-            String responseBody = EntityUtils.toString(response.getEntity(), StandardCharsets.UTF_8);
+            byte[] body = EntityUtils.toByteArray(response.getEntity());
+            String responseBody = new String(body, StandardCharsets.UTF_8);
             log.debug("Received Llama response: {}", responseBody);
 
             int status = response.getCode();
+            call.finish(status, body.length);
             return switch (status) {
                 case 200 -> parseLlamaResponse(responseBody);
-                case 429 -> "Llama quota exceeded. Check account balance.";
-                case 401 -> "Authorisation error Llama API. Check API key.";
-                default -> "Llama Error (code: " + response.getCode() + "). Try again later.";
+                case 429 -> CallOutcome.failure("Llama quota exceeded. Check account balance.");
+                case 401 -> CallOutcome.failure("Authorisation error Llama API. Check API key.");
+                default -> CallOutcome.failure("Llama Error (code: " + response.getCode() + "). Try again later.");
             };
         } catch (Exception e) {
+            call.fail(e);
             log.error("Error sending image to LLama", e);
-            return "Error sending request to Llama: " + e.getMessage();
+            return CallOutcome.failure("Error sending request to Llama: " + e.getMessage());
         }
     }
 
-    private String parseLlamaResponse(String responseBody) throws Exception {
+    String parseLlamaResponse(String responseBody) throws Exception {
         JsonNode jsonNode = objectMapper.readTree(responseBody);
+        usageListener.onUsage(TokenUsage.from(jsonNode));
         JsonNode choices = jsonNode.get("choices");
         if (choices != null && choices.isArray() && !choices.isEmpty()) {
             JsonNode message = choices.get(0).get("message");
             if (message != null && message.has("content")) {
                 String result = message.get("content").asText().trim();
-                result = markdownConverter.convertMarkdownToTelegramHtml(result);
                 log.debug("Received Llama parsed response of length: {}", result.length());
                 return result;
             }
         }
         log.warn("Could not parse Llama response: {}", responseBody);
-        return "Извините, не удалось получить ответ от Llama";
+        return CallOutcome.failure("Извините, не удалось получить ответ от Llama");
     }
 }
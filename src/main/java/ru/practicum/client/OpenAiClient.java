@@ -9,7 +9,9 @@ import org.apache.hc.client5.http.impl.classic.CloseableHttpResponse;
 import org.apache.hc.core5.http.io.entity.EntityUtils;
 import org.apache.hc.core5.http.io.entity.StringEntity;
 import ru.practicum.dto.OpenAiDto;
-import ru.practicum.utils.MarkdownToHtmlConverter;
+import ru.practicum.metrics.ProviderMetrics;
+import ru.practicum.usage.TokenUsage;
+import ru.practicum.usage.UsageListener;
 
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
@@ -22,17 +24,21 @@ public class OpenAiClient implements AiTextSender, AiImageSender {
     private final OpenAiDto dto;
     private final ObjectMapper objectMapper;
     private final CloseableHttpClient httpClient;
-    private final MarkdownToHtmlConverter markdownConverter;
+    private final ProviderMetrics metrics;
+    private final UsageListener usageListener;
+    private final EncodedHistory encodedHistory = EncodedHistory.chat();
 
-    public OpenAiClient(String baseUrl, String apiKey, String modelName, CloseableHttpClient httpClient) {
+    public OpenAiClient(String baseUrl, String apiKey, String modelName, CloseableHttpClient httpClient, ProviderMetrics metrics,
+                        UsageListener usageListener) {
         this.dto = new OpenAiDto();
         this.dto.setBaseUrl(baseUrl);
         this.dto.setApiKey(apiKey);
         this.dto.setModel(modelName);
 
         this.httpClient = httpClient;
+        this.metrics = metrics;
+        this.usageListener = usageListener;
         this.objectMapper = new ObjectMapper();
-        this.markdownConverter = new MarkdownToHtmlConverter();
     }
 
     @Override
@@ -51,7 +57,7 @@ public class OpenAiClient implements AiTextSender, AiImageSender {
             return executeRequest(httpPost);
         } catch (Exception e) {
             log.error("Error sending message to OpenAI", e);
-            return "Извините, произошла ошибка при отправке сообщения: " + e.getMessage();
+            return CallOutcome.failure("Извините, произошла ошибка при отправке сообщения: " + e.getMessage());
         }
     }
 
@@ -71,11 +77,11 @@ public class OpenAiClient implements AiTextSender, AiImageSender {
             return executeRequest(httpPost);
         } catch (Exception e) {
             log.error("Error sending image to OpenAI", e);
-            return "Извините, произошла ошибка при отправке изображения: " + e.getMessage();
+            return CallOutcome.failure("Извините, произошла ошибка при отправке изображения: " + e.getMessage());
         }
     }
 
-    private String createOpenAiRequestBody(String userMessage, List<Map<String, String>> history) throws Exception {
+    String createOpenAiRequestBody(String userMessage, List<Map<String, String>> history) throws Exception {
         String model = dto.getModel();
         Map<String, Object> requestBody = new HashMap<>();
         requestBody.put("model", model);
@@ -85,13 +91,11 @@ public class OpenAiClient implements AiTextSender, AiImageSender {
         return json;
     }
 
-    private String createOpenAiImageRequestBody(String userMessage, String base64Image, List<Map<String, String>> history) throws Exception {
+    String createOpenAiImageRequestBody(String userMessage, String base64Image, List<Map<String, String>> history) throws Exception {
         String model = dto.getModel();
-        List<Map<String, Object>> messages = new ArrayList<>();
+        List<Object> messages = new ArrayList<>();
         messages.add(Map.of("role", "system", "content", "Ты дружелюбный ассистент, отвечай кратко и на русском."));
-        for (Map<String, String> historyMessage : history) {
-            messages.add(Map.of("role", historyMessage.get("role"), "content", historyMessage.get("content")));
-        }
+        messages.addAll(encodedHistory.encode(history));
         List<Map<String, Object>> content = new ArrayList<>();
         content.add(Map.of(
                 "type", "image_url",
@@ -109,30 +113,35 @@ public class OpenAiClient implements AiTextSender, AiImageSender {
     }
 
     private String executeRequest(HttpPost httpPost) {
+        ProviderMetrics.Call call = metrics.start(httpPost);
+        CancellationToken.bind(httpPost);
         try (CloseableHttpResponse response = httpClient.execute(httpPost)) {
-            String responseBody = EntityUtils.toString(response.getEntity(), StandardCharsets.UTF_8);
+            byte[] body = EntityUtils.toByteArray(response.getEntity());
+            String responseBody = new String(body, StandardCharsets.UTF_8);
             log.debug("Received OpenAi response: {}", responseBody);
 
             int status = response.getCode();
+            call.finish(status, body.length);
             return switch (status) {
                 case 200 -> parseOpenAiResponse(responseBody);
-                case 429 -> "OpenAi quota exceeded. Check account balance.";
-                case 401 -> "Authorisation error OpenAi API. Check API key.";
-                default -> "OpenAi Error (code: " + response.getCode() + "). Try again later.";
+                case 429 -> CallOutcome.failure("OpenAi quota exceeded. Check account balance.");
+                case 401 -> CallOutcome.failure("Authorisation error OpenAi API. Check API key.");
+                default -> CallOutcome.failure("OpenAi Error (code: " + response.getCode() + "). Try again later.");
             };
         } catch (Exception e) {
+            call.fail(e);
             log.error("Error sending image to OpenAi", e);
-            return "Error sending request to OpenAi: " + e.getMessage();
+            return CallOutcome.failure("Error sending request to OpenAi: " + e.getMessage());
         }
     }
 
-    private String parseOpenAiResponse(String responseBody) throws Exception {
+    String parseOpenAiResponse(String responseBody) throws Exception {
         JsonNode jsonNode = objectMapper.readTree(responseBody);
+        usageListener.onUsage(TokenUsage.from(jsonNode));
 
 //        // проверяем наличие output_text (удобное поле)
 //        if (jsonNode.has("output_text")) {
 //            String result = jsonNode.get("output_text").asText().trim();
-//            result = markdownConverter.convertMarkdownToTelegramHtml(result);
 //            log.debug("Received OpenAI response of length: {}", result.length());
 //            return result;
 //        }
@@ -149,7 +158,6 @@ public class OpenAiClient implements AiTextSender, AiImageSender {
                             // Ищем элемент с типом "output_text"
                             if (contentItem.has("type") && "output_text".equals(contentItem.get("type").asText())) {
                                 String result = contentItem.get("text").asText().trim();
-                                result = markdownConverter.convertMarkdownToTelegramHtml(result);
                                 log.debug("Received OpenAI response of length: {}", result.length());
                                 return result;
                             }
@@ -160,6 +168,6 @@ public class OpenAiClient implements AiTextSender, AiImageSender {
         }
 
         log.warn("Could not parse OpenAI response: {}", responseBody);
-        return "Извините, не удалось получить ответ от OpenAI";
+        return CallOutcome.failure("Извините, не удалось получить ответ от OpenAI");
     }
 }
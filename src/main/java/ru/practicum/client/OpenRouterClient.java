@@ -9,7 +9,9 @@ import org.apache.hc.client5.http.impl.classic.CloseableHttpResponse;
 import org.apache.hc.core5.http.io.entity.EntityUtils;
 import org.apache.hc.core5.http.io.entity.StringEntity;
 import ru.practicum.dto.OpenRouterDto;
-import ru.practicum.utils.MarkdownToHtmlConverter;
+import ru.practicum.metrics.ProviderMetrics;
+import ru.practicum.usage.TokenUsage;
+import ru.practicum.usage.UsageListener;
 
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
@@ -22,17 +24,21 @@ public class OpenRouterClient implements AiTextSender, AiImageSender {
     private final OpenRouterDto dto;
     private final ObjectMapper objectMapper;
     private final CloseableHttpClient httpClient;
-    private final MarkdownToHtmlConverter markdownConverter;
+    private final ProviderMetrics metrics;
+    private final UsageListener usageListener;
+    private final EncodedHistory encodedHistory = EncodedHistory.chat();
 
-    public OpenRouterClient(String baseUrl, String apiKey, String modelName, CloseableHttpClient httpClient) {
+    public OpenRouterClient(String baseUrl, String apiKey, String modelName, CloseableHttpClient httpClient, ProviderMetrics metrics,
+                            UsageListener usageListener) {
         this.dto = new OpenRouterDto();
         this.dto.setBaseUrl(baseUrl);
         this.dto.setApiKey(apiKey);
         this.dto.setModel(modelName);
 
         this.httpClient = httpClient;
+        this.metrics = metrics;
+        this.usageListener = usageListener;
         this.objectMapper = new ObjectMapper();
-        this.markdownConverter = new MarkdownToHtmlConverter();
     }
 
     @Override
@@ -51,7 +57,7 @@ public class OpenRouterClient implements AiTextSender, AiImageSender {
             return executeRequest(httpPost);
         } catch (Exception e) {
             log.error("Error sending message to OpenRouter", e);
-            return "Извините, произошла ошибка при отправке сообщения: " + e.getMessage();
+            return CallOutcome.failure("Извините, произошла ошибка при отправке сообщения: " + e.getMessage());
         }
     }
 
@@ -71,22 +77,18 @@ public class OpenRouterClient implements AiTextSender, AiImageSender {
             return executeRequest(httpPost);
         } catch (Exception e) {
             log.error("Error sending image to OpenRouter", e);
-            return "Извините, произошла ошибка при отправке изображения: " + e.getMessage();
+            return CallOutcome.failure("Извините, произошла ошибка при отправке изображения: " + e.getMessage());
         }
     }
 
-    private String createOpenRouterRequestBody(String userMessage, List<Map<String, String>> history) throws Exception {
+    String createOpenRouterRequestBody(String userMessage, List<Map<String, String>> history) throws Exception {
         String model = dto.getModel();
         List<Map<String, Object>> plugins = new ArrayList<>();
 
         plugins.add(Map.of("id", "web", "engine", "exa", "max_results", 1));
 
-        List<Map<String, String>> messages = new ArrayList<>();
-
         // Добавляем историю
-        if (history != null && !history.isEmpty()) {
-            messages.addAll(history);
-        }
+        List<Object> messages = encodedHistory.encode(history);
 
         messages.add(Map.of("role", "user", "content", userMessage));
 
@@ -101,20 +103,14 @@ public class OpenRouterClient implements AiTextSender, AiImageSender {
         return json;
     }
 
-    private String createOpenRouterImageRequestBody(String userMessage, String base64Image, List<Map<String, String>> history) throws Exception {
+    String createOpenRouterImageRequestBody(String userMessage, String base64Image, List<Map<String, String>> history) throws Exception {
         String model = dto.getModel();
         List<Map<String, Object>> plugins = new ArrayList<>();
 
         plugins.add(Map.of("id", "web", "engine", "exa", "max_results", 1));
 
-        List<Map<String, Object>> messages = new ArrayList<>();
-
         // Добавляем историю
-        if (history != null) {
-            for (Map<String, String> historyMessage : history) {
-                messages.add(Map.of("role", historyMessage.get("role"), "content", historyMessage.get("content")));
-            }
-        }
+        List<Object> messages = encodedHistory.encode(history);
 
         // Добавляем текущее сообщение с изображением
         List<Map<String, Object>> content = new ArrayList<>();
@@ -137,37 +133,42 @@ public class OpenRouterClient implements AiTextSender, AiImageSender {
     }
 
     private String executeRequest(HttpPost httpPost) {
+        ProviderMetrics.Call call = metrics.start(httpPost);
+        CancellationToken.bind(httpPost);
         try (CloseableHttpResponse response = httpClient.execute(httpPost)) {
-            String responseBody = EntityUtils.toString(response.getEntity(), StandardCharsets.UTF_8);
+            byte[] body = EntityUtils.toByteArray(response.getEntity());
+            String responseBody = new String(body, StandardCharsets.UTF_8);
             log.debug("Received OpenRouter response: {}", responseBody);
 
             int status = response.getCode();
+            call.finish(status, body.length);
             return switch (status) {
                 case 200 -> parseOpenRouterResponse(responseBody);
-                case 429 -> "OpenRouter quota exceeded. Check account balance.";
-                case 401 -> "Authorisation error OpenRouter API. Check API key.";
-                default -> "OpenRouter Error (code: " + response.getCode() + "). Try again later.";
+                case 429 -> CallOutcome.failure("OpenRouter quota exceeded. Check account balance.");
+                case 401 -> CallOutcome.failure("Authorisation error OpenRouter API. Check API key.");
+                default -> CallOutcome.failure("OpenRouter Error (code: " + response.getCode() + "). Try again later.");
             };
         } catch (Exception e) {
+            call.fail(e);
             log.error("Error sending image to OpenRouter", e);
-            return "Error sending request to OpenRouter: " + e.getMessage();
+            return CallOutcome.failure("Error sending request to OpenRouter: " + e.getMessage());
         }
     }
 
-    private String parseOpenRouterResponse(String responseBody) throws Exception {
+    String parseOpenRouterResponse(String responseBody) throws Exception {
         JsonNode jsonNode = objectMapper.readTree(responseBody);
+        usageListener.onUsage(TokenUsage.from(jsonNode));
         JsonNode choices = jsonNode.get("choices");
         if (choices != null && choices.isArray() && choices.size() > 0) {
             JsonNode firstChoice = choices.get(0);
             JsonNode message = firstChoice.get("message");
             if (message != null && message.has("content")) {
                 String result = message.get("content").asText().trim();
-                result = markdownConverter.convertMarkdownToTelegramHtml(result);
                 log.debug("Received OpenRouter response of length: {}", result.length());
                 return result;
             }
         }
         log.warn("Could not parse OpenRouter response: {}", responseBody);
-        return "Извините, не удалось получить ответ от OpenRouter";
+        return CallOutcome.failure("Извините, не удалось получить ответ от OpenRouter");
     }
 }
\ No newline at end of file
@@ -0,0 +1,8 @@
+package ru.practicum.client;
+
+// Клиент вернул вместо ответа модели текст ошибки (сбой сети, 4xx/5xx, пустой ответ)
+public class ProviderFailureException extends RuntimeException {
+    public ProviderFailureException(String message) {
+        super(message);
+    }
+}
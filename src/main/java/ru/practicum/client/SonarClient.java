@@ -9,7 +9,9 @@ import org.apache.hc.client5.http.impl.classic.CloseableHttpResponse;
 import org.apache.hc.core5.http.io.entity.EntityUtils;
 import org.apache.hc.core5.http.io.entity.StringEntity;
 import ru.practicum.dto.SonarDto;
-import ru.practicum.utils.MarkdownToHtmlConverter;
+import ru.practicum.metrics.ProviderMetrics;
+import ru.practicum.usage.TokenUsage;
+import ru.practicum.usage.UsageListener;
 
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
@@ -22,17 +24,21 @@ public class SonarClient implements AiTextSender, AiImageSender {
     private final SonarDto dto;
     private final ObjectMapper objectMapper;
     private final CloseableHttpClient httpClient;
-    private final MarkdownToHtmlConverter markdownConverter;
+    private final ProviderMetrics metrics;
+    private final UsageListener usageListener;
+    private final EncodedHistory encodedHistory = EncodedHistory.chat();
 
-    public SonarClient(String baseUrl, String apiKey, String modelName, CloseableHttpClient httpClient) {
+    public SonarClient(String baseUrl, String apiKey, String modelName, CloseableHttpClient httpClient, ProviderMetrics metrics,
+                       UsageListener usageListener) {
         this.dto = new SonarDto();
         this.dto.setBaseUrl(baseUrl);
         this.dto.setApiKey(apiKey);
         this.dto.setModel(modelName);
 
         this.httpClient = httpClient;
+        this.metrics = metrics;
+        this.usageListener = usageListener;
         this.objectMapper = new ObjectMapper();
-        this.markdownConverter = new MarkdownToHtmlConverter();
     }
 
     @Override
@@ -51,7 +57,7 @@ public class SonarClient implements AiTextSender, AiImageSender {
             return executeRequest(httpPost);
         } catch (Exception e) {
             log.error("Error sending message to Sonar", e);
-            return "Извините, произошла ошибка при отправке сообщения: " + e.getMessage();
+            return CallOutcome.failure("Извините, произошла ошибка при отправке сообщения: " + e.getMessage());
         }
     }
 
@@ -71,7 +77,7 @@ public class SonarClient implements AiTextSender, AiImageSender {
             return executeRequest(httpPost);
         } catch (Exception e) {
             log.error("Error sending image to Sonar", e);
-            return "Извините, произошла ошибка при отправке изображения: " + e.getMessage();
+            return CallOutcome.failure("Извините, произошла ошибка при отправке изображения: " + e.getMessage());
         }
     }
 
@@ -132,17 +138,15 @@ public class SonarClient implements AiTextSender, AiImageSender {
         return fixedMessages;
     }
 
-    private String createSonarRequestBody(String userMessage, List<Map<String, String>> history) throws Exception {
+    String createSonarRequestBody(String userMessage, List<Map<String, String>> history) throws Exception {
         String model = dto.getModel();
-        List<Map<String, Object>> messages = new ArrayList<>();
+        List<Object> messages = new ArrayList<>();
 
         // Исправляем структуру сообщений для Perplexity API
         List<Map<String, String>> fixedHistory = fixPerplexityMessageStructure(history);
 
         // Добавляем исправленную историю
-        for (Map<String, String> historyMessage : fixedHistory) {
-            messages.add(Map.of("role", historyMessage.get("role"), "content", historyMessage.get("content")));
-        }
+        messages.addAll(encodedHistory.encode(fixedHistory));
 
         // Добавляем текущее сообщение пользователя
         messages.add(Map.of("role", "user", "content", userMessage));
@@ -158,17 +162,15 @@ public class SonarClient implements AiTextSender, AiImageSender {
         return json;
     }
 
-    private String createSonarImageRequestBody(String userMessage, String base64Image, List<Map<String, String>> history) throws Exception {
+    String createSonarImageRequestBody(String userMessage, String base64Image, List<Map<String, String>> history) throws Exception {
         String model = dto.getModel();
-        List<Map<String, Object>> messages = new ArrayList<>();
+        List<Object> messages = new ArrayList<>();
 
         // Исправляем структуру сообщений для Perplexity API
         List<Map<String, String>> fixedHistory = fixPerplexityMessageStructure(history);
 
         // Добавляем исправленную историю
-        for (Map<String, String> historyMessage : fixedHistory) {
-            messages.add(Map.of("role", historyMessage.get("role"), "content", historyMessage.get("content")));
-        }
+        messages.addAll(encodedHistory.encode(fixedHistory));
 
         // Создаем multimodal сообщение с изображением и текстом
         List<Map<String, Object>> content = new ArrayList<>();
@@ -192,37 +194,42 @@ public class SonarClient implements AiTextSender, AiImageSender {
     }
 
     private String executeRequest(HttpPost httpPost) {
+        ProviderMetrics.Call call = metrics.start(httpPost);
+        CancellationToken.bind(httpPost);
         try (CloseableHttpResponse response = httpClient.execute(httpPost)) {
-            String responseBody = EntityUtils.toString(response.getEntity(), StandardCharsets.UTF_8);
+            byte[] body = EntityUtils.toByteArray(response.getEntity());
+            String responseBody = new String(body, StandardCharsets.UTF_8);
             log.debug("Received Sonar response: {}", responseBody);
 
             int status = response.getCode();
+            call.finish(status, body.length);
             return switch (status) {
                 case 200 -> parseSonarResponse(responseBody);
-                case 429 -> "Sonar quota exceeded. Check account balance.";
-                case 401 -> "Authorisation error Sonar API. Check API key.";
-                default -> "Sonar Error (code: " + response.getCode() + "). Try again later.";
+                case 429 -> CallOutcome.failure("Sonar quota exceeded. Check account balance.");
+                case 401 -> CallOutcome.failure("Authorisation error Sonar API. Check API key.");
+                default -> CallOutcome.failure("Sonar Error (code: " + response.getCode() + "). Try again later.");
             };
         } catch (Exception e) {
+            call.fail(e);
             log.error("Error sending image to Sonar", e);
-            return "Error sending request to Sonar: " + e.getMessage();
+            return CallOutcome.failure("Error sending request to Sonar: " + e.getMessage());
         }
     }
 
-    private String parseSonarResponse(String responseBody) throws Exception {
+    String parseSonarResponse(String responseBody) throws Exception {
         JsonNode jsonNode = objectMapper.readTree(responseBody);
+        usageListener.onUsage(TokenUsage.from(jsonNode));
         JsonNode choices = jsonNode.get("choices");
         if (choices != null && choices.isArray() && !choices.isEmpty()) {
             JsonNode firstChoice = choices.get(0);
             JsonNode message = firstChoice.get("message");
             if (message != null && message.has("content")) {
                 String result = message.get("content").asText().trim();
-                result = markdownConverter.convertMarkdownToTelegramHtml(result);
                 log.debug("Received Sonar response of length: {}", result.length());
                 return result;
             }
         }
         log.warn("Could not parse Sonar response: {}", responseBody);
-        return "Извините, не удалось получить ответ от Sonar";
+        return CallOutcome.failure("Извините, не удалось получить ответ от Sonar");
     }
 }
@@ -0,0 +1,98 @@
+package ru.practicum.cluster;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ru.practicum.config.ClusterConfig;
+import ru.practicum.state.StateStore;
+
+import java.util.*;
+
+// Маршрутизация чатов по экземплярам: членство — heartbeat-записи в StateStore,
+// владелец чата — по консистентному хешу живых узлов. Кольцо перестраивается при входе и выходе узлов.
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ClusterRouter {
+    private static final String NAMESPACE = "cluster.nodes";
+
+    private final ClusterConfig config;
+    private final StateStore store;
+
+    // Запись узла: адрес и время последнего heartbeat
+    public record NodeInfo(String url, long heartbeatAt) {
+    }
+
+    private volatile Map<String, NodeInfo> nodes = Map.of();
+    private volatile ConsistentHashRing ring = new ConsistentHashRing(List.of(), 0);
+
+    @PostConstruct
+    public void join() {
+        if (!config.isEnabled()) return;
+        if (config.getNodeUrl() == null || config.getNodeUrl().isBlank()) {
+            throw new IllegalStateException("cluster.node-url is required when cluster.enabled=true");
+        }
+        heartbeat();
+        log.info("Node {} joined the cluster at {}", config.getNodeId(), config.getNodeUrl());
+    }
+
+    @Scheduled(fixedDelayString = "${cluster.heartbeat-ms:2000}")
+    public void heartbeat() {
+        if (!config.isEnabled()) return;
+
+        long now = System.currentTimeMillis();
+        store.update(NAMESPACE, config.getNodeId(), NodeInfo.class, old -> new NodeInfo(config.getNodeUrl(), now));
+
+        Map<String, NodeInfo> live = new HashMap<>();
+        for (String nodeId : store.keys(NAMESPACE)) {
+            NodeInfo info = store.get(NAMESPACE, nodeId, NodeInfo.class);
+            if (info == null) continue;
+            if (now - info.heartbeatAt() > config.getNodeTtlMs()) {
+                // удаляем только если узел так и не обновился, пока мы решали
+                store.update(NAMESPACE, nodeId, NodeInfo.class,
+                        current -> current != null && now - current.heartbeatAt() > config.getNodeTtlMs() ? null : current);
+                continue;
+            }
+            live.put(nodeId, info);
+        }
+
+        if (!live.keySet().equals(nodes.keySet())) {
+            Set<String> joined = new TreeSet<>(live.keySet());
+            joined.removeAll(nodes.keySet());
+            Set<String> left = new TreeSet<>(nodes.keySet());
+            left.removeAll(live.keySet());
+            ring = new ConsistentHashRing(live.keySet(), config.getVirtualNodes());
+            log.info("Cluster rebalanced: {} nodes, joined {}, left {}", live.size(), joined, left);
+        }
+        nodes = Map.copyOf(live);
+    }
+
+    // Чат обрабатывается этим экземпляром (без кластера — всегда)
+    public boolean isLocal(Long chatId) {
+        if (!config.isEnabled() || chatId == null) return true;
+        String owner = ring.ownerOf(chatId);
+        return owner == null || owner.equals(config.getNodeId());
+    }
+
+    // Адрес владельца чата или null, если чат локальный
+    public String ownerUrl(Long chatId) {
+        if (isLocal(chatId)) return null;
+        NodeInfo info = nodes.get(ring.ownerOf(chatId));
+        return info != null ? info.url() : null;
+    }
+
+    public String nodeId() {
+        return config.getNodeId();
+    }
+
+    @PreDestroy
+    public void leave() {
+        if (!config.isEnabled()) return;
+        // уходим сразу, не дожидаясь TTL: соседи заберут чаты на следующем heartbeat
+        store.remove(NAMESPACE, config.getNodeId());
+        log.info("Node {} left the cluster", config.getNodeId());
+    }
+}
@@ -0,0 +1,53 @@
+package ru.practicum.cluster;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+// Кольцо консистентного хеширования: у каждого узла virtualNodes точек на кольце,
+// чат принадлежит первой точке по часовой стрелке от хеша chatId.
+// При входе или выходе узла переезжает только ~1/N чатов.
+public final class ConsistentHashRing {
+    private final NavigableMap<Long, String> ring = new TreeMap<>();
+
+    public ConsistentHashRing(Collection<String> nodeIds, int virtualNodes) {
+        for (String nodeId : nodeIds) {
+            long nodeHash = hash(nodeId);
+            for (int i = 0; i < virtualNodes; i++) {
+                ring.put(mix(nodeHash + i * 0x9E3779B97F4A7C15L), nodeId);
+            }
+        }
+    }
+
+    // null, если узлов нет
+    public String ownerOf(long chatId) {
+        if (ring.isEmpty()) return null;
+        Map.Entry<Long, String> entry = ring.ceilingEntry(mix(chatId));
+        return entry != null ? entry.getValue() : ring.firstEntry().getValue();
+    }
+
+    public boolean isEmpty() {
+        return ring.isEmpty();
+    }
+
+    private static long hash(String s) {
+        // FNV-1a 64
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < s.length(); i++) {
+            h ^= s.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        return h;
+    }
+
+    // Финализатор MurmurHash3: соседние chatId разлетаются по всему кольцу
+    private static long mix(long k) {
+        k ^= k >>> 33;
+        k *= 0xff51afd7ed558ccdL;
+        k ^= k >>> 33;
+        k *= 0xc4ceb9fe1a85ec53L;
+        k ^= k >>> 33;
+        return k;
+    }
+}
@@ -6,8 +6,12 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Configuration;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 @Data
 @Slf4j
@@ -31,6 +35,33 @@ public class AiModelsConfig {
         private String apiKey;
         private String modelName;
         private String displayName;
+        // Цена в долларах за 1M входных и выходных токенов, для оценки стоимости
+        private double inputPrice;
+        private double outputPrice;
+        // Альтернативные пути к той же модели (напрямую, через OpenRouter, Groq); пусто — только provider выше
+        private List<Endpoint> endpoints = new ArrayList<>();
+
+        // Все пути к модели: явные endpoints или единственный, собранный из полей самой модели
+        public List<Endpoint> allEndpoints() {
+            if (!endpoints.isEmpty()) return endpoints;
+            Endpoint single = new Endpoint();
+            single.setProvider(provider);
+            single.setBaseUrl(baseUrl);
+            single.setApiKey(apiKey);
+            single.setModelName(modelName);
+            return List.of(single);
+        }
+    }
+
+    // Путь к модели через конкретного провайдера; не заданные baseUrl/apiKey берутся из providers
+    @Data
+    public static class Endpoint {
+        private String provider;
+        private String baseUrl;
+        private String apiKey;
+        private String modelName;
+        // Доля трафика при равной задержке
+        private double weight = 1.0;
     }
 
     public Provider getProvider(String key) {
@@ -53,6 +84,17 @@ public class AiModelsConfig {
                     "Default model '" + defaultModel + "' not defined in ai.models");
         }
 
+        // endpoint модели опознаётся по провайдеру: по метрикам провайдера считается его задержка
+        models.forEach((key, model) -> {
+            Set<String> seen = new HashSet<>();
+            for (Endpoint endpoint : model.getEndpoints()) {
+                if (!seen.add(endpoint.getProvider())) {
+                    throw new IllegalStateException(
+                            "Model '" + key + "' has several endpoints with provider '" + endpoint.getProvider() + "'");
+                }
+            }
+        });
+
         log.info("Loaded {} AI models. Default model: {}", models.size(), defaultModel);
     }
 }
@@ -0,0 +1,27 @@
+package ru.practicum.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "brownout")
+public class BrownoutConfig {
+    private boolean enabled = true;
+    // Период пересчёта уровня, мс (читается также в @Scheduled через плейсхолдер)
+    private long checkIntervalMs = 1000;
+    // Пороги очереди и запросов в полёте для уровней 1..4: уровень — наибольший, чей порог достигнут хотя бы по одному
+    private List<Integer> queueThresholds = new ArrayList<>(List.of(10, 25, 50, 100));
+    private List<Integer> inFlightThresholds = new ArrayList<>(List.of(64, 96, 128, 192));
+    // Уровень снижается не раньше, чем нагрузка продержится ниже порога столько времени
+    private long cooldownMs = 10_000;
+    // Сколько последних сообщений истории отправлять модели при урезанной истории
+    private int shortHistory = 4;
+    // Быстрая дешёвая модель для текста и для изображений (пусто — изображения остаются на выбранной модели)
+    private String fallbackModel = "llama-scout";
+    private String fallbackImageModel;
+}
@@ -0,0 +1,23 @@
+package ru.practicum.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.UUID;
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "cluster")
+public class ClusterConfig {
+    // false — один экземпляр, все чаты локальные
+    private boolean enabled;
+    // Уникальный id экземпляра; по умолчанию случайный на каждый запуск
+    private String nodeId = UUID.randomUUID().toString();
+    // Внутренний адрес экземпляра, по которому соседи пересылают апдейты его чатов
+    private String nodeUrl;
+    private int virtualNodes = 128;
+    private long heartbeatMs = 2_000;
+    // Узел без heartbeat дольше этого считается вышедшим, его чаты переходят к соседям
+    private long nodeTtlMs = 10_000;
+}
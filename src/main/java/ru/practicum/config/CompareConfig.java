@@ -0,0 +1,19 @@
+package ru.practicum.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "compare")
+public class CompareConfig {
+    // Модели для /compare без явного списка (ключи из ai.models)
+    private List<String> defaultModels = new ArrayList<>(List.of("gpt-5", "claude-sonnet", "gemini-pro"));
+    // Общий срок на все ответы: кто не успел, тот обрывается
+    private long deadlineMs = 60_000;
+    private int maxModels = 5;
+}
@@ -0,0 +1,17 @@
+package ru.practicum.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "dedup")
+public class DedupConfig {
+    // Файл с максимальным обработанным update_id: после рестарта всё, что не новее, считается повтором
+    private String watermarkFile = "data/update-watermark";
+    // Сколько последних update_id помним точно (битовое окно)
+    private int window = 4096;
+    // Ёмкость одного поколения bloom-фильтра по (chatId, message_id)
+    private int bloomCapacity = 50_000;
+}
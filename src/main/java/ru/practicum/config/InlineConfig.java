@@ -0,0 +1,25 @@
+package ru.practicum.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "inline")
+public class InlineConfig {
+    private boolean enabled = true;
+    // Кандидаты для inline-ответов: берётся самый быстрый по замерам EndpointRouter, без замеров — первый
+    private List<String> models = new ArrayList<>(List.of("gpt-5-nano", "gemini-flash", "llama-scout"));
+    // Срок на ответ модели; Telegram ждёт answerInlineQuery считанные секунды
+    private long deadlineMs = 4_000;
+    // Пока запрос короче, ничего не спрашиваем: пользователь ещё печатает
+    private int minQueryLength = 3;
+    private long cacheTtlMs = 60_000;
+    private int cacheSize = 1_000;
+    // Добавляется перед вопросом: короткий ответ укладывается в срок
+    private String instruction = "Ответь кратко, в 2-3 предложениях.";
+}
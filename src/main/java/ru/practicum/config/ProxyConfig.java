@@ -1,5 +1,7 @@
 package ru.practicum.config;
 
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.httpcomponents.hc5.PoolingHttpClientConnectionManagerMetricsBinder;
 import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.hc.client5.http.auth.AuthScope;
@@ -8,6 +10,8 @@ import org.apache.hc.client5.http.config.RequestConfig;
 import org.apache.hc.client5.http.impl.auth.BasicCredentialsProvider;
 import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
 import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
 import org.apache.hc.core5.http.HttpHost;
 import org.apache.hc.core5.util.Timeout;
 import org.springframework.boot.context.properties.ConfigurationProperties;
@@ -28,10 +32,26 @@ public class ProxyConfig {
     private String username;
     private String password;
 
+    // Пул не должен быть узким местом: на провайдера (маршрут) — до верхней границы адаптивного лимита
+    @Bean
+    public PoolingHttpClientConnectionManager connectionManager(SchedulerConfig schedulerConfig) {
+        return PoolingHttpClientConnectionManagerBuilder.create()
+                .setMaxConnPerRoute(schedulerConfig.getMaxSlots())
+                .setMaxConnTotal(schedulerConfig.getMaxSlots() * 4)
+                .build();
+    }
+
+    // Занятые, свободные и ожидающие соединения пула к AI-провайдерам
+    @Bean
+    public MeterBinder connectionPoolMetrics(PoolingHttpClientConnectionManager connectionManager) {
+        return new PoolingHttpClientConnectionManagerMetricsBinder(connectionManager, "ai-providers");
+    }
+
     @Bean
     @Lazy(false)
-    public CloseableHttpClient createHttpClient() {
-        var clientBuilder = HttpClients.custom();
+    public CloseableHttpClient createHttpClient(PoolingHttpClientConnectionManager connectionManager) {
+        var clientBuilder = HttpClients.custom()
+                .setConnectionManager(connectionManager);
 
         RequestConfig requestConfig = RequestConfig.custom()
                 .setConnectionRequestTimeout(Timeout.of(30, TimeUnit.SECONDS))
@@ -0,0 +1,38 @@
+package ru.practicum.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "quota")
+public class QuotaConfig {
+    private boolean enabled = true;
+    // Файл с дневным расходом токенов и лимитом изображений по чатам
+    private String file = "data/quotas.tsv";
+    // Период сброса на диск, мс (читается также в @Scheduled через плейсхолдер)
+    private long flushIntervalMs = 60_000;
+    // Лимиты по тарифам (тариф чата — scheduler.chat-tiers); тариф без записи использует default
+    private Map<String, Limits> tiers = new HashMap<>(Map.of(SchedulerConfig.DEFAULT_TIER, new Limits()));
+    // Лимиты отдельных чатов поверх тарифа
+    private Map<Long, Limits> chats = new HashMap<>();
+
+    // 0 — без ограничения
+    @Data
+    public static class Limits {
+        private int requestsPerMinute = 20;
+        private long tokensPerDay = 200_000;
+        private int imagesPerHour = 10;
+    }
+
+    public Limits limitsFor(Long chatId, String tier) {
+        Limits own = chats.get(chatId);
+        if (own != null) return own;
+        Limits tierLimits = tiers.get(tier);
+        return tierLimits != null ? tierLimits : tiers.getOrDefault(SchedulerConfig.DEFAULT_TIER, new Limits());
+    }
+}
@@ -0,0 +1,20 @@
+package ru.practicum.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "routing")
+public class RoutingConfig {
+    // Фоновые пробные запросы к endpoint'ам моделей, у которых их больше одного
+    private boolean probeEnabled = true;
+    // Период проб, мс (читается также в @Scheduled через плейсхолдер)
+    private long probeIntervalMs = 30_000;
+    private String probePrompt = "Reply with one word: ok";
+    // Вес нового замера в экспоненциальных средних задержки и доли ошибок
+    private double alpha = 0.2;
+    // Endpoint с долей ошибок выше порога считается деградировавшим и не выбирается, пока есть здоровые
+    private double maxErrorRate = 0.5;
+}
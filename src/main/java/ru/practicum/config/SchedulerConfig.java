@@ -0,0 +1,51 @@
+package ru.practicum.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "scheduler")
+public class SchedulerConfig {
+    private boolean enabled = true;
+    // Одновременных запросов к провайдеру, если для него не задано своё значение
+    private int defaultSlots = 4;
+    // provider → число слотов; при adaptive это стартовый лимит
+    private Map<String, Integer> providerSlots = new HashMap<>();
+    // Лимит слотов подбирается по задержке и 429/503 (AIMD)
+    private boolean adaptive = true;
+    private int minSlots = 1;
+    private int maxSlots = 64;
+    // Во сколько раз короткая средняя задержка может превысить длинную, прежде чем лимит начнёт снижаться
+    private double latencyTolerance = 2.0;
+    // Множитель лимита при 429/503 и таймаутах
+    private double backoffRatio = 0.5;
+    // Ожидающих запросов на провайдера сверх этого отклоняем сразу
+    private int maxQueue = 200;
+    // Квант DRR в символах промпта: столько «стоимости» очередь чата получает за раунд при весе 1
+    private int quantum = 4000;
+    // Условная стоимость изображения в символах промпта
+    private int imageCost = 4000;
+    // Веса тарифов: чат с весом 4 получает вчетверо больше полосы, чем чат с весом 1
+    private Map<String, Integer> tierWeights = new HashMap<>(Map.of(DEFAULT_TIER, 1));
+    // chatId → тариф; остальные чаты в тарифе default
+    private Map<Long, String> chatTiers = new HashMap<>();
+
+    public static final String DEFAULT_TIER = "default";
+
+    public int slotsFor(String provider) {
+        return providerSlots.getOrDefault(provider, defaultSlots);
+    }
+
+    public String tierOf(Long chatId) {
+        return chatTiers.getOrDefault(chatId, DEFAULT_TIER);
+    }
+
+    public int weightOf(String tier) {
+        return Math.max(1, tierWeights.getOrDefault(tier, 1));
+    }
+}
@@ -0,0 +1,14 @@
+package ru.practicum.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "startup")
+public class StartupConfig {
+    // Прогрев JIT на конвертерах и сплиттере до первого апдейта
+    private boolean warmUp = true;
+    private int warmUpIterations = 300;
+}
@@ -0,0 +1,35 @@
+package ru.practicum.config;
+
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import ru.practicum.state.InMemoryStateStore;
+import ru.practicum.state.RedisStateStore;
+import ru.practicum.state.StateStore;
+
+@Data
+@Slf4j
+@Configuration
+@ConfigurationProperties(prefix = "state")
+public class StateConfig {
+    // memory — в памяти процесса, redis — общее хранилище для нескольких экземпляров
+    private String store = "memory";
+    // Для memory: контексты одного процесса с одинаковым именем делят состояние (локальный кластер)
+    private String sharedName;
+    private String redisUri = "redis://localhost:6379";
+    private String keyPrefix = "tgbot";
+
+    @Bean
+    public StateStore stateStore() {
+        log.info("Using {} state store", store);
+        return switch (store) {
+            case "memory" -> sharedName != null && !sharedName.isBlank()
+                    ? new InMemoryStateStore(sharedName)
+                    : new InMemoryStateStore();
+            case "redis" -> new RedisStateStore(redisUri, keyPrefix);
+            default -> throw new IllegalStateException("Unknown state.store: " + store);
+        };
+    }
+}
@@ -5,6 +5,9 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.stereotype.Component;
 
+import java.util.HashSet;
+import java.util.Set;
+
 @Data
 @Slf4j
 @Component
@@ -12,4 +15,43 @@ import org.springframework.stereotype.Component;
 public class TelegramBotConfig {
     private String botToken;
     private String botUsername;
+    // Корень Bot API: переопределяется для локальных стендов и нагрузочного теста
+    private String apiUrl = "https://api.telegram.org";
+    // Формат ответов модели: html (parse mode HTML) или entities (текст + MessageEntity)
+    private String replyFormat = "html";
+    // Приём апдейтов: polling (getUpdates) или webhook (POST от Telegram на встроенный веб-сервер)
+    private String mode = "polling";
+    // Публичный адрес бота для setWebhook, к нему добавляется webhookPath
+    private String webhookUrl;
+    private String webhookPath = "/telegram/webhook";
+    // Секрет из заголовка X-Telegram-Bot-Api-Secret-Token: 1–256 символов A-Z, a-z, 0-9, _ и -
+    private String webhookSecret;
+    private int webhookMaxConnections = 40;
+    // Окно склейки сообщений: текст, пришедший подряд в пределах окна, уходит модели одним запросом (0 — выключено)
+    private long debounceMs = 1500;
+    // Предел ожидания с первого сообщения пачки, чтобы непрерывный поток не откладывал ответ бесконечно
+    private long debounceMaxMs = 5000;
+    // Новое сообщение обрывает ещё не отвеченный текстовый запрос к модели: пользователь уточнил или исправил вопрос.
+    // Текст оборванного запроса не теряется — модель получает его вместе с новым сообщением
+    private boolean cancelOnNewMessage = true;
+    // Работа в группах: отвечаем только на упоминание, ответ на сообщение бота или команду
+    private boolean groupsEnabled = true;
+    // Сколько при остановке ждать уже принятые апдейты; не больше spring.lifecycle.timeout-per-shutdown-phase
+    private long drainTimeoutMs = 20_000;
+    // Апдейты, не обработанные к концу остановки: проигрываются при следующем запуске
+    private String pendingFile = "data/pending-updates.jsonl";
+    // Чаты операторов: им доступны служебные команды (/traces)
+    private Set<Long> adminChatIds = new HashSet<>();
+
+    public boolean isEntityReplies() {
+        return "entities".equalsIgnoreCase(replyFormat);
+    }
+
+    public boolean isWebhookMode() {
+        return "webhook".equalsIgnoreCase(mode);
+    }
+
+    public boolean isAdmin(Long chatId) {
+        return chatId != null && adminChatIds.contains(chatId);
+    }
 }
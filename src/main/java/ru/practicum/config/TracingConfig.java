@@ -0,0 +1,42 @@
+package ru.practicum.config;
+
+import io.opentelemetry.api.trace.Tracer;
+import io.opentelemetry.sdk.OpenTelemetrySdk;
+import io.opentelemetry.sdk.trace.SdkTracerProvider;
+import io.opentelemetry.sdk.trace.export.SimpleSpanProcessor;
+import io.opentelemetry.sdk.trace.samplers.Sampler;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import ru.practicum.tracing.TraceStore;
+
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "tracing")
+public class TracingConfig {
+    // false — спаны не пишутся, API OpenTelemetry работает вхолостую
+    private boolean enabled = true;
+    // Сколько последних завершённых трасс держим в памяти для /traces
+    private int capacity = 512;
+
+    @Bean
+    public TraceStore traceStore() {
+        return new TraceStore(capacity);
+    }
+
+    // Свой OpenTelemetry без коллектора: спаны уходят только в память
+    @Bean(destroyMethod = "close")
+    public OpenTelemetrySdk openTelemetry(TraceStore traceStore) {
+        SdkTracerProvider tracerProvider = SdkTracerProvider.builder()
+                .setSampler(enabled ? Sampler.alwaysOn() : Sampler.alwaysOff())
+                .addSpanProcessor(SimpleSpanProcessor.create(traceStore))
+                .build();
+        return OpenTelemetrySdk.builder().setTracerProvider(tracerProvider).build();
+    }
+
+    @Bean
+    public Tracer tracer(OpenTelemetrySdk openTelemetry) {
+        return openTelemetry.getTracer("telegram-gpt-bot");
+    }
+}
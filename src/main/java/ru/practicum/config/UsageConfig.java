@@ -0,0 +1,17 @@
+package ru.practicum.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "usage")
+public class UsageConfig {
+    // Файл, куда периодически сбрасываются агрегаты токенов и стоимости
+    private String file = "data/usage.tsv";
+    // Период сброса на диск, мс (читается также в @Scheduled через плейсхолдер)
+    private long flushIntervalMs = 60_000;
+    // Часовой пояс, по которому токены раскладываются по дням
+    private String zone = "Europe/Moscow";
+}
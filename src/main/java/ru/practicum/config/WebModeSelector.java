@@ -0,0 +1,28 @@
+package ru.practicum.config;
+
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.env.EnvironmentPostProcessor;
+import org.springframework.core.env.ConfigurableEnvironment;
+import org.springframework.core.env.MapPropertySource;
+
+import java.util.Map;
+
+// Веб-сервер нужен только для webhook и HTTP-эндпоинтов actuator. В режиме polling без них
+// приложение стартует без Tomcat. Явно заданный spring.main.web-application-type не трогаем.
+public class WebModeSelector implements EnvironmentPostProcessor {
+    private static final String WEB_APPLICATION_TYPE = "spring.main.web-application-type";
+
+    @Override
+    public void postProcessEnvironment(ConfigurableEnvironment environment, SpringApplication application) {
+        if (environment.containsProperty(WEB_APPLICATION_TYPE)) return;
+
+        boolean webhook = "webhook".equalsIgnoreCase(environment.getProperty("telegrambot.mode", "polling"));
+        String exposed = environment.getProperty("management.endpoints.web.exposure.include", "");
+        boolean metrics = !exposed.isBlank();
+
+        if (!webhook && !metrics) {
+            environment.getPropertySources().addLast(
+                    new MapPropertySource("headlessWebMode", Map.of(WEB_APPLICATION_TYPE, "none")));
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package ru.practicum.metrics;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.opentelemetry.api.trace.Tracer;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+// Точка входа в метрики бота: провайдеры, отправка в Telegram
+@Component
+@RequiredArgsConstructor
+public class BotMetrics {
+    private final MeterRegistry registry;
+    private final Tracer tracer;
+
+    // Кэш: "provider:model" → метрики провайдера
+    private final Map<String, ProviderMetrics> providers = new ConcurrentHashMap<>();
+    private final List<CallListener> callListeners = new CopyOnWriteArrayList<>();
+
+    public MeterRegistry registry() {
+        return registry;
+    }
+
+    public ProviderMetrics provider(String provider, String model) {
+        return providers.computeIfAbsent(provider + ":" + model,
+                k -> new ProviderMetrics(registry, tracer, provider, model, this::onCall));
+    }
+
+    public void addCallListener(CallListener listener) {
+        callListeners.add(listener);
+    }
+
+    private void onCall(String provider, String model, int status, long nanos) {
+        for (CallListener listener : callListeners) {
+            listener.onCall(provider, model, status, nanos);
+        }
+    }
+
+    public void recordTelegramSend(long nanos, boolean success) {
+        Timer.builder("telegram.send.latency")
+                .description("Latency of a single sendMessage call")
+                .tag("outcome", success ? "success" : "error")
+                .publishPercentileHistogram()
+                .register(registry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordDuplicateUpdate() {
+        registry.counter("telegram.updates.duplicate").increment();
+    }
+
+    public void recordTelegramChunks(String format, int chunks) {
+        DistributionSummary.builder("telegram.send.chunks")
+                .description("Number of sendMessage calls per reply")
+                .tag("format", format)
+                .register(registry)
+                .record(chunks);
+    }
+
+    public void recordCoalescedBatch(int messages) {
+        DistributionSummary.builder("telegram.messages.coalesced")
+                .description("Number of user messages merged into one provider request")
+                .register(registry)
+                .record(messages);
+    }
+
+    public void recordCancelledRequest(String reason) {
+        registry.counter("ai.requests.cancelled", "reason", reason).increment();
+    }
+
+    public void recordSchedulerWait(String provider, String tier, long nanos) {
+        Timer.builder("scheduler.queue.wait")
+                .description("Time a request waited for a provider slot")
+                .tag("provider", provider)
+                .tag("tier", tier)
+                .publishPercentileHistogram()
+                .register(registry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordSchedulerRejected(String provider) {
+        registry.counter("scheduler.rejected", "provider", provider).increment();
+    }
+
+    public void recordBrownoutTransition(String from, String to) {
+        registry.counter("brownout.transitions", "from", from, "to", to).increment();
+    }
+
+    public void recordUpdateHandled(String lane, long nanos) {
+        Timer.builder("telegram.update.handle")
+                .description("Time from receiving an update to finishing its handling")
+                .tag("lane", lane)
+                .publishPercentileHistogram()
+                .register(registry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordQuotaThrottled(String kind, String tier) {
+        registry.counter("quota.throttled", "kind", kind, "tier", tier).increment();
+    }
+
+    public void recordPendingUpdates(String event, int count) {
+        registry.counter("updates.pending", "event", event).increment(count);
+    }
+
+    public void recordComparison(String model, String outcome, long nanos) {
+        Timer.builder("compare.answer")
+                .description("Time until a model answered in /compare")
+                .tag("model", model)
+                .tag("outcome", outcome)
+                .register(registry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordInlineAnswer(String outcome, long nanos) {
+        Timer.builder("inline.answer")
+                .description("Time to produce an answer for an inline query")
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .register(registry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+}
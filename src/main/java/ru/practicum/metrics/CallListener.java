@@ -0,0 +1,13 @@
+package ru.practicum.metrics;
+
+// Подписчик на завершение HTTP-вызовов провайдеров: статус ответа и задержка по провайдеру и модели
+@FunctionalInterface
+public interface CallListener {
+    // Вместо HTTP-статуса: таймаут/отказ соединения и прочие ошибки ввода-вывода
+    int TIMEOUT = -1;
+    int IO_ERROR = -2;
+    // Обмен оборвали мы сами (отмена запроса): о провайдере ничего не говорит, ошибкой не считается
+    int CANCELLED = -3;
+
+    void onCall(String provider, String model, int status, long nanos);
+}
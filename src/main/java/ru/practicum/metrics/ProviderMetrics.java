@@ -0,0 +1,135 @@
+package ru.practicum.metrics;
+
+import io.micrometer.core.instrument.*;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.SpanKind;
+import io.opentelemetry.api.trace.StatusCode;
+import io.opentelemetry.api.trace.Tracer;
+import org.apache.hc.client5.http.classic.methods.HttpUriRequestBase;
+import org.apache.hc.core5.http.ClassicHttpRequest;
+import org.apache.hc.core5.http.HttpEntity;
+
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Метрики и спаны вызовов одного провайдера и модели: задержка, статусы, ошибки, in-flight, размеры
+public class ProviderMetrics {
+    private final MeterRegistry registry;
+    private final Tracer tracer;
+    private final String provider;
+    private final String model;
+    private final CallListener listener;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final DistributionSummary requestBytes;
+    private final DistributionSummary responseBytes;
+
+    ProviderMetrics(MeterRegistry registry, Tracer tracer, String provider, String model, CallListener listener) {
+        this.registry = registry;
+        this.tracer = tracer;
+        this.provider = provider;
+        this.model = model;
+        this.listener = listener;
+
+        Gauge.builder("ai.provider.inflight", inFlight, AtomicInteger::get)
+                .description("Provider requests currently in flight")
+                .tags("provider", provider, "model", model)
+                .register(registry);
+        this.requestBytes = DistributionSummary.builder("ai.provider.request.size")
+                .baseUnit("bytes")
+                .tags("provider", provider, "model", model)
+                .register(registry);
+        this.responseBytes = DistributionSummary.builder("ai.provider.response.size")
+                .baseUnit("bytes")
+                .tags("provider", provider, "model", model)
+                .register(registry);
+    }
+
+    public Call start(ClassicHttpRequest request) {
+        HttpEntity entity = request.getEntity();
+        if (entity != null && entity.getContentLength() >= 0) {
+            requestBytes.record(entity.getContentLength());
+        }
+        inFlight.incrementAndGet();
+
+        // HTTP-спан провайдера: родитель — текущий спан потока (ai.request)
+        Span span = tracer.spanBuilder("ai.provider.http")
+                .setSpanKind(SpanKind.CLIENT)
+                .setAttribute("ai.provider", provider)
+                .setAttribute("ai.model", model)
+                .startSpan();
+        return new Call(request, Timer.start(registry), span);
+    }
+
+    // Один HTTP-вызов провайдера: завершается ровно один раз — ответом или ошибкой
+    public class Call {
+        private final ClassicHttpRequest request;
+        private final Timer.Sample sample;
+        private final Span span;
+        private boolean finished;
+
+        private Call(ClassicHttpRequest request, Timer.Sample sample, Span span) {
+            this.request = request;
+            this.sample = sample;
+            this.span = span;
+        }
+
+        public void finish(int status, long bodyLength) {
+            if (finished) return;
+            finished = true;
+            inFlight.decrementAndGet();
+
+            String statusTag = String.valueOf(status);
+            listener.onCall(provider, model, status, sample.stop(latency(statusTag)));
+            responseBytes.record(bodyLength);
+            Counter.builder("ai.provider.responses")
+                    .tags("provider", provider, "model", model, "status", statusTag)
+                    .register(registry)
+                    .increment();
+
+            span.setAttribute("http.status_code", status);
+            if (status >= 400) span.setStatus(StatusCode.ERROR);
+            span.end();
+        }
+
+        public void fail(Exception e) {
+            if (finished) return;
+            finished = true;
+            inFlight.decrementAndGet();
+
+            // отмену через CancellationToken не считаем ошибкой провайдера: ни маршрутизатору, ни счётчику ошибок
+            if (request instanceof HttpUriRequestBase base && base.isCancelled()) {
+                listener.onCall(provider, model, CallListener.CANCELLED, sample.stop(latency("CANCELLED")));
+                Counter.builder("ai.provider.cancelled")
+                        .tags("provider", provider, "model", model)
+                        .register(registry)
+                        .increment();
+
+                span.setAttribute("ai.cancelled", true);
+                span.end();
+                return;
+            }
+
+            long nanos = sample.stop(latency("IO_ERROR"));
+            boolean timeout = e instanceof SocketTimeoutException || e instanceof ConnectException;
+            listener.onCall(provider, model, timeout ? CallListener.TIMEOUT : CallListener.IO_ERROR, nanos);
+            Counter.builder("ai.provider.errors")
+                    .tags("provider", provider, "model", model, "exception", e.getClass().getSimpleName())
+                    .register(registry)
+                    .increment();
+
+            span.recordException(e);
+            span.setStatus(StatusCode.ERROR);
+            span.end();
+        }
+
+        private Timer latency(String status) {
+            return Timer.builder("ai.provider.latency")
+                    .description("Provider HTTP call latency")
+                    .tags("provider", provider, "model", model, "status", status)
+                    .publishPercentileHistogram()
+                    .register(registry);
+        }
+    }
+}
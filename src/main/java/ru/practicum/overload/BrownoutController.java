@@ -0,0 +1,106 @@
+package ru.practicum.overload;
+
+import io.micrometer.core.instrument.Gauge;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ru.practicum.config.BrownoutConfig;
+import ru.practicum.metrics.BotMetrics;
+import ru.practicum.scheduling.FairScheduler;
+
+import java.util.List;
+import java.util.Map;
+
+// Управление перегрузкой: по глубине очереди к провайдерам и числу запросов в полёте выбирает
+// ступень деградации. Вверх переходит сразу, вниз — после cooldown без превышения порога.
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class BrownoutController {
+    private final BrownoutConfig config;
+    private final FairScheduler scheduler;
+    private final BotMetrics botMetrics;
+
+    private volatile BrownoutLevel level = BrownoutLevel.NORMAL;
+    private long calmSince;
+
+    @PostConstruct
+    public void registerMetrics() {
+        Gauge.builder("brownout.level", this, c -> c.level.ordinal())
+                .description("Current overload degradation level, 0 = normal")
+                .register(botMetrics.registry());
+    }
+
+    @Scheduled(fixedDelayString = "${brownout.check-interval-ms:1000}")
+    public void evaluate() {
+        if (!config.isEnabled()) {
+            level = BrownoutLevel.NORMAL;
+            return;
+        }
+
+        int waiting = scheduler.waiting();
+        int inFlight = scheduler.inFlight();
+        BrownoutLevel target = BrownoutLevel.values()[Math.max(
+                reached(config.getQueueThresholds(), waiting),
+                reached(config.getInFlightThresholds(), inFlight))];
+
+        long now = System.currentTimeMillis();
+        if (target.compareTo(level) > 0) {
+            transition(target, waiting, inFlight);
+            calmSince = now;
+        } else if (target.compareTo(level) < 0) {
+            // спускаемся на одну ступень за cooldown, чтобы не качаться на границе порога
+            if (now - calmSince >= config.getCooldownMs()) {
+                transition(BrownoutLevel.values()[level.ordinal() - 1], waiting, inFlight);
+                calmSince = now;
+            }
+        } else {
+            calmSince = now;
+        }
+    }
+
+    public BrownoutLevel level() {
+        return level;
+    }
+
+    public boolean rejecting() {
+        return level.atLeast(BrownoutLevel.REJECT);
+    }
+
+    public boolean groundingAllowed() {
+        return !level.atLeast(BrownoutLevel.NO_GROUNDING);
+    }
+
+    // Хвост истории на урезанной ступени
+    public List<Map<String, String>> history(List<Map<String, String>> history) {
+        if (!level.atLeast(BrownoutLevel.SHORT_HISTORY) || history.size() <= config.getShortHistory()) {
+            return history;
+        }
+        return history.subList(history.size() - config.getShortHistory(), history.size());
+    }
+
+    // Модель с учётом ступени: при перегрузке — быстрая дешёвая, если она задана
+    public String model(String selected, boolean image) {
+        if (!level.atLeast(BrownoutLevel.FALLBACK_MODEL)) return selected;
+        String fallback = image ? config.getFallbackImageModel() : config.getFallbackModel();
+        return fallback != null && !fallback.isBlank() ? fallback : selected;
+    }
+
+    private void transition(BrownoutLevel target, int waiting, int inFlight) {
+        BrownoutLevel from = level;
+        level = target;
+        log.warn("Brownout level {} -> {} (waiting {}, in flight {})", from, target, waiting, inFlight);
+        botMetrics.recordBrownoutTransition(from.name(), target.name());
+    }
+
+    // Номер наибольшей достигнутой ступени, 0 — ни один порог не достигнут
+    private static int reached(List<Integer> thresholds, int value) {
+        int reached = 0;
+        for (int i = 0; i < thresholds.size() && i < BrownoutLevel.values().length - 1; i++) {
+            if (value >= thresholds.get(i)) reached = i + 1;
+        }
+        return reached;
+    }
+}
@@ -0,0 +1,18 @@
+package ru.practicum.overload;
+
+// Ступени деградации под нагрузкой: каждая включает и все предыдущие
+public enum BrownoutLevel {
+    NORMAL,
+    // модели уходит только хвост истории
+    SHORT_HISTORY,
+    // без поиска Google у Gemini
+    NO_GROUNDING,
+    // запросы идут в быструю дешёвую модель
+    FALLBACK_MODEL,
+    // новые запросы к моделям отклоняются сразу
+    REJECT;
+
+    public boolean atLeast(BrownoutLevel other) {
+        return compareTo(other) >= 0;
+    }
+}
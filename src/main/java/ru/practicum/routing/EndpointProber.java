@@ -0,0 +1,71 @@
+package ru.practicum.routing;
+
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ru.practicum.client.AiClient;
+import ru.practicum.client.AiClientFactory;
+import ru.practicum.client.AiTextSender;
+import ru.practicum.config.AiModelsConfig;
+import ru.practicum.config.RoutingConfig;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Фоновые пробы endpoint'ов: короткий запрос к каждому пути модели, у которой их несколько.
+// Результат учитывается в EndpointRouter через метрики провайдера, так что маршрут знает о деградации
+// и восстановлении endpoint'а, даже когда пользовательского трафика через него нет.
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class EndpointProber {
+    private final AiModelsConfig aiConfig;
+    private final AiClientFactory clientFactory;
+    private final RoutingConfig config;
+
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    // Пробы, которые ещё не ответили: зависший endpoint не копит очередь проб
+    private final Set<String> running = ConcurrentHashMap.newKeySet();
+
+    @Scheduled(fixedDelayString = "${routing.probe-interval-ms:30000}", initialDelayString = "${routing.probe-interval-ms:30000}")
+    public void probe() {
+        if (!config.isProbeEnabled()) return;
+
+        aiConfig.getModels().forEach((modelKey, model) -> {
+            if (model.getEndpoints().size() < 2) return;
+            for (AiModelsConfig.Endpoint endpoint : model.getEndpoints()) {
+                String key = modelKey + "@" + endpoint.getProvider();
+                if (running.add(key)) {
+                    executor.execute(() -> {
+                        try {
+                            probe(modelKey, endpoint);
+                        } finally {
+                            running.remove(key);
+                        }
+                    });
+                }
+            }
+        });
+    }
+
+    private void probe(String modelKey, AiModelsConfig.Endpoint endpoint) {
+        try {
+            AiClient client = clientFactory.probeClient(modelKey, endpoint);
+            if (client instanceof AiTextSender sender) {
+                sender.sendTextMessage(config.getProbePrompt(), List.of());
+            }
+        } catch (Exception e) {
+            log.debug("Probe of {} via {} failed", modelKey, endpoint.getProvider(), e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
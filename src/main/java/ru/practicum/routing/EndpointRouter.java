@@ -0,0 +1,133 @@
+package ru.practicum.routing;
+
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import ru.practicum.config.AiModelsConfig;
+import ru.practicum.config.RoutingConfig;
+import ru.practicum.metrics.BotMetrics;
+import ru.practicum.metrics.CallListener;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+// Выбор пути к модели по EWMA задержки и доле ошибок. Замеры приходят из метрик провайдеров:
+// и от пользовательских запросов, и от фоновых проб EndpointProber.
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class EndpointRouter {
+    // Во сколько раз ошибка «дороже» задержки при ранжировании
+    private static final double ERROR_PENALTY = 10.0;
+
+    private final RoutingConfig config;
+    private final BotMetrics botMetrics;
+
+    // "modelKey@provider" → статистика endpoint'а
+    private final Map<String, EndpointStats> stats = new ConcurrentHashMap<>();
+
+    private static final class EndpointStats {
+        private double latencyNanos;
+        private double errorRate;
+        private boolean degraded;
+
+        synchronized void record(double alpha, int status, long nanos) {
+            boolean error = status < 200 || status >= 400;
+            errorRate += alpha * ((error ? 1.0 : 0.0) - errorRate);
+            if (!error) {
+                latencyNanos = latencyNanos == 0 ? nanos : latencyNanos + alpha * (nanos - latencyNanos);
+            }
+        }
+
+        synchronized double latency() {
+            return latencyNanos;
+        }
+
+        synchronized double errorRate() {
+            return errorRate;
+        }
+    }
+
+    @PostConstruct
+    public void subscribe() {
+        botMetrics.addCallListener((provider, model, status, nanos) -> {
+            // отменённый нами обмен не говорит ни о задержке, ни об ошибках endpoint'а
+            if (status == CallListener.CANCELLED) return;
+            EndpointStats s = stats.computeIfAbsent(key(model, provider), k -> new EndpointStats());
+            s.record(config.getAlpha(), status, nanos);
+            updateDegraded(model, provider, s);
+        });
+    }
+
+    // Путь к модели: среди здоровых endpoint'ов случайно с вероятностью ∝ вес / (задержка × штраф за ошибки)
+    public AiModelsConfig.Endpoint choose(String modelKey, AiModelsConfig.Model model) {
+        List<AiModelsConfig.Endpoint> endpoints = model.allEndpoints();
+        if (endpoints.size() == 1) return endpoints.getFirst();
+
+        boolean anyHealthy = endpoints.stream()
+                .anyMatch(e -> stats(modelKey, e).errorRate() <= config.getMaxErrorRate());
+
+        // ещё не измеренные endpoint'ы считаем не хуже лучшего измеренного
+        double best = Double.MAX_VALUE;
+        for (AiModelsConfig.Endpoint e : endpoints) {
+            double latency = stats(modelKey, e).latency();
+            if (latency > 0) best = Math.min(best, latency);
+        }
+        if (best == Double.MAX_VALUE) best = 1;
+
+        double[] shares = new double[endpoints.size()];
+        double total = 0;
+        for (int i = 0; i < endpoints.size(); i++) {
+            AiModelsConfig.Endpoint e = endpoints.get(i);
+            EndpointStats s = stats(modelKey, e);
+            if (anyHealthy && s.errorRate() > config.getMaxErrorRate()) continue;
+            double latency = s.latency() > 0 ? s.latency() : best;
+            shares[i] = e.getWeight() / (latency * (1 + ERROR_PENALTY * s.errorRate()));
+            total += shares[i];
+        }
+
+        if (total <= 0) return endpoints.getFirst();
+
+        double pick = ThreadLocalRandom.current().nextDouble(total);
+        for (int i = 0; i < shares.length; i++) {
+            pick -= shares[i];
+            if (shares[i] > 0 && pick < 0) return endpoints.get(i);
+        }
+        return endpoints.getLast();
+    }
+
+    // Наименьшая EWMA задержки среди здоровых путей к модели, нс; 0 — замеров ещё нет
+    public double latencyNanos(String modelKey, AiModelsConfig.Model model) {
+        double best = 0;
+        for (AiModelsConfig.Endpoint e : model.allEndpoints()) {
+            EndpointStats s = stats(modelKey, e);
+            if (s.latency() <= 0 || s.errorRate() > config.getMaxErrorRate()) continue;
+            if (best == 0 || s.latency() < best) best = s.latency();
+        }
+        return best;
+    }
+
+    private void updateDegraded(String model, String provider, EndpointStats s) {
+        boolean degraded = s.errorRate() > config.getMaxErrorRate();
+        synchronized (s) {
+            if (s.degraded == degraded) return;
+            s.degraded = degraded;
+        }
+        if (degraded) {
+            log.warn("Endpoint {} of model {} is degraded (error rate {})", provider, model, String.format("%.2f", s.errorRate()));
+        } else {
+            log.info("Endpoint {} of model {} recovered", provider, model);
+        }
+    }
+
+    private EndpointStats stats(String modelKey, AiModelsConfig.Endpoint endpoint) {
+        return stats.computeIfAbsent(key(modelKey, endpoint.getProvider()), k -> new EndpointStats());
+    }
+
+    private static String key(String model, String provider) {
+        return model + "@" + provider;
+    }
+}
@@ -0,0 +1,61 @@
+package ru.practicum.scheduling;
+
+import ru.practicum.config.SchedulerConfig;
+import ru.practicum.metrics.CallListener;
+
+// Лимит одновременных запросов к провайдеру по схеме AIMD: пока ответы быстрые и без 429,
+// лимит растёт на единицу за «окно» запросов; при 429/503, таймаутах или росте задержки — падает мультипликативно.
+// Не потокобезопасен: вызывается под блокировкой очереди провайдера.
+final class AdaptiveLimit {
+    private static final double SHORT_ALPHA = 0.2;
+    private static final double LONG_ALPHA = 0.02;
+    private static final double LATENCY_BACKOFF = 0.9;
+
+    private final SchedulerConfig config;
+    private double limit;
+    // Короткая и длинная экспоненциальные средние задержки: их отношение — градиент нагрузки
+    private double shortRtt;
+    private double longRtt;
+    private long lastDecreaseAt;
+
+    AdaptiveLimit(SchedulerConfig config, int initial) {
+        this.config = config;
+        this.limit = initial;
+    }
+
+    int current() {
+        return (int) limit;
+    }
+
+    void onSample(int status, long nanos, int inFlight) {
+        if (status == 429 || status == 503 || status == CallListener.TIMEOUT) {
+            decrease(config.getBackoffRatio());
+            return;
+        }
+        // прочие ошибки и отменённые нами обмены (CallListener.CANCELLED) о перегрузке ничего не говорят
+        if (status < 200 || status >= 400) return;
+
+        if (longRtt == 0) {
+            shortRtt = nanos;
+            longRtt = nanos;
+        } else {
+            shortRtt += SHORT_ALPHA * (nanos - shortRtt);
+            longRtt += LONG_ALPHA * (nanos - longRtt);
+        }
+
+        if (shortRtt > longRtt * config.getLatencyTolerance()) {
+            decrease(LATENCY_BACKOFF);
+        } else if (inFlight + 1 >= current()) {
+            // растём, только если лимит действительно упирается в нагрузку
+            limit = Math.min(config.getMaxSlots(), limit + 1.0 / limit);
+        }
+    }
+
+    // Не чаще раза за среднюю задержку: пачка 429 от одного всплеска — один шаг вниз
+    private void decrease(double ratio) {
+        long now = System.nanoTime();
+        if (lastDecreaseAt != 0 && now - lastDecreaseAt < (long) longRtt) return;
+        lastDecreaseAt = now;
+        limit = Math.max(config.getMinSlots(), limit * ratio);
+    }
+}
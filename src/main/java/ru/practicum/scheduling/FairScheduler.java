@@ -0,0 +1,210 @@
+package ru.practicum.scheduling;
+
+import io.micrometer.core.instrument.Tags;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import ru.practicum.client.CancellationToken;
+import ru.practicum.config.SchedulerConfig;
+import ru.practicum.metrics.BotMetrics;
+import ru.practicum.tracing.BotTracer;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+// Планировщик запросов к провайдерам: у каждого провайдера ограниченное число слотов, а ожидающие
+// чаты обслуживаются по deficit round robin — тяжёлый чат получает свою долю, но не вытесняет остальных.
+// Число слотов подстраивается под провайдера по задержке и 429/503 (AdaptiveLimit).
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class FairScheduler {
+    private final SchedulerConfig config;
+    private final BotMetrics botMetrics;
+    private final BotTracer tracer;
+
+    private final Map<String, Lane> lanes = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void subscribe() {
+        botMetrics.addCallListener((provider, model, status, nanos) -> {
+            Lane lane = lanes.get(provider);
+            if (lane != null) {
+                lane.onCall(status, nanos);
+            }
+        });
+    }
+
+    // Ожидающих слота запросов по всем провайдерам
+    public int waiting() {
+        int total = 0;
+        for (Lane lane : lanes.values()) total += lane.waiting();
+        return total;
+    }
+
+    // Запросов, занявших слот, по всем провайдерам
+    public int inFlight() {
+        int total = 0;
+        for (Lane lane : lanes.values()) total += lane.inUse();
+        return total;
+    }
+
+    // Выполняет вызов, когда до чата дойдёт очередь на слот провайдера; cost — оценка размера промпта
+    public <T, E extends Exception> T call(Long chatId, String provider, long cost,
+                                           BotTracer.SpanCall<T, E> body) throws E {
+        if (!config.isEnabled()) {
+            return body.call();
+        }
+
+        Lane lane = lanes.computeIfAbsent(provider, Lane::new);
+        tracer.runInSpan("scheduler.wait", () -> lane.acquire(chatId, Math.max(1, cost)));
+        try {
+            return body.call();
+        } finally {
+            lane.release();
+        }
+    }
+
+    private static final class Waiter {
+        final long cost;
+        final long enqueuedAt = System.nanoTime();
+        final CompletableFuture<Void> granted = new CompletableFuture<>();
+
+        Waiter(long cost) {
+            this.cost = cost;
+        }
+    }
+
+    // Очередь одного чата внутри провайдера
+    private static final class ChatQueue {
+        final Long chatId;
+        final String tier;
+        final int quantum;
+        final ArrayDeque<Waiter> waiters = new ArrayDeque<>();
+        long deficit;
+
+        ChatQueue(Long chatId, String tier, int quantum) {
+            this.chatId = chatId;
+            this.tier = tier;
+            this.quantum = quantum;
+        }
+    }
+
+    private final class Lane {
+        private final String provider;
+        private final AdaptiveLimit limit;
+        private final Map<Long, ChatQueue> queues = new HashMap<>();
+        // Кольцо непустых очередей в порядке обхода DRR
+        private final ArrayDeque<ChatQueue> active = new ArrayDeque<>();
+        private int inUse;
+        private int waiting;
+
+        Lane(String provider) {
+            this.provider = provider;
+            this.limit = new AdaptiveLimit(config, config.slotsFor(provider));
+            botMetrics.registry().gauge("scheduler.queue.depth", Tags.of("provider", provider), this, lane -> lane.waiting);
+            botMetrics.registry().gauge("scheduler.limit", Tags.of("provider", provider), this, Lane::slots);
+        }
+
+        synchronized int waiting() {
+            return waiting;
+        }
+
+        synchronized int inUse() {
+            return inUse;
+        }
+
+        synchronized int slots() {
+            return config.isAdaptive() ? limit.current() : config.slotsFor(provider);
+        }
+
+        synchronized void onCall(int status, long nanos) {
+            if (!config.isAdaptive()) return;
+            limit.onSample(status, nanos, inUse);
+            dispatch();
+        }
+
+        void acquire(Long chatId, long cost) {
+            Waiter waiter = new Waiter(cost);
+            ChatQueue queue;
+            synchronized (this) {
+                if (waiting >= config.getMaxQueue()) {
+                    botMetrics.recordSchedulerRejected(provider);
+                    throw new ProviderOverloadedException(provider);
+                }
+                queue = queues.computeIfAbsent(chatId, id -> {
+                    String tier = config.tierOf(id);
+                    return new ChatQueue(id, tier, config.getQuantum() * config.weightOf(tier));
+                });
+                if (queue.waiters.isEmpty()) {
+                    active.addLast(queue);
+                }
+                queue.waiters.addLast(waiter);
+                waiting++;
+                dispatch();
+            }
+
+            // отмена запроса чата снимает его и с очереди; HTTP-обмен потом перепривяжет токен
+            CancellationToken.bind(() -> abandon(queue, waiter));
+            try {
+                waiter.granted.get();
+            } catch (InterruptedException e) {
+                // слот могли выдать прямо перед прерыванием: возвращаем его, иначе лимит провайдера тает
+                if (!abandon(queue, waiter)) release();
+                Thread.currentThread().interrupt();
+                throw new CancellationException("Interrupted while waiting for " + provider);
+            } catch (ExecutionException e) {
+                throw new CancellationException("Request cancelled while waiting for " + provider);
+            }
+            botMetrics.recordSchedulerWait(provider, queue.tier, System.nanoTime() - waiter.enqueuedAt);
+        }
+
+        synchronized void release() {
+            inUse--;
+            dispatch();
+        }
+
+        private synchronized boolean abandon(ChatQueue queue, Waiter waiter) {
+            if (!queue.waiters.remove(waiter)) return false;
+            waiting--;
+            if (queue.waiters.isEmpty()) {
+                active.remove(queue);
+                queues.remove(queue.chatId);
+            }
+            waiter.granted.completeExceptionally(new CancellationException());
+            return true;
+        }
+
+        // Раздаёт свободные слоты: очередь в голове кольца обслуживается, пока хватает дефицита,
+        // иначе получает квант и уходит в конец
+        private void dispatch() {
+            int slots = slots();
+            while (inUse < slots && !active.isEmpty()) {
+                ChatQueue queue = active.peekFirst();
+                Waiter head = queue.waiters.peekFirst();
+                if (queue.deficit < head.cost) {
+                    queue.deficit += queue.quantum;
+                    active.addLast(active.removeFirst());
+                    continue;
+                }
+
+                queue.waiters.removeFirst();
+                queue.deficit -= head.cost;
+                waiting--;
+                inUse++;
+                if (queue.waiters.isEmpty()) {
+                    // опустевшая очередь не копит дефицит
+                    active.removeFirst();
+                    queues.remove(queue.chatId);
+                }
+                head.granted.complete(null);
+            }
+        }
+    }
+}
@@ -0,0 +1,8 @@
+package ru.practicum.scheduling;
+
+// Очередь к провайдеру переполнена: запрос отклонён, не дожидаясь слота
+public class ProviderOverloadedException extends RuntimeException {
+    public ProviderOverloadedException(String provider) {
+        super("Provider " + provider + " is overloaded");
+    }
+}
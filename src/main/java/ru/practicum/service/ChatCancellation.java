@@ -0,0 +1,144 @@
+package ru.practicum.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import ru.practicum.client.CancellationToken;
+import ru.practicum.metrics.BotMetrics;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Принятая работа чата по моделям: /clear, смена модели или новое сообщение обрывают её.
+// Ход регистрируется при приёме апдейта, поэтому отменить можно и то, что ещё ждёт очереди или качает фото.
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ChatCancellation {
+    private final BotMetrics botMetrics;
+
+    private final Map<Long, Set<Turn>> active = new ConcurrentHashMap<>();
+    // Эпоха контекста чата: растёт на /clear и смене модели. Ход, принятый в прошлой эпохе, историю не пишет,
+    // даже если до него не дотянулась отмена (например, пачка, ушедшая в очередь до /clear)
+    private final Map<Long, Long> epochs = new ConcurrentHashMap<>();
+
+    // supersedable — текстовый запрос, который новое сообщение обрывает и дополняет (telegrambot.cancel-on-new-message)
+    public static final class Turn {
+        private final Long chatId;
+        private final long epoch;
+        private final boolean supersedable;
+        private final CancellationToken token = new CancellationToken();
+        private volatile boolean superseded;
+
+        private Turn(Long chatId, long epoch, boolean supersedable) {
+            this.chatId = chatId;
+            this.epoch = epoch;
+            this.supersedable = supersedable;
+        }
+
+        public Long chatId() {
+            return chatId;
+        }
+
+        public long epoch() {
+            return epoch;
+        }
+
+        public CancellationToken token() {
+            return token;
+        }
+
+        public boolean cancelled() {
+            return token.isCancelled();
+        }
+
+        // Оборван новым сообщением: текст запроса не потерян, а уходит модели вместе со следующим
+        public boolean superseded() {
+            return superseded;
+        }
+    }
+
+    // Ход апдейта: эпоху фиксируем в момент приёма
+    public Turn begin(Long chatId, boolean supersedable) {
+        return begin(chatId, epoch(chatId), supersedable);
+    }
+
+    // Ход пачки склеенных сообщений: эпоха — та, в которой принят первый апдейт пачки
+    public Turn begin(Long chatId, long epoch, boolean supersedable) {
+        Turn turn = new Turn(chatId, epoch, supersedable);
+        if (epoch != epoch(chatId)) {
+            // контекст уже очищен: к модели не ходим, commit всё равно ничего не записал бы
+            turn.token.cancel();
+        }
+        // набор меняется только внутри compute по ключу чата: cancel не пропустит ход, добавленный одновременно
+        active.compute(chatId, (id, turns) -> {
+            Set<Turn> updated = turns != null ? turns : new HashSet<>();
+            updated.add(turn);
+            return updated;
+        });
+        return turn;
+    }
+
+    public void finish(Turn turn) {
+        active.computeIfPresent(turn.chatId(), (id, turns) -> {
+            turns.remove(turn);
+            return turns.isEmpty() ? null : turns;
+        });
+    }
+
+    public long epoch(Long chatId) {
+        return epochs.getOrDefault(chatId, 0L);
+    }
+
+    // /clear и смена модели: новая эпоха, затем отмена. Запись, начатая до смены эпохи, закончится раньше,
+    // чем cancel отпустит токен — а очистка истории идёт уже после
+    public void reset(Long chatId, String reason) {
+        epochs.merge(chatId, 1L, Long::sum);
+        cancel(chatId, reason);
+    }
+
+    // Пишет в историю, только если ход не отменён и эпоха чата с его приёма не сменилась
+    public boolean commit(Turn turn, Runnable action) {
+        boolean[] current = {false};
+        boolean committed = turn.token().commit(() -> {
+            current[0] = epoch(turn.chatId()) == turn.epoch();
+            if (current[0]) action.run();
+        });
+        return committed && current[0];
+    }
+
+    public void cancel(Long chatId, String reason) {
+        Set<Turn> turns = active.remove(chatId);
+        if (turns != null) {
+            turns.forEach(turn -> cancel(turn, reason));
+        }
+    }
+
+    // Новое сообщение обрывает только текстовые запросы: фото и /compare доводим до конца
+    public void supersede(Long chatId) {
+        List<Turn> superseded = new ArrayList<>();
+        active.computeIfPresent(chatId, (id, turns) -> {
+            turns.removeIf(turn -> turn.supersedable && superseded.add(turn));
+            return turns.isEmpty() ? null : turns;
+        });
+        for (Turn turn : superseded) {
+            turn.superseded = true;
+            cancel(turn, "superseded");
+        }
+    }
+
+    public void cancelAll(String reason) {
+        active.keySet().forEach(chatId -> cancel(chatId, reason));
+    }
+
+    private void cancel(Turn turn, String reason) {
+        if (turn.token().cancel()) {
+            log.info("Cancelled request for chat {} ({})", turn.chatId(), reason);
+            botMetrics.recordCancelledRequest(reason);
+        }
+    }
+}
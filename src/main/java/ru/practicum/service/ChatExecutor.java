@@ -0,0 +1,50 @@
+package ru.practicum.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Работа по чатам на виртуальных потоках: задачи одного чата выполняются строго по очереди,
+// разных чатов — параллельно
+@Slf4j
+@Component
+public class ChatExecutor {
+    private static final CompletableFuture<Void> DONE = CompletableFuture.completedFuture(null);
+
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    // Хвост очереди чата: следующая задача запускается после завершения предыдущей
+    private final Map<Long, CompletableFuture<Void>> tails = new ConcurrentHashMap<>();
+
+    public void submit(Long chatId, Runnable task) {
+        if (chatId == null) {
+            executor.execute(() -> run(task));
+            return;
+        }
+
+        CompletableFuture<Void> next = tails.compute(chatId,
+                (id, tail) -> (tail != null ? tail : DONE).thenRunAsync(() -> run(task), executor));
+        // очистку вешаем вне compute: будущее может завершиться раньше, чем мы до него дойдём
+        next.whenComplete((r, e) -> tails.remove(chatId, next));
+    }
+
+    private void run(Runnable task) {
+        try {
+            task.run();
+        } catch (Exception e) {
+            // исключение не должно оборвать цепочку задач чата
+            log.error("Error in chat task", e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
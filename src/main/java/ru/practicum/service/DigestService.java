@@ -6,6 +6,7 @@ import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import ru.practicum.client.AiClientFactory;
 import ru.practicum.client.AiTextSender;
+import ru.practicum.cluster.ClusterRouter;
 import ru.practicum.utils.DigestContext;
 
 import java.util.List;
@@ -18,6 +19,7 @@ public class DigestService {
     private final DigestContext digestContext;
     private final AiClientFactory clientFactory;
     private final TelegramChatService telegramService;
+    private final ClusterRouter clusterRouter;
 
     // Отправить дайджест конкретному пользователю
     public void sendDigest(Long chatId) {
@@ -36,7 +38,7 @@ public class DigestService {
                 AiTextSender client = (AiTextSender) clientFactory.create("gemini-flash", chatId);
                 String digestText = client.sendTextMessage(prompt, List.of());
 
-                telegramService.sendMessage(chatId, digestText);
+                telegramService.sendReply(chatId, digestText);
 
                 log.info("Digest sent to user {}", chatId);
             }
@@ -52,6 +54,8 @@ public class DigestService {
         log.info("Starting daily digest distribution");
 
         for (Long chatId : digestContext.getAllUsersWithDigest()) {
+            // в кластере каждый экземпляр рассылает только своим чатам
+            if (!clusterRouter.isLocal(chatId)) continue;
             sendDigest(chatId);
         }
 
@@ -0,0 +1,95 @@
+package ru.practicum.service;
+
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import org.telegram.telegrambots.meta.api.objects.Message;
+import org.telegram.telegrambots.meta.api.objects.MessageEntity;
+import org.telegram.telegrambots.meta.api.objects.Update;
+import org.telegram.telegrambots.meta.api.objects.User;
+import ru.practicum.config.TelegramBotConfig;
+
+import java.util.List;
+
+// Отсев сообщений групп до любой обработки: бот отвечает, только если к нему обратились —
+// упоминание, ответ на его сообщение или команда. Смотрим лишь поля апдейта: без логов и обращений к состоянию,
+// поэтому болтовня в больших группах ничего не стоит.
+@Component
+@RequiredArgsConstructor
+public class GroupFilter {
+    private final TelegramBotConfig config;
+
+    private long botId;
+    private String mention;
+
+    @PostConstruct
+    public void init() {
+        // id бота — числовая часть токена до двоеточия, getMe не нужен
+        String token = config.getBotToken();
+        int colon = token != null ? token.indexOf(':') : -1;
+        botId = colon > 0 ? Long.parseLong(token.substring(0, colon)) : -1;
+        String username = config.getBotUsername();
+        mention = username == null ? "" : username.startsWith("@") ? username : "@" + username;
+    }
+
+    public boolean addressed(Update update) {
+        // кнопки висят под сообщениями самого бота, прочие типы апдейтов отсюда не фильтруем
+        if (!update.hasMessage()) return true;
+        Message message = update.getMessage();
+        if (message.getChat() == null || message.getChat().isUserChat()) return true;
+        if (!config.isGroupsEnabled()) return false;
+
+        String text = message.hasText() ? message.getText() : message.getCaption();
+        if (text == null) return false;
+        if (text.startsWith("/")) return commandForUs(text);
+
+        Message replyTo = message.getReplyToMessage();
+        if (replyTo != null && isBot(replyTo.getFrom())) return true;
+
+        List<MessageEntity> entities = message.hasText() ? message.getEntities() : message.getCaptionEntities();
+        if (entities == null) return false;
+        for (MessageEntity e : entities) {
+            if ("mention".equals(e.getType()) && e.getLength() == mention.length()
+                    && text.regionMatches(true, e.getOffset(), mention, 0, mention.length())) return true;
+            if ("text_mention".equals(e.getType()) && isBot(e.getUser())) return true;
+        }
+        return false;
+    }
+
+    // Текст для модели без обращения к боту
+    public String stripMention(String text) {
+        if (mention.isEmpty()) return text;
+        int at = indexOfIgnoreCase(text, mention);
+        if (at == -1) return text;
+        String stripped = (text.substring(0, at) + text.substring(at + mention.length())).strip();
+        return stripped.isEmpty() ? text : stripped;
+    }
+
+    // Команда без суффикса @имя_бота: /model@my_bot → /model
+    public static String commandName(String text) {
+        int end = 0;
+        while (end < text.length() && !Character.isWhitespace(text.charAt(end))) end++;
+        int at = text.indexOf('@');
+        return text.substring(0, at > 0 && at < end ? at : end).toLowerCase();
+    }
+
+    // /cmd без суффикса в группе адресована всем ботам, с суффиксом — только нашему
+    private boolean commandForUs(String text) {
+        int end = 0;
+        while (end < text.length() && !Character.isWhitespace(text.charAt(end))) end++;
+        int at = text.indexOf('@');
+        if (at == -1 || at >= end) return true;
+        return end - at == mention.length() && text.regionMatches(true, at, mention, 0, mention.length());
+    }
+
+    private boolean isBot(User user) {
+        return user != null && user.getId() != null && user.getId() == botId;
+    }
+
+    private static int indexOfIgnoreCase(String text, String part) {
+        for (int i = 0; i + part.length() <= text.length(); i++) {
+            if (text.regionMatches(true, i, part, 0, part.length())) return i;
+        }
+        return -1;
+    }
+}
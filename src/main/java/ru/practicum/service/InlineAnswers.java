@@ -0,0 +1,173 @@
+package ru.practicum.service;
+
+import io.opentelemetry.context.Context;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import ru.practicum.client.AiClientFactory;
+import ru.practicum.client.AiTextSender;
+import ru.practicum.client.CallOutcome;
+import ru.practicum.client.CancellationToken;
+import ru.practicum.config.AiModelsConfig;
+import ru.practicum.config.InlineConfig;
+import ru.practicum.metrics.BotMetrics;
+import ru.practicum.routing.EndpointRouter;
+import ru.practicum.scheduling.FairScheduler;
+import ru.practicum.tracing.BotTracer;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+// Ответы на inline-запросы (@bot вопрос): самая быстрая из inline.models, жёсткий срок на ответ,
+// кэш по тексту запроса с коротким TTL. Пока пользователь печатает, каждый новый запрос обрывает предыдущий.
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class InlineAnswers {
+    private final InlineConfig config;
+    private final AiModelsConfig aiConfig;
+    private final AiClientFactory clientFactory;
+    private final EndpointRouter router;
+    private final FairScheduler scheduler;
+    private final BotTracer tracer;
+    private final BotMetrics botMetrics;
+
+    // Текущий запрос пользователя: следующий отменяет его
+    private final Map<Long, CancellationToken> active = new ConcurrentHashMap<>();
+    private final ResultCache cache = new ResultCache();
+
+    public enum Outcome {
+        CACHED, ANSWERED, TIMEOUT, CANCELLED, ERROR
+    }
+
+    public record Result(Outcome outcome, String modelKey, String markdown, long nanos) {
+    }
+
+    // Кэш отдельно от answer: попадание не должно расходовать квоту
+    public Result cached(String query) {
+        Cached hit = cache.get(normalize(query));
+        if (hit == null) return null;
+        botMetrics.recordInlineAnswer("cache", 0);
+        return new Result(Outcome.CACHED, hit.modelKey(), hit.markdown(), 0);
+    }
+
+    public Result answer(Long userId, String query) throws InterruptedException {
+        String key = normalize(query);
+        String modelKey = fastestModel();
+
+        CancellationToken token = new CancellationToken();
+        CancellationToken previous = active.put(userId, token);
+        if (previous != null && previous.cancel()) {
+            botMetrics.recordCancelledRequest("inline_superseded");
+        }
+
+        long start = System.nanoTime();
+        CompletableFuture<String> call = new CompletableFuture<>();
+        Thread.ofVirtual().name("inline-" + userId).start(Context.current().wrap(() -> {
+            try (CancellationToken.Scope ignored = token.activate()) {
+                call.complete(ask(userId, modelKey, query));
+            } catch (Exception e) {
+                call.completeExceptionally(e);
+            }
+        }));
+
+        Outcome outcome;
+        String markdown = null;
+        try {
+            markdown = call.get(config.getDeadlineMs(), TimeUnit.MILLISECONDS);
+            if (token.isCancelled()) {
+                outcome = Outcome.CANCELLED;
+            } else {
+                // в кэш — только настоящий ответ: ошибки клиента приходят исключением из ask
+                cache.put(key, new Cached(modelKey, markdown, System.currentTimeMillis() + config.getCacheTtlMs()));
+                outcome = Outcome.ANSWERED;
+            }
+        } catch (TimeoutException e) {
+            token.cancel();
+            outcome = Outcome.TIMEOUT;
+            log.info("Inline query from {} missed the {} ms deadline on {}", userId, config.getDeadlineMs(), modelKey);
+        } catch (ExecutionException e) {
+            if (token.isCancelled()) {
+                outcome = Outcome.CANCELLED;
+            } else {
+                outcome = Outcome.ERROR;
+                log.warn("Inline query from {} failed on {}", userId, modelKey, e.getCause());
+            }
+        } finally {
+            active.remove(userId, token);
+        }
+
+        long nanos = System.nanoTime() - start;
+        botMetrics.recordInlineAnswer(outcome.name().toLowerCase(Locale.ROOT), nanos);
+        return new Result(outcome, modelKey, markdown, nanos);
+    }
+
+    // Самый быстрый кандидат по EWMA задержки; ещё не измеренные идут после измеренных в порядке конфигурации
+    private String fastestModel() {
+        String best = null;
+        double bestLatency = Double.MAX_VALUE;
+        for (String modelKey : config.getModels()) {
+            AiModelsConfig.Model model = aiConfig.getModels().get(modelKey);
+            if (model == null) continue;
+            double latency = router.latencyNanos(modelKey, model);
+            if (best == null || (latency > 0 && latency < bestLatency)) {
+                best = modelKey;
+                bestLatency = latency > 0 ? latency : Double.MAX_VALUE;
+            }
+        }
+        return best != null ? best : aiConfig.getDefaultModel();
+    }
+
+    private String ask(Long userId, String modelKey, String query) throws Exception {
+        AiClientFactory.Route route = clientFactory.inlineRoute(modelKey);
+        AiTextSender client = (AiTextSender) route.client();
+        String prompt = config.getInstruction() + "\n\n" + query;
+        try (AiClientFactory.Scope ignored = clientFactory.chargeTo(userId)) {
+            return scheduler.call(userId, route.provider(), prompt.length(),
+                    () -> tracer.inSpan("ai.request", () -> {
+                        tracer.tag("ai.model", modelKey);
+                        tracer.tag("ai.provider", route.provider());
+                        tracer.tag("ai.inline", 1);
+                        return CallOutcome.answerOrThrow(() -> client.sendTextMessage(prompt, List.of()));
+                    }));
+        }
+    }
+
+    private static String normalize(String query) {
+        return query.strip().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+    }
+
+    private record Cached(String modelKey, String markdown, long expiresAt) {
+    }
+
+    // LRU с ограничением по числу записей; протухшие выбрасываются при чтении
+    private final class ResultCache {
+        private final LinkedHashMap<String, Cached> entries = new LinkedHashMap<>(64, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Cached> eldest) {
+                return size() > config.getCacheSize();
+            }
+        };
+
+        synchronized Cached get(String key) {
+            Cached cached = entries.get(key);
+            if (cached == null) return null;
+            if (cached.expiresAt() < System.currentTimeMillis()) {
+                entries.remove(key);
+                return null;
+            }
+            return cached;
+        }
+
+        synchronized void put(String key, Cached cached) {
+            entries.put(key, cached);
+        }
+    }
+}
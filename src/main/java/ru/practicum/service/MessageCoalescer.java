@@ -0,0 +1,147 @@
+package ru.practicum.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import ru.practicum.config.TelegramBotConfig;
+import ru.practicum.metrics.BotMetrics;
+import ru.practicum.tracing.BotTracer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+// Склейка сообщений, пришедших подряд: пока пользователь дописывает мысль несколькими сообщениями,
+// копим текст и отправляем модели один запрос после паузы telegrambot.debounce-ms
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class MessageCoalescer {
+    private final TelegramBotConfig telegramBotConfig;
+    private final ChatExecutor chatExecutor;
+    private final BotMetrics botMetrics;
+    private final BotTracer tracer;
+
+    // Один поток только взводит таймеры, сама обработка уходит в очередь чата
+    private final ScheduledExecutorService timers = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().name("coalescer").daemon().factory());
+
+    private final Map<Long, Batch> batches = new ConcurrentHashMap<>();
+    // Текст запросов, оборванных новым сообщением: уходит модели в начале следующей пачки чата
+    private final Map<Long, String> carried = new ConcurrentHashMap<>();
+
+    @FunctionalInterface
+    public interface BatchHandler {
+        // updateIds — апдейты, из которых склеен текст
+        void handle(String text, List<Integer> updateIds);
+    }
+
+    // Накопленный текст чата; меняется только внутри compute по ключу чата
+    private static final class Batch {
+        private final StringBuilder text = new StringBuilder();
+        private final long firstAt = System.currentTimeMillis();
+        private final BatchHandler handler;
+        private final List<Integer> updateIds = new ArrayList<>();
+        private int messages;
+        private Integer lastUpdateId;
+        private ScheduledFuture<?> timer;
+
+        Batch(BatchHandler handler) {
+            this.handler = handler;
+        }
+    }
+
+    public void submit(Long chatId, Integer updateId, String text, BatchHandler handler) {
+        String earlier = carried.remove(chatId);
+        String message = earlier != null ? earlier + '\n' + text : text;
+
+        long window = telegramBotConfig.getDebounceMs();
+        if (window <= 0) {
+            handler.handle(message, List.of(updateId));
+            return;
+        }
+
+        batches.compute(chatId, (id, batch) -> {
+            if (batch == null) {
+                batch = new Batch(handler);
+            } else {
+                batch.timer.cancel(false);
+                batch.text.append('\n');
+            }
+            batch.text.append(message);
+            batch.messages++;
+            batch.lastUpdateId = updateId;
+            batch.updateIds.add(updateId);
+
+            long deadline = batch.firstAt + telegramBotConfig.getDebounceMaxMs() - System.currentTimeMillis();
+            long delay = Math.max(0, Math.min(window, deadline));
+            Batch scheduled = batch;
+            batch.timer = timers.schedule(() -> fire(id, scheduled), delay, TimeUnit.MILLISECONDS);
+            return batch;
+        });
+    }
+
+    // Немедленно обрабатывает накопленный текст в текущем потоке: фото не должно обгонять его
+    public void flushNow(Long chatId) {
+        Batch batch = batches.remove(chatId);
+        if (batch != null) {
+            batch.timer.cancel(false);
+            run(batch);
+        }
+    }
+
+    // Возвращает текст оборванного запроса: следующее сообщение чата его дополняет, а не заменяет
+    public void carryOver(Long chatId, String text) {
+        carried.merge(chatId, text, (earlier, later) -> earlier + '\n' + later);
+    }
+
+    // Отбрасывает накопленный текст, не отправляя его модели; возвращает id отброшенных апдейтов
+    public List<Integer> discard(Long chatId) {
+        carried.remove(chatId);
+        Batch batch = batches.remove(chatId);
+        if (batch == null) return List.of();
+        batch.timer.cancel(false);
+        log.info("Discarded {} pending messages for chat {}", batch.messages, chatId);
+        return batch.updateIds;
+    }
+
+    // Отправляет все пачки в очереди чатов, не дожидаясь окна: начало остановки
+    public void fireAll() {
+        batches.forEach((chatId, batch) -> {
+            batch.timer.cancel(false);
+            fire(chatId, batch);
+        });
+    }
+
+    private void fire(Long chatId, Batch batch) {
+        // remove(key, value) ждёт конкурирующий compute: текст, дописанный в последний момент, попадёт в эту пачку
+        if (batches.remove(chatId, batch)) {
+            chatExecutor.submit(chatId, () -> tracer.inUpdate(batch.lastUpdateId, chatId, () -> run(batch)));
+        }
+    }
+
+    private void run(Batch batch) {
+        botMetrics.recordCoalescedBatch(batch.messages);
+        if (batch.messages > 1) {
+            log.info("Coalesced {} messages into one request", batch.messages);
+        }
+        try {
+            batch.handler.handle(batch.text.toString(), batch.updateIds);
+        } catch (RuntimeException e) {
+            log.error("Error processing coalesced messages", e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        timers.shutdown();
+        // не теряем недописанные пачки при остановке
+        batches.keySet().forEach(this::flushNow);
+    }
+}
@@ -0,0 +1,104 @@
+package ru.practicum.service;
+
+import io.opentelemetry.context.Context;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import ru.practicum.client.AiClientFactory;
+import ru.practicum.client.AiTextSender;
+import ru.practicum.client.CallOutcome;
+import ru.practicum.client.CancellationToken;
+import ru.practicum.config.CompareConfig;
+import ru.practicum.metrics.BotMetrics;
+import ru.practicum.scheduling.FairScheduler;
+import ru.practicum.tracing.BotTracer;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+// Один вопрос нескольким моделям параллельно: каждая на своём виртуальном потоке и через планировщик,
+// ответ отдаётся получателю сразу по готовности, по истечении общего срока незавершённые обрываются.
+// История чата не используется и не меняется.
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ModelComparison {
+    private final CompareConfig config;
+    private final AiClientFactory clientFactory;
+    private final FairScheduler scheduler;
+    private final BotTracer tracer;
+    private final BotMetrics botMetrics;
+
+    // Вызывается из потока модели, возможно одновременно для разных моделей
+    public interface Listener {
+        void onAnswer(String modelKey, String response, long nanos);
+
+        void onError(String modelKey, Exception error, long nanos);
+    }
+
+    // Возвращает модели, не ответившие до срока
+    public List<String> run(Long chatId, List<String> modelKeys, String prompt, Listener listener)
+            throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(modelKeys.size());
+        Map<String, CancellationToken> pending = new LinkedHashMap<>();
+        for (String modelKey : modelKeys) {
+            pending.put(modelKey, new CancellationToken());
+        }
+
+        long start = System.nanoTime();
+        pending.forEach((modelKey, token) -> Thread.ofVirtual().name("compare-" + modelKey).start(Context.current().wrap(() -> {
+            try (CancellationToken.Scope ignored = token.activate()) {
+                String response = ask(chatId, modelKey, prompt);
+                long nanos = System.nanoTime() - start;
+                // после срока ответ уже никому не нужен; cancel() внутри commit помечает модель ответившей.
+                // Под замком токена только решаем: отправка в Telegram блокирует и не должна держать монитор
+                if (token.commit(token::cancel)) {
+                    botMetrics.recordComparison(modelKey, "ok", nanos);
+                    listener.onAnswer(modelKey, response, nanos);
+                }
+            } catch (Exception e) {
+                long nanos = System.nanoTime() - start;
+                if (token.commit(token::cancel)) {
+                    log.warn("Comparison request to {} failed for chat {}", modelKey, chatId, e);
+                    botMetrics.recordComparison(modelKey, "error", nanos);
+                    listener.onError(modelKey, e, nanos);
+                }
+            } finally {
+                latch.countDown();
+            }
+        })));
+
+        latch.await(config.getDeadlineMs(), TimeUnit.MILLISECONDS);
+
+        List<String> late = new ArrayList<>();
+        long elapsed = System.nanoTime() - start;
+        pending.forEach((modelKey, token) -> {
+            // cancel() удаётся только у тех, кто ещё не сообщил результат: их запрос обрывается
+            if (token.cancel()) {
+                late.add(modelKey);
+                botMetrics.recordComparison(modelKey, "timeout", elapsed);
+            }
+        });
+        if (!late.isEmpty()) {
+            log.info("Comparison for chat {}: {} missed the {} ms deadline", chatId, late, config.getDeadlineMs());
+        }
+        return late;
+    }
+
+    private String ask(Long chatId, String modelKey, String prompt) throws Exception {
+        AiClientFactory.Route route = clientFactory.route(modelKey, chatId);
+        AiTextSender client = (AiTextSender) route.client();
+        return scheduler.call(chatId, route.provider(), prompt.length(),
+                () -> tracer.inSpan("ai.request", () -> {
+                    tracer.tag("ai.model", modelKey);
+                    tracer.tag("ai.provider", route.provider());
+                    tracer.tag("ai.compare", 1);
+                    // текст ошибки клиента — не ответ модели: уходит в onError
+                    return CallOutcome.answerOrThrow(() -> client.sendTextMessage(prompt, List.of()));
+                }));
+    }
+}
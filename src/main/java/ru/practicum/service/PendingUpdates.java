@@ -0,0 +1,234 @@
+package ru.practicum.service;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+import org.telegram.telegrambots.meta.api.objects.Update;
+import org.telegram.telegrambots.meta.generics.BotSession;
+import ru.practicum.config.TelegramBotConfig;
+import ru.practicum.metrics.BotMetrics;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+// Апдейты, принятые, но ещё не обработанные. При остановке перестаём принимать новые, ждём текущие
+// до telegrambot.drain-timeout-ms, а недоделанные пишем в файл и проигрываем при следующем запуске.
+// Останавливается первым (максимальная фаза), пока очереди чатов и клиенты ещё работают.
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class PendingUpdates implements SmartLifecycle {
+    private final TelegramBotConfig config;
+    private final MessageCoalescer coalescer;
+    private final ChatCancellation cancellation;
+    private final UpdateDeduplicator deduplicator;
+    private final BotMetrics botMetrics;
+
+    private final ObjectMapper mapper = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+    private final ObjectReader reader = mapper.readerFor(Update.class);
+    private final ObjectWriter writer = mapper.writerFor(Update.class);
+
+    // update_id → апдейт и число незавершённых частей обработки (очередь чата, пачка склейки)
+    private final Map<Integer, Entry> inFlight = new ConcurrentHashMap<>();
+    // Пришли во время остановки: не обрабатываем, сразу в файл
+    private final ConcurrentLinkedQueue<Update> parked = new ConcurrentLinkedQueue<>();
+    private final List<Update> restored = new ArrayList<>();
+
+    private volatile BotSession session;
+    private volatile boolean running;
+    private volatile boolean draining;
+    private volatile boolean abandoned;
+
+    private static final class Entry {
+        private final Update update;
+        private int holds = 1;
+
+        Entry(Update update) {
+            this.update = update;
+        }
+    }
+
+    @PostConstruct
+    public void load() {
+        Path file = Path.of(config.getPendingFile());
+        if (!Files.exists(file)) return;
+
+        try (BufferedReader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.isBlank()) continue;
+                Update update = reader.readValue(line);
+                if (replayable(update)) restored.add(update);
+            }
+            // повторно проигрывать тот же файл после следующего сбоя не нужно: незавершённое запишется заново
+            Files.delete(file);
+            log.info("Restored {} pending updates from {}", restored.size(), file);
+        } catch (IOException | RuntimeException e) {
+            log.error("Failed to restore pending updates from {}", file, e);
+        }
+    }
+
+    // Апдейты прошлого запуска; забираются один раз при старте
+    public synchronized List<Update> takeRestored() {
+        List<Update> result = List.copyOf(restored);
+        restored.clear();
+        botMetrics.recordPendingUpdates("replayed", result.size());
+        return result;
+    }
+
+    // Сессия long polling: при остановке её закрываем первой, чтобы не забирать новые апдейты
+    public void attach(BotSession session) {
+        this.session = session;
+    }
+
+    public boolean draining() {
+        return draining;
+    }
+
+    // Сроки вышли и незавершённое уже сохранено: оставшиеся в очередях задачи не выполняем
+    public boolean abandoned() {
+        return abandoned;
+    }
+
+    // Inline-запрос живёт секунды: после рестарта его id уже недействителен, ответить на него нельзя
+    private static boolean replayable(Update update) {
+        return !update.hasInlineQuery();
+    }
+
+    public void track(Update update) {
+        if (!replayable(update)) {
+            // повторять его всё равно незачем: для отсева повторов он сразу считается обработанным
+            deduplicator.processed(update.getUpdateId());
+            return;
+        }
+        inFlight.put(update.getUpdateId(), new Entry(update));
+    }
+
+    // Ещё одна часть обработки, например текст ушёл в пачку склейки
+    public void retain(Integer updateId) {
+        inFlight.computeIfPresent(updateId, (id, e) -> {
+            e.holds++;
+            return e;
+        });
+    }
+
+    public void done(Integer updateId) {
+        boolean[] finished = {false};
+        inFlight.computeIfPresent(updateId, (id, e) -> {
+            if (--e.holds > 0) return e;
+            finished[0] = true;
+            return null;
+        });
+        // после отказа от ожидания водяной знак двигает только успешная запись в файл
+        if (finished[0] && !abandoned) deduplicator.processed(updateId);
+        if (draining && inFlight.isEmpty()) {
+            synchronized (this) {
+                notifyAll();
+            }
+        }
+    }
+
+    public void park(Update update) {
+        if (!replayable(update)) {
+            deduplicator.processed(update.getUpdateId());
+            return;
+        }
+        parked.add(update);
+        log.info("Update {} arrived during shutdown, saved for the next start", update.getUpdateId());
+    }
+
+    @Override
+    public void start() {
+        running = true;
+    }
+
+    @Override
+    public void stop() {
+        draining = true;
+        BotSession current = session;
+        if (current != null && current.isRunning()) {
+            current.stop();
+        }
+        coalescer.fireAll();
+
+        long deadline = System.currentTimeMillis() + config.getDrainTimeoutMs();
+        log.info("Draining {} in-flight updates (up to {} ms)", inFlight.size(), config.getDrainTimeoutMs());
+        synchronized (this) {
+            long left;
+            while (!inFlight.isEmpty() && (left = deadline - System.currentTimeMillis()) > 0) {
+                try {
+                    wait(left);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+
+        abandoned = true;
+        // ответ на сохранённый апдейт придёт после рестарта: текущие запросы обрываем, чтобы не ответить дважды
+        if (!inFlight.isEmpty()) {
+            cancellation.cancelAll("shutdown");
+        }
+        persist();
+        running = false;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public int getPhase() {
+        return Integer.MAX_VALUE;
+    }
+
+    private void persist() {
+        List<Update> pending = new ArrayList<>();
+        inFlight.values().forEach(e -> pending.add(e.update));
+        pending.addAll(parked);
+        if (pending.isEmpty()) {
+            log.info("Drain complete, no pending updates");
+            return;
+        }
+
+        Path file = Path.of(config.getPendingFile());
+        try {
+            Path dir = file.toAbsolutePath().getParent();
+            Files.createDirectories(dir);
+            Path tmp = Files.createTempFile(dir, file.getFileName().toString(), ".tmp");
+
+            try (BufferedWriter out = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+                for (Update update : pending) {
+                    out.write(writer.writeValueAsString(update));
+                    out.newLine();
+                }
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            // сохранённые проиграются из файла: повторная доставка от Telegram им уже не нужна
+            pending.forEach(update -> deduplicator.processed(update.getUpdateId()));
+            botMetrics.recordPendingUpdates("persisted", pending.size());
+            log.info("Saved {} pending updates to {}", pending.size(), file);
+        } catch (IOException e) {
+            log.error("Failed to save {} pending updates to {}", pending.size(), file, e);
+        }
+    }
+}
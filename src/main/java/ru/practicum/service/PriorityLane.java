@@ -0,0 +1,48 @@
+package ru.practicum.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Полоса для команд и нажатий кнопок: своя очередь чата, отдельная от ChatExecutor, поэтому команды
+// никогда не ждут запросов к моделям. Внутри чата команды идут по порядку (кнопка модели, затем /info),
+// разные чаты — параллельно
+@Slf4j
+@Component
+public class PriorityLane {
+    private static final CompletableFuture<Void> DONE = CompletableFuture.completedFuture(null);
+
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    private final Map<Long, CompletableFuture<Void>> tails = new ConcurrentHashMap<>();
+
+    public void execute(Long chatId, Runnable task) {
+        if (chatId == null) {
+            executor.execute(() -> run(task));
+            return;
+        }
+
+        CompletableFuture<Void> next = tails.compute(chatId,
+                (id, tail) -> (tail != null ? tail : DONE).thenRunAsync(() -> run(task), executor));
+        next.whenComplete((r, e) -> tails.remove(chatId, next));
+    }
+
+    private void run(Runnable task) {
+        try {
+            task.run();
+        } catch (Exception e) {
+            log.error("Error in priority task", e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
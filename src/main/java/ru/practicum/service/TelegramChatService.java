@@ -1,41 +1,83 @@
 package ru.practicum.service;
 
+import jakarta.annotation.PostConstruct;
 import lombok.AllArgsConstructor;
-import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import org.telegram.telegrambots.bots.TelegramLongPollingBot;
 import org.telegram.telegrambots.meta.api.methods.ActionType;
 import org.telegram.telegrambots.meta.api.methods.AnswerCallbackQuery;
+import org.telegram.telegrambots.meta.api.methods.AnswerInlineQuery;
 import org.telegram.telegrambots.meta.api.methods.GetFile;
 import org.telegram.telegrambots.meta.api.methods.send.SendChatAction;
 import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
 import org.telegram.telegrambots.meta.api.objects.*;
+import org.telegram.telegrambots.meta.api.objects.inlinequery.InlineQuery;
+import org.telegram.telegrambots.meta.api.objects.inlinequery.inputmessagecontent.InputTextMessageContent;
+import org.telegram.telegrambots.meta.api.objects.inlinequery.result.InlineQueryResultArticle;
 import org.telegram.telegrambots.meta.api.objects.replykeyboard.InlineKeyboardMarkup;
 import org.telegram.telegrambots.meta.api.objects.replykeyboard.buttons.InlineKeyboardButton;
 import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
 import ru.practicum.client.*;
 import ru.practicum.config.*;
-import ru.practicum.utils.ConversationContext;
-import ru.practicum.utils.DigestContext;
-import ru.practicum.utils.MessageSplitter;
+import ru.practicum.metrics.BotMetrics;
+import ru.practicum.overload.BrownoutController;
+import ru.practicum.scheduling.FairScheduler;
+import ru.practicum.scheduling.ProviderOverloadedException;
+import ru.practicum.tracing.BotTracer;
+import ru.practicum.usage.ChatQuotas;
+import ru.practicum.usage.QuotaDecision;
+import ru.practicum.usage.UsageLedger;
+import ru.practicum.usage.UsageTotals;
+import ru.practicum.utils.*;
 
 import java.io.InputStream;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Base64;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 
 @Slf4j
 @Service
 @AllArgsConstructor
 public class TelegramChatService extends TelegramLongPollingBot{
+    private static final int TG_LIMIT = 4096;
+
     private final TelegramBotConfig telegramBotConfig;
     private final ProxyConfig proxyConfig;
     private final ConversationContext context;
     private final AiClientFactory clientFactory;
     private final MessageSplitter messageSplitter;
     private final DigestContext digestContext;
+    private final MarkdownToHtmlConverter htmlConverter;
+    private final MarkdownToEntitiesConverter entitiesConverter;
+    private final BotMetrics botMetrics;
+    private final UsageLedger usageLedger;
+    private final BotTracer tracer;
+    private final UpdateDeduplicator deduplicator;
+    private final MessageCoalescer coalescer;
+    private final ChatCancellation cancellation;
+    private final FairScheduler scheduler;
+    private final SchedulerConfig schedulerConfig;
+    private final BrownoutController brownout;
+    private final ChatExecutor chatExecutor;
+    private final PriorityLane priorityLane;
+    private final ChatQuotas quotas;
+    private final PendingUpdates pending;
+    private final ModelComparison comparison;
+    private final CompareConfig compareConfig;
+    private final AiModelsConfig aiConfig;
+    private final GroupFilter groupFilter;
+    private final InlineAnswers inlineAnswers;
+    private final InlineConfig inlineConfig;
+
+    @PostConstruct
+    public void configureApiUrl() {
+        getOptions().setBaseUrl(telegramBotConfig.getApiUrl() + "/bot");
+    }
 
     @Override
     public String getBotUsername() {
@@ -48,9 +90,115 @@ public class TelegramChatService extends TelegramLongPollingBot{
         return telegramBotConfig.getBotToken();
     }
 
-    @SneakyThrows
+    // Общий вход для polling и webhook: только отсев групповых сообщений не для бота и повторов,
+    // отмена устаревшего запроса и выбор полосы.
+    // Команды и кнопки идут в приоритетную полосу, запросы к моделям — в очередь чата.
     @Override
     public void onUpdateReceived(Update update) {
+        if (!groupFilter.addressed(update)) return;
+        if (!deduplicator.firstSeen(update)) {
+            log.info("Skipping duplicate update {}", update.getUpdateId());
+            botMetrics.recordDuplicateUpdate();
+            return;
+        }
+        if (pending.draining()) {
+            pending.park(update);
+            return;
+        }
+        accept(update);
+    }
+
+    // Апдейт, не обработанный до прошлой остановки: в отсеве повторов он уже учтён, поэтому мимо него
+    public void replay(Update update) {
+        log.info("Replaying update {} saved before restart", update.getUpdateId());
+        accept(update);
+    }
+
+    private void accept(Update update) {
+        preempt(update);
+        pending.track(update);
+
+        long received = System.nanoTime();
+        if (isPriority(update)) {
+            priorityLane.execute(chatIdOf(update), () -> process("priority", update, null, received));
+        } else {
+            // отмену регистрируем уже сейчас: /clear оборвёт и апдейт, который ещё ждёт очереди или качает фото
+            Long chatId = chatIdOf(update);
+            ChatCancellation.Turn turn = chatId != null ? cancellation.begin(chatId, false) : null;
+            // у inline-запроса нет чата: отдельный виртуальный поток без очереди
+            String lane = update.hasInlineQuery() ? "inline" : "ai";
+            chatExecutor.submit(chatId, () -> process(lane, update, turn, received));
+        }
+    }
+
+    // /compare — команда, но это работа с моделями: ей место в очереди чата
+    private static boolean isPriority(Update update) {
+        if (update.hasCallbackQuery()) return true;
+        if (!update.hasMessage() || !update.getMessage().hasText()) return false;
+        String text = update.getMessage().getText();
+        return text.startsWith("/") && !"/compare".equals(GroupFilter.commandName(text));
+    }
+
+    private void process(String lane, Update update, ChatCancellation.Turn turn, long received) {
+        try {
+            // апдейт уже сохранён для следующего запуска
+            if (pending.abandoned()) return;
+
+            // на нажатие кнопки отвечаем раньше всего остального, иначе у пользователя крутятся часики
+            if (update.hasCallbackQuery()) {
+                answerCallback(update.getCallbackQuery());
+            }
+            try (ConversationContext.Scope ignored = ConversationContext.inTopic(topicOf(update))) {
+                tracer.inUpdate(update.getUpdateId(), chatIdOf(update), () -> handleUpdate(update, turn));
+            }
+        } catch (Exception e) {
+            log.error("Error handling update {}", update.getUpdateId(), e);
+        } finally {
+            if (turn != null) cancellation.finish(turn);
+            pending.done(update.getUpdateId());
+            botMetrics.recordUpdateHandled(lane, System.nanoTime() - received);
+        }
+    }
+
+    // Вызывается при поступлении апдейта, до очереди чата: обрывает запрос, ответ на который уже не нужен
+    private void preempt(Update update) {
+        Long chatId = chatIdOf(update);
+        if (chatId == null) return;
+
+        String reason = null;
+        if (update.hasCallbackQuery()) {
+            String data = update.getCallbackQuery().getData();
+            if (data != null && data.startsWith("model:")) reason = "model_switch";
+        } else if (update.getMessage().hasText()) {
+            String text = update.getMessage().getText();
+            if (!text.startsWith("/")) {
+                // в группе пишут разные люди: чужое сообщение не отменяет запрос
+                boolean privateChat = update.getMessage().getChat().isUserChat();
+                if (telegramBotConfig.isCancelOnNewMessage() && privateChat) cancellation.supersede(chatId);
+            } else if ("/clear".equals(GroupFilter.commandName(text.trim()))) {
+                reason = "clear";
+            }
+        }
+
+        if (reason != null) {
+            cancellation.reset(chatId, reason);
+        }
+    }
+
+    public static Long chatIdOf(Update update) {
+        if (update.hasMessage()) return update.getMessage().getChatId();
+        if (update.hasCallbackQuery()) return update.getCallbackQuery().getMessage().getChatId();
+        return null;
+    }
+
+    // Тема форума: у каждой свой контекст, ответы уходят в ту же тему
+    private static Integer topicOf(Update update) {
+        Message message = update.hasMessage() ? update.getMessage()
+                : update.hasCallbackQuery() ? update.getCallbackQuery().getMessage() : null;
+        return message != null && Boolean.TRUE.equals(message.getIsTopicMessage()) ? message.getMessageThreadId() : null;
+    }
+
+    private void handleUpdate(Update update, ChatCancellation.Turn turn) throws TelegramApiException {
         if (update.hasMessage()) {
             Message message = update.getMessage();
             Long chatId = message.getChatId();
@@ -58,7 +206,9 @@ public class TelegramChatService extends TelegramLongPollingBot{
             log.info("Received message from {}", chatId);
 
             if (message.hasPhoto()) {
-                handlePhotoMessage(chatId, message);
+                coalescer.flushNow(chatId);
+                if (rejectWhenOverloaded(chatId)) return;
+                handlePhotoMessage(chatId, message, turn);
                 return;
             }
 
@@ -67,49 +217,169 @@ public class TelegramChatService extends TelegramLongPollingBot{
                 log.info("Text message: {}", userMessage);
 
                 if (userMessage.startsWith("/")) {
-                    handleCommand(chatId, userMessage);
+                    handleCommand(chatId, userMessage, message.getChat().isUserChat());
                     return;
                 }
 
+                if (rejectWhenOverloaded(chatId)) return;
                 sendTypingAction(chatId);
-
-                try {
-                    // Получаем текущую модель пользователя и создаем клиента
-                    String modelKey = context.getCurrentModel(chatId);
-                    AiTextSender client = (AiTextSender) clientFactory.create(modelKey, chatId);
-
-                    String response = client.sendTextMessage(userMessage, context.getHistory(chatId));
-                    context.addMessage(chatId, "user", userMessage);
-                    context.addMessage(chatId, "assistant", response);
-                    sendMessage(chatId, response);
-                } catch (Exception e) {
-                    log.error("Error processing message", e);
-                    sendMessage(chatId, "Произошла ошибка при обработке вашего сообщения.");
+                if (!message.getChat().isUserChat()) {
+                    // в группе подряд пишут разные люди: не склеиваем
+                    handleTextMessage(chatId, groupFilter.stripMention(userMessage), turn);
+                    return;
                 }
+                // апдейт считается обработанным, когда отработает пачка, в которую он попал;
+                // у пачки свой ход: апдейты, из которых она склеена, к её запуску уже завершены
+                pending.retain(update.getUpdateId());
+                coalescer.submit(chatId, update.getUpdateId(), userMessage, (text, updateIds) -> {
+                    ChatCancellation.Turn batch = cancellation.begin(chatId, turn.epoch(), true);
+                    try {
+                        if (!pending.abandoned()) handleTextMessage(chatId, text, batch);
+                    } finally {
+                        cancellation.finish(batch);
+                        updateIds.forEach(pending::done);
+                    }
+                });
             }
         } else if (update.hasCallbackQuery()) {
             handleModelSelection(update.getCallbackQuery());
+        } else if (update.hasInlineQuery()) {
+            handleInlineQuery(update.getInlineQuery());
         }
     }
 
-    private void handlePhotoMessage(Long chatId, Message message) {
+    // Inline-запрос: кэш, затем квота и самая быстрая модель со сроком; устаревшие ответы не отправляем
+    private void handleInlineQuery(InlineQuery query) throws TelegramApiException {
+        String text = query.getQuery();
+        if (!inlineConfig.isEnabled() || text == null || text.strip().length() < inlineConfig.getMinQueryLength()) return;
+        Long userId = query.getFrom().getId();
+        int cacheSeconds = (int) (inlineConfig.getCacheTtlMs() / 1000);
+
+        InlineAnswers.Result result = inlineAnswers.cached(text);
+        if (result == null) {
+            if (brownout.rejecting()) {
+                answerInline(query, "🚦 Бот перегружен", "Сейчас слишком много запросов, попробуйте через минуту.", 0);
+                return;
+            }
+            QuotaDecision decision = quotas.check(userId, false);
+            if (!decision.allowed()) {
+                answerInline(query, "⏱ Лимит запросов", "Лимит запросов исчерпан, попробуйте через "
+                        + formatWait(Math.max(1, (decision.retryAfterMs() + 999) / 1000)) + ".", 0);
+                return;
+            }
+            try {
+                result = inlineAnswers.answer(userId, text);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+
+        switch (result.outcome()) {
+            case CACHED, ANSWERED -> answerInline(query,
+                    displayName(result.modelKey()) + (result.nanos() > 0 ? " · " + formatSeconds(result.nanos()) : ""),
+                    result.markdown(), cacheSeconds);
+            case TIMEOUT -> answerInline(query, "⏳ Не успел ответить",
+                    "Модель не уложилась в срок, попробуйте ещё раз или задайте вопрос в личном чате.", 0);
+            case ERROR -> answerInline(query, "❌ Ошибка", "Не удалось получить ответ модели.", 0);
+            // пользователь уже дописал запрос, этот ответ никто не увидит
+            case CANCELLED -> { }
+        }
+    }
+
+    private void answerInline(InlineQuery query, String title, String markdown, int cacheSeconds) throws TelegramApiException {
+        String html = htmlConverter.convertMarkdownToTelegramHtml(markdown);
+        List<String> chunks = messageSplitter.splitMessageForTelegram(html, TG_LIMIT);
+        String plain = markdown.strip().replaceAll("\\s+", " ");
+
+        InlineQueryResultArticle article = InlineQueryResultArticle.builder()
+                .id(Integer.toHexString(query.getQuery().hashCode()))
+                .title(title)
+                .description(plain.length() > 120 ? plain.substring(0, 120) + "…" : plain)
+                .inputMessageContent(InputTextMessageContent.builder()
+                        .messageText(chunks.isEmpty() ? html : chunks.getFirst())
+                        .parseMode("HTML")
+                        .build())
+                .build();
+        execute(AnswerInlineQuery.builder()
+                .inlineQueryId(query.getId())
+                .result(article)
+                .cacheTime(cacheSeconds)
+                .build());
+    }
+
+    // На последней ступени brownout новые запросы к моделям не принимаем, сразу отвечаем
+    private boolean rejectWhenOverloaded(Long chatId) {
+        if (!brownout.rejecting()) return false;
+        log.warn("Rejecting request from chat {}: bot is overloaded", chatId);
+        sendMessage(chatId, "🚦 Сейчас слишком много запросов, попробуйте через минуту.");
+        return true;
+    }
+
+    // Квоты чата проверяем до вызова провайдера (и до скачивания фото)
+    private boolean throttled(Long chatId, boolean image) {
+        return throttled(chatId, image, 1);
+    }
+
+    private boolean throttled(Long chatId, boolean image, int requests) {
+        QuotaDecision decision = quotas.check(chatId, image, requests);
+        if (decision.allowed()) return false;
+
+        long seconds = Math.max(1, (decision.retryAfterMs() + 999) / 1000);
+        String text = switch (decision.kind()) {
+            case REQUESTS -> "⏱ Слишком много запросов: не больше " + decision.limit()
+                    + " в минуту. Попробуйте через " + seconds + " с.";
+            case TOKENS -> "📊 Дневной лимит токенов (" + decision.limit()
+                    + ") исчерпан. Лимит обновится через " + formatWait(seconds) + ".";
+            case IMAGES -> "🖼 Лимит изображений: не больше " + decision.limit()
+                    + " в час. Следующее можно отправить через " + formatWait(seconds) + ".";
+            case ALLOWED -> null;
+        };
+        sendMessage(chatId, text);
+        return true;
+    }
+
+    private static String formatWait(long seconds) {
+        if (seconds < 60) return seconds + " с";
+        long minutes = (seconds + 59) / 60;
+        return minutes < 60 ? minutes + " мин" : (minutes / 60) + " ч " + (minutes % 60) + " мин";
+    }
+
+    private void handleTextMessage(Long chatId, String userMessage, ChatCancellation.Turn turn) {
+        if (throttled(chatId, false)) return;
+        try {
+            // Получаем текущую модель пользователя и создаем клиента
+            String modelKey = brownout.model(context.getCurrentModel(chatId), false);
+            AiClientFactory.Route route = clientFactory.route(modelKey, chatId);
+            AiTextSender client = (AiTextSender) route.client();
+
+            completeTurn(turn, modelKey, route.provider(), userMessage, 0,
+                    history -> client.sendTextMessage(userMessage, history));
+        } catch (Exception e) {
+            log.error("Error processing message", e);
+            sendMessage(chatId, "Произошла ошибка при обработке вашего сообщения.");
+        }
+    }
+
+    private void handlePhotoMessage(Long chatId, Message message, ChatCancellation.Turn turn) {
         log.info("Processing photo message from {}", chatId);
+        if (throttled(chatId, true)) return;
         sendTypingAction(chatId);
 
         try {
             PhotoSize photo = message.getPhoto().get(message.getPhoto().size() - 1);
             byte[] imageBytes = downloadPhoto(photo.getFileId());
-            String base64Image = Base64.getEncoder().encodeToString(imageBytes);
-            String caption = message.getCaption() != null ? message.getCaption() : "Опиши что на изображении";
+            String base64Image = tracer.inSpan("image.base64", () -> Base64.getEncoder().encodeToString(imageBytes));
+            String caption = message.getCaption() == null ? "Опиши что на изображении"
+                    : message.getChat().isUserChat() ? message.getCaption() : groupFilter.stripMention(message.getCaption());
 
             // Получаем клиента для выбранной модели
-            String modelKey = context.getCurrentModel(chatId);
-            AiImageSender client = (AiImageSender) clientFactory.create(modelKey, chatId);
+            String modelKey = brownout.model(context.getCurrentModel(chatId), true);
+            AiClientFactory.Route route = clientFactory.route(modelKey, chatId);
+            AiImageSender client = (AiImageSender) route.client();
 
-            String response = client.sendMessageWithImage(caption, base64Image, context.getHistory(chatId));
-            context.addMessage(chatId, "user", "[Изображение] " + caption);
-            context.addMessage(chatId, "assistant", response);
-            sendMessage(chatId, response);
+            completeTurn(turn, modelKey, route.provider(), "[Изображение] " + caption, schedulerConfig.getImageCost(),
+                    history -> client.sendMessageWithImage(caption, base64Image, history));
 
         } catch (Exception e) {
             log.error("Error processing photo", e);
@@ -117,22 +387,84 @@ public class TelegramChatService extends TelegramLongPollingBot{
         }
     }
 
+    @FunctionalInterface
+    private interface ModelCall {
+        String call(List<Map<String, String>> history) throws Exception;
+    }
+
+    // Ход диалога: ждём слот провайдера в планировщике, запрос можно отменить —
+    // ответ отменённого запроса не попадает ни в историю, ни в чат
+    private void completeTurn(ChatCancellation.Turn turn, String modelKey, String provider, String userEntry, long extraCost,
+                              ModelCall request) throws Exception {
+        Long chatId = turn.chatId();
+        CancellationToken token = turn.token();
+        if (token.isCancelled()) {
+            log.info("Skipping request for chat {}: cancelled before it started", chatId);
+            carryOver(turn, userEntry);
+            return;
+        }
+
+        List<Map<String, String>> history = brownout.history(context.getHistory(chatId));
+        long cost = userEntry.length() + extraCost;
+        for (Map<String, String> message : history) {
+            cost += message.getOrDefault("content", "").length();
+        }
+
+        try (CancellationToken.Scope ignored = token.activate()) {
+            String response = scheduler.call(chatId, provider, cost,
+                    () -> tracer.inSpan("ai.request", () -> {
+                        tracer.tag("ai.model", modelKey);
+                        tracer.tag("ai.provider", provider);
+                        return request.call(history);
+                    }));
+            boolean fresh = cancellation.commit(turn, () -> {
+                context.addMessage(chatId, "user", userEntry);
+                context.addMessage(chatId, "assistant", response);
+            });
+            if (!fresh) {
+                log.info("Discarding response for chat {}: request was cancelled", chatId);
+                carryOver(turn, userEntry);
+                return;
+            }
+            sendReply(chatId, response);
+        } catch (ProviderOverloadedException e) {
+            log.warn("Rejected request for chat {}: {}", chatId, e.getMessage());
+            sendMessage(chatId, "⏳ Модель сейчас перегружена, попробуйте чуть позже.");
+        } catch (Exception e) {
+            if (token.isCancelled()) {
+                log.info("Request for chat {} aborted after cancellation", chatId);
+                carryOver(turn, userEntry);
+                return;
+            }
+            throw e;
+        }
+    }
+
+    // Текст, оборванный новым сообщением, не теряем: он уйдёт модели вместе со следующей пачкой
+    private void carryOver(ChatCancellation.Turn turn, String userEntry) {
+        if (turn.superseded()) {
+            coalescer.carryOver(turn.chatId(), userEntry);
+        }
+    }
+
     private byte[] downloadPhoto(String fileId) throws Exception {
         GetFile getFileMethod = new GetFile();
         getFileMethod.setFileId(fileId);
-        File file = execute(getFileMethod);
-        String fileUrl = "https://api.telegram.org/file/bot" + getBotToken() + "/" + file.getFilePath();
+        File file = tracer.inSpan("telegram.get_file", () -> execute(getFileMethod));
+        String fileUrl = telegramBotConfig.getApiUrl() + "/file/bot" + getBotToken() + "/" + file.getFilePath();
         log.debug("Downloading photo from: {}", fileUrl);
         URL url = new URL(fileUrl);
-        try (InputStream inputStream = url.openStream()) {
-            return inputStream.readAllBytes();
-        }
+        return tracer.inSpan("telegram.download_photo", () -> {
+            try (InputStream inputStream = url.openStream()) {
+                return inputStream.readAllBytes();
+            }
+        });
     }
 
-    private void handleCommand(Long chatId, String command) throws TelegramApiException {
+    private void handleCommand(Long chatId, String command, boolean privateChat) throws TelegramApiException {
         // Разбиваем команду на части: команда + аргументы
         String[] parts = command.trim().split("\\s+", 2);
-        String cmd = parts[0].toLowerCase(); // команда (например, /digest_add)
+        String cmd = GroupFilter.commandName(parts[0]); // команда без @имя_бота (например, /digest_add)
         String arg = parts.length > 1 ? parts[1] : null; // аргумент (например, "погода")
 
         switch (cmd) {
@@ -140,10 +472,15 @@ public class TelegramChatService extends TelegramLongPollingBot{
             case "/info" -> sendInfo(chatId);
             case "/history" -> sendMessage(chatId, "📝 Текущий контекст:\n" + context.getHistory(chatId));
             case "/clear" -> {
+                // ещё не отправленный модели текст тоже относится к старому контексту
+                coalescer.discard(chatId).forEach(pending::done);
                 context.clearHistory(chatId);
                 sendMessage(chatId, "🧹 Контекст беседы очищен.");
             }
             case "/model" -> execute(createModelSelectionMenu(chatId));
+            case "/usage" -> sendUsage(chatId);
+            case "/compare" -> handleCompare(chatId, arg);
+            case "/traces" -> handleTraces(chatId, arg);
 
             // Команды дайджеста
             case "/digest_add" -> handleDigestAdd(chatId, arg);
@@ -154,7 +491,15 @@ public class TelegramChatService extends TelegramLongPollingBot{
                 sendMessage(chatId, "🧹 Все темы дайджеста удалены");
             }
 
-            default -> sendMessage(chatId, """
+            // /cmd без суффикса в группе мог быть адресован другому боту: чужие команды молча пропускаем
+            default -> {
+                if (privateChat) sendUnknownCommand(chatId);
+            }
+        }
+    }
+
+    private void sendUnknownCommand(Long chatId) {
+        sendMessage(chatId, """
                 Неизвестная команда.
                 
                 📋 <b>Основные команды:</b>
@@ -163,6 +508,8 @@ public class TelegramChatService extends TelegramLongPollingBot{
                 /model - выбор модели
                 /history - история контекста
                 /clear - очистить контекст
+                /usage - расход токенов
+                /compare [модели через запятую] <вопрос> - спросить несколько моделей
                 
                 📰 <b>Дайджест:</b>
                 /digest_add <тема> - добавить тему
@@ -170,23 +517,55 @@ public class TelegramChatService extends TelegramLongPollingBot{
                 /digest_list - показать темы
                 /digest_clear - очистить все темы
                 """);
+    }
+
+    // Ответ модели в Markdown: формат отправки выбирается конфигурацией telegrambot.reply-format
+    public void sendReply(Long chatId, String markdown) {
+        if (telegramBotConfig.isEntityReplies()) {
+            sendFormatted(chatId, tracer.inSpan("reply.convert", () -> entitiesConverter.convertMarkdownToEntities(markdown)));
+        } else {
+            sendMessage(chatId, tracer.inSpan("reply.convert", () -> htmlConverter.convertMarkdownToTelegramHtml(markdown)));
+        }
+    }
+
+    private void sendFormatted(Long chatId, FormattedText text) {
+        List<FormattedText> chunks = tracer.inSpan("reply.split", () -> messageSplitter.splitFormattedText(text, TG_LIMIT));
+        botMetrics.recordTelegramChunks("entities", chunks.size());
+
+        for (FormattedText chunk : chunks) {
+            SendMessage msg = new SendMessage();
+            msg.setChatId(chatId);
+            msg.setMessageThreadId(ConversationContext.currentTopic());
+            msg.setText(chunk.text());
+            if (!chunk.entities().isEmpty()) {
+                msg.setEntities(chunk.entities());
+            }
+
+            try {
+                executeTimed(msg);
+                log.info("Chunk sent to {} ({} chars, {} entities)", chatId, chunk.text().length(), chunk.entities().size());
+            } catch (TelegramApiException e) {
+                log.error("Error sending chunk to {}", chatId, e);
+                break;
+            }
         }
     }
 
     public void sendMessage(Long chatId, String text) {
-        final int TG_LIMIT = 4096;
-        List<String> chunks = messageSplitter.splitMessageForTelegram(text, TG_LIMIT);
+        List<String> chunks = tracer.inSpan("reply.split", () -> messageSplitter.splitMessageForTelegram(text, TG_LIMIT));
+        botMetrics.recordTelegramChunks("html", chunks.size());
 
         for (String chunk : chunks) {
             if (chunk == null || chunk.isEmpty()) continue;
 
             SendMessage msg = new SendMessage();
             msg.setChatId(chatId);
+            msg.setMessageThreadId(ConversationContext.currentTopic());
             msg.setText(chunk);
             msg.setParseMode("HTML");
 
             try {
-                execute(msg);
+                executeTimed(msg);
                 log.info("Chunk sent to {} ({} chars)", chatId, chunk.length());
             } catch (TelegramApiException e) {
                 log.error("Error sending chunk to {}", chatId, e);
@@ -195,6 +574,115 @@ public class TelegramChatService extends TelegramLongPollingBot{
         }
     }
 
+    // /compare [gpt-5,claude-sonnet] вопрос — без списка берутся compare.default-models
+    private void handleCompare(Long chatId, String arg) {
+        if (arg == null || arg.isBlank()) {
+            sendMessage(chatId, "Укажите вопрос: /compare gpt-5,claude-sonnet Что такое монада?");
+            return;
+        }
+
+        String prompt = arg.trim();
+        List<String> requested = compareConfig.getDefaultModels();
+        String[] parts = prompt.split("\\s+", 2);
+        if (parts.length == 2) {
+            List<String> explicit = Arrays.stream(parts[0].split(",")).map(String::trim).filter(k -> !k.isEmpty()).toList();
+            if (!explicit.isEmpty() && aiConfig.getModels().keySet().containsAll(explicit)) {
+                requested = explicit;
+                prompt = parts[1];
+            }
+        }
+        List<String> models = requested.stream()
+                .distinct()
+                .filter(aiConfig.getModels()::containsKey)
+                .limit(compareConfig.getMaxModels())
+                .toList();
+        if (models.isEmpty()) {
+            sendMessage(chatId, "Нет доступных моделей для сравнения.");
+            return;
+        }
+        // каждая модель — отдельный запрос к провайдеру
+        if (rejectWhenOverloaded(chatId) || throttled(chatId, false, models.size())) return;
+
+        sendMessage(chatId, "🔀 Спрашиваю: " + String.join(", ", models.stream().map(this::displayName).toList()));
+        sendTypingAction(chatId);
+        // ответы отправляются из потоков моделей: тему форума передаём явно
+        Integer topic = ConversationContext.currentTopic();
+        try {
+            List<String> late = comparison.run(chatId, models, prompt, new ModelComparison.Listener() {
+                @Override
+                public void onAnswer(String modelKey, String response, long nanos) {
+                    try (ConversationContext.Scope ignored = ConversationContext.inTopic(topic)) {
+                        sendReply(chatId, "**" + displayName(modelKey) + "** · " + formatSeconds(nanos) + "\n\n" + response);
+                    }
+                }
+
+                @Override
+                public void onError(String modelKey, Exception error, long nanos) {
+                    try (ConversationContext.Scope ignored = ConversationContext.inTopic(topic)) {
+                        sendMessage(chatId, "❌ <b>" + displayName(modelKey) + "</b> · " + formatSeconds(nanos)
+                                + ": не удалось получить ответ.");
+                    }
+                }
+            });
+            if (!late.isEmpty()) {
+                sendMessage(chatId, "⏱ Не ответили за " + compareConfig.getDeadlineMs() / 1000 + " с: "
+                        + String.join(", ", late.stream().map(this::displayName).toList()));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private String displayName(String modelKey) {
+        AiModelsConfig.Model model = aiConfig.getModels().get(modelKey);
+        return model != null && model.getDisplayName() != null ? model.getDisplayName() : modelKey;
+    }
+
+    private static String formatSeconds(long nanos) {
+        return String.format(Locale.ROOT, "%.1f с", nanos / 1e9);
+    }
+
+    // Операторская команда: самые долгие из последних трасс
+    private void handleTraces(Long chatId, String arg) {
+        if (!telegramBotConfig.isAdmin(chatId)) {
+            sendMessage(chatId, "Команда доступна только администраторам.");
+            return;
+        }
+
+        int limit = 5;
+        if (arg != null) {
+            try {
+                limit = Math.clamp(Integer.parseInt(arg.trim()), 1, 20);
+            } catch (NumberFormatException e) {
+                sendMessage(chatId, "Укажите число трасс: /traces 10");
+                return;
+            }
+        }
+        sendMessage(chatId, tracer.formatSlowest(limit));
+    }
+
+    private void sendUsage(Long chatId) {
+        UsageTotals totals = usageLedger.chatTotals(chatId);
+        sendMessage(chatId, String.format(Locale.ROOT, """
+                📊 <b>Расход токенов</b>
+                Запросов: %d
+                Входных токенов: %d
+                Выходных токенов: %d
+                Оценка стоимости: $%.4f
+                """, totals.requests(), totals.inputTokens(), totals.outputTokens(), totals.cost()));
+    }
+
+    private void executeTimed(SendMessage msg) throws TelegramApiException {
+        long start = System.nanoTime();
+        boolean success = false;
+        try {
+            tracer.runInSpan("telegram.send", () -> execute(msg));
+            success = true;
+        } finally {
+            botMetrics.recordTelegramSend(System.nanoTime() - start, success);
+        }
+    }
+
     private void sendTypingAction(Long chatId) {
         try {
             SendChatAction chatAction = new SendChatAction();
@@ -235,6 +723,7 @@ public class TelegramChatService extends TelegramLongPollingBot{
     private SendMessage createModelSelectionMenu(Long chatId) {
         SendMessage message = new SendMessage();
         message.setChatId(chatId);
+        message.setMessageThreadId(ConversationContext.currentTopic());
         message.setText("🤖 Выберите AI модель:");
 
         InlineKeyboardMarkup markup = new InlineKeyboardMarkup();
@@ -311,20 +800,21 @@ public class TelegramChatService extends TelegramLongPollingBot{
         return row;
     }
 
-    private void handleModelSelection(CallbackQuery callbackQuery) {
-        String callbackQueryId = callbackQuery.getId();
-        String callData = callbackQuery.getData();
-        Long chatId = callbackQuery.getMessage().getChatId();
-
-        // Подтверждаем callback
+    // Подтверждаем callback
+    private void answerCallback(CallbackQuery callbackQuery) {
         AnswerCallbackQuery answer = new AnswerCallbackQuery();
-        answer.setCallbackQueryId(callbackQueryId);
+        answer.setCallbackQueryId(callbackQuery.getId());
         answer.setShowAlert(false);
         try {
             execute(answer);
         } catch (TelegramApiException e) {
             log.error("Error answering callback query", e);
         }
+    }
+
+    private void handleModelSelection(CallbackQuery callbackQuery) {
+        String callData = callbackQuery.getData();
+        Long chatId = callbackQuery.getMessage().getChatId();
 
         // Обрабатываем выбор модели
         if (callData.startsWith("model:")) {
@@ -0,0 +1,216 @@
+package ru.practicum.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.telegram.telegrambots.meta.api.objects.Update;
+import ru.practicum.config.DedupConfig;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.TreeSet;
+
+// Отсев повторно доставленных апдейтов (рестарт, повтор webhook, сбой поллера) до любой работы.
+// 1) Скользящее окно update_id: точный бит на каждый из последних window id ниже максимума.
+//    На диск периодически сохраняется водяной знак — id, до которого всё уже обработано или сохранено
+//    для повтора (PendingUpdates), а не просто встречено: упавший процесс не теряет принятое.
+//    id старее окна — не повтор, а новая последовательность: Telegram начинает update_id заново после простоя.
+// 2) Bloom-фильтр по (chatId, message_id) и id callback-запросов — ловит тот же апдейт под новым update_id.
+//    Два поколения: заполненное текущее становится предыдущим, старое выбрасывается.
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class UpdateDeduplicator {
+    // Вероятность ложного срабатывания фильтра ~1e-6: потерять настоящее сообщение дороже памяти
+    private static final int BLOOM_HASHES = 20;
+    private static final int BLOOM_BITS_PER_ENTRY = 29;
+
+    private final DedupConfig config;
+
+    private long[] window;
+    private long maxUpdateId = -1;
+    private long persistedMax = -1;
+    // Встречены, но ещё не обработаны: водяной знак не заходит за меньший из них
+    private final TreeSet<Long> inProgress = new TreeSet<>();
+
+    private BloomFilter current;
+    private BloomFilter previous;
+
+    @PostConstruct
+    public void init() {
+        window = new long[(config.getWindow() + 63) >>> 6];
+        current = new BloomFilter(config.getBloomCapacity());
+        previous = new BloomFilter(config.getBloomCapacity());
+
+        Path file = Path.of(config.getWatermarkFile());
+        if (Files.exists(file)) {
+            try {
+                maxUpdateId = Long.parseLong(Files.readString(file, StandardCharsets.UTF_8).trim());
+                persistedMax = maxUpdateId;
+                // что было в окне до рестарта, неизвестно: всё не новее водяного знака считаем обработанным
+                Arrays.fill(window, -1L);
+                log.info("Update watermark loaded: {}", maxUpdateId);
+            } catch (IOException | NumberFormatException e) {
+                log.error("Failed to load update watermark from {}", file, e);
+            }
+        }
+    }
+
+    // true — апдейт встречается впервые и его нужно обработать
+    public synchronized boolean firstSeen(Update update) {
+        if (!markUpdateId(update.getUpdateId())) return false;
+
+        String key = contentKey(update);
+        if (key != null) {
+            if (current.mightContain(key) || previous.mightContain(key)) return false;
+
+            if (current.size() >= config.getBloomCapacity()) {
+                previous = current;
+                current = new BloomFilter(config.getBloomCapacity());
+            }
+            current.add(key);
+        }
+        if (update.getUpdateId() != null) inProgress.add((long) update.getUpdateId());
+        return true;
+    }
+
+    // Апдейт обработан или сохранён для повтора после рестарта: водяной знак может его пройти
+    public synchronized void processed(Integer updateId) {
+        if (updateId != null) inProgress.remove((long) updateId);
+    }
+
+    private boolean markUpdateId(Integer updateId) {
+        if (updateId == null) return true;
+        long id = updateId;
+        int size = window.length << 6;
+
+        if (id > maxUpdateId) {
+            // окно сдвигается вперёд: очищаем биты id, которые в него заходят
+            long from = Math.max(maxUpdateId + 1, id - size + 1);
+            for (long i = from; i <= id; i++) clearBit(i);
+            maxUpdateId = id;
+            setBit(id);
+            return true;
+        }
+        if (id <= maxUpdateId - size) {
+            // повтор так далеко назад Telegram не присылает: последовательность началась заново
+            log.warn("Update id {} is far below the watermark {}: treating it as a new sequence", id, maxUpdateId);
+            Arrays.fill(window, 0L);
+            inProgress.clear();
+            maxUpdateId = id;
+            persistedMax = Long.MIN_VALUE;
+            setBit(id);
+            return true;
+        }
+        if (getBit(id)) return false;
+        setBit(id);
+        return true;
+    }
+
+    private static String contentKey(Update update) {
+        if (update.hasMessage()) {
+            return update.getMessage().getChatId() + ":" + update.getMessage().getMessageId();
+        }
+        if (update.hasCallbackQuery()) {
+            return "cb:" + update.getCallbackQuery().getId();
+        }
+        return null;
+    }
+
+    @Scheduled(fixedDelay = 1000)
+    public void persistWatermark() {
+        long max;
+        synchronized (this) {
+            max = inProgress.isEmpty() ? maxUpdateId : inProgress.first() - 1;
+            if (max == persistedMax) return;
+        }
+
+        Path file = Path.of(config.getWatermarkFile());
+        try {
+            Path dir = file.toAbsolutePath().getParent();
+            Files.createDirectories(dir);
+            Path tmp = Files.createTempFile(dir, file.getFileName().toString(), ".tmp");
+            Files.writeString(tmp, Long.toString(max), StandardCharsets.UTF_8);
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            synchronized (this) {
+                persistedMax = max;
+            }
+        } catch (IOException e) {
+            log.error("Failed to persist update watermark to {}", file, e);
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        persistWatermark();
+    }
+
+    private boolean getBit(long id) {
+        int bit = (int) Math.floorMod(id, (long) window.length << 6);
+        return (window[bit >>> 6] & (1L << bit)) != 0;
+    }
+
+    private void setBit(long id) {
+        int bit = (int) Math.floorMod(id, (long) window.length << 6);
+        window[bit >>> 6] |= 1L << bit;
+    }
+
+    private void clearBit(long id) {
+        int bit = (int) Math.floorMod(id, (long) window.length << 6);
+        window[bit >>> 6] &= ~(1L << bit);
+    }
+
+    // Bloom-фильтр на long[]; k индексов из двух хешей по схеме Кирша–Митценмахера
+    private static final class BloomFilter {
+        private final long[] bits;
+        private final long bitCount;
+        private int size;
+
+        BloomFilter(int capacity) {
+            this.bitCount = Math.max(64, (long) capacity * BLOOM_BITS_PER_ENTRY);
+            this.bits = new long[(int) ((bitCount + 63) >>> 6)];
+        }
+
+        void add(String key) {
+            long h1 = hash(key, 0x9E3779B97F4A7C15L);
+            long h2 = hash(key, 0xC2B2AE3D27D4EB4FL) | 1;
+            for (int i = 0; i < BLOOM_HASHES; i++) {
+                long bit = Math.floorMod(h1 + i * h2, bitCount);
+                bits[(int) (bit >>> 6)] |= 1L << bit;
+            }
+            size++;
+        }
+
+        boolean mightContain(String key) {
+            long h1 = hash(key, 0x9E3779B97F4A7C15L);
+            long h2 = hash(key, 0xC2B2AE3D27D4EB4FL) | 1;
+            for (int i = 0; i < BLOOM_HASHES; i++) {
+                long bit = Math.floorMod(h1 + i * h2, bitCount);
+                if ((bits[(int) (bit >>> 6)] & (1L << bit)) == 0) return false;
+            }
+            return true;
+        }
+
+        int size() {
+            return size;
+        }
+
+        private static long hash(String key, long seed) {
+            long h = seed;
+            for (int i = 0; i < key.length(); i++) {
+                h = (h ^ key.charAt(i)) * 0x100000001b3L;
+            }
+            h ^= h >>> 33;
+            h *= 0xff51afd7ed558ccdL;
+            h ^= h >>> 33;
+            return h;
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package ru.practicum.service;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+// Приём апдейтов из webhook: бот сам раскладывает их по полосам и сразу возвращает управление
+@Component
+@RequiredArgsConstructor
+public class UpdateDispatcher {
+    private final TelegramChatService bot;
+
+    public void dispatch(Update update) {
+        bot.onUpdateReceived(update);
+    }
+}
@@ -0,0 +1,47 @@
+package ru.practicum.state;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.UnaryOperator;
+
+// Состояние в памяти процесса. Значения неизменяемые, поэтому хранятся как есть, без сериализации.
+// Экземпляры с одинаковым sharedName делят данные: так несколько Spring-контекстов в одном процессе
+// изображают кластер с общим хранилищем.
+public class InMemoryStateStore implements StateStore {
+    private static final Map<String, Map<String, Map<String, Object>>> SHARED = new ConcurrentHashMap<>();
+
+    private final Map<String, Map<String, Object>> namespaces;
+
+    public InMemoryStateStore() {
+        this.namespaces = new ConcurrentHashMap<>();
+    }
+
+    public InMemoryStateStore(String sharedName) {
+        this.namespaces = SHARED.computeIfAbsent(sharedName, k -> new ConcurrentHashMap<>());
+    }
+
+    @Override
+    public <V> V get(String namespace, String key, Class<V> type) {
+        return type.cast(namespace(namespace).get(key));
+    }
+
+    @Override
+    public <V> V update(String namespace, String key, Class<V> type, UnaryOperator<V> fn) {
+        return type.cast(namespace(namespace).compute(key, (k, old) -> fn.apply(type.cast(old))));
+    }
+
+    @Override
+    public void remove(String namespace, String key) {
+        namespace(namespace).remove(key);
+    }
+
+    @Override
+    public Set<String> keys(String namespace) {
+        return Set.copyOf(namespace(namespace).keySet());
+    }
+
+    private Map<String, Object> namespace(String namespace) {
+        return namespaces.computeIfAbsent(namespace, k -> new ConcurrentHashMap<>());
+    }
+}
@@ -0,0 +1,132 @@
+package ru.practicum.state;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.TransactionResult;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.api.sync.RedisCommands;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.function.UnaryOperator;
+
+// Состояние в Redis: значение — JSON по ключу {prefix}:{namespace}:{key},
+// множество {prefix}:{namespace}:keys хранит ключи пространства для keys()
+@Slf4j
+public class RedisStateStore implements StateStore, AutoCloseable {
+    // Сколько раз повторяем update, если ключ изменили между WATCH и EXEC
+    private static final int MAX_RETRIES = 16;
+    // WATCH привязан к соединению: под транзакции держим отдельный небольшой пул
+    private static final int TX_CONNECTIONS = 8;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final RedisClient client;
+    private final StatefulRedisConnection<String, String> connection;
+    private final BlockingQueue<StatefulRedisConnection<String, String>> txConnections =
+            new ArrayBlockingQueue<>(TX_CONNECTIONS);
+    private final String prefix;
+
+    public RedisStateStore(String uri, String prefix) {
+        this.client = RedisClient.create(uri);
+        this.connection = client.connect();
+        for (int i = 0; i < TX_CONNECTIONS; i++) {
+            txConnections.add(client.connect());
+        }
+        this.prefix = prefix;
+        log.info("Redis state store connected: {}", uri.replaceAll("//[^@]*@", "//***@"));
+    }
+
+    @Override
+    public <V> V get(String namespace, String key, Class<V> type) {
+        return read(connection.sync().get(dataKey(namespace, key)), type);
+    }
+
+    // Оптимистичная транзакция: WATCH ключа, чтение, MULTI/EXEC; при гонке — повтор
+    @Override
+    public <V> V update(String namespace, String key, Class<V> type, UnaryOperator<V> fn) {
+        String dataKey = dataKey(namespace, key);
+        StatefulRedisConnection<String, String> txConnection = borrow();
+        try {
+            RedisCommands<String, String> redis = txConnection.sync();
+            for (int attempt = 0; attempt < MAX_RETRIES; attempt++) {
+                redis.watch(dataKey);
+                V updated = fn.apply(read(redis.get(dataKey), type));
+                String json = updated != null ? write(updated) : null;
+
+                redis.multi();
+                if (json == null) {
+                    redis.del(dataKey);
+                    redis.srem(keysKey(namespace), key);
+                } else {
+                    redis.set(dataKey, json);
+                    redis.sadd(keysKey(namespace), key);
+                }
+                TransactionResult result = redis.exec();
+                if (!result.wasDiscarded()) return updated;
+            }
+        } catch (RuntimeException e) {
+            // функция или сериализация упали после WATCH: снимаем его перед возвратом соединения в пул
+            txConnection.sync().unwatch();
+            throw e;
+        } finally {
+            txConnections.add(txConnection);
+        }
+        throw new IllegalStateException("Concurrent updates of " + dataKey + " did not settle");
+    }
+
+    @Override
+    public void remove(String namespace, String key) {
+        RedisCommands<String, String> redis = connection.sync();
+        redis.del(dataKey(namespace, key));
+        redis.srem(keysKey(namespace), key);
+    }
+
+    @Override
+    public Set<String> keys(String namespace) {
+        return Set.copyOf(connection.sync().smembers(keysKey(namespace)));
+    }
+
+    @Override
+    public void close() {
+        txConnections.forEach(StatefulRedisConnection::close);
+        connection.close();
+        client.shutdown();
+    }
+
+    private StatefulRedisConnection<String, String> borrow() {
+        try {
+            return txConnections.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a Redis connection", e);
+        }
+    }
+
+    private String dataKey(String namespace, String key) {
+        return prefix + ":" + namespace + ":" + key;
+    }
+
+    private String keysKey(String namespace) {
+        return prefix + ":" + namespace + ":keys";
+    }
+
+    private <V> V read(String json, Class<V> type) {
+        if (json == null) return null;
+        try {
+            return objectMapper.readValue(json, type);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Corrupted state value of type " + type.getSimpleName(), e);
+        }
+    }
+
+    private String write(Object value) {
+        try {
+            return objectMapper.writeValueAsString(value);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Cannot serialize state value " + value.getClass().getSimpleName(), e);
+        }
+    }
+}
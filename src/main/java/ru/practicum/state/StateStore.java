@@ -0,0 +1,20 @@
+package ru.practicum.state;
+
+import java.util.Set;
+import java.util.function.UnaryOperator;
+
+// Хранилище состояния чатов: пространство имён + ключ → неизменяемое значение.
+// Реализации: InMemoryStateStore (по умолчанию) и RedisStateStore (общее для нескольких экземпляров).
+public interface StateStore {
+
+    // null, если значения нет
+    <V> V get(String namespace, String key, Class<V> type);
+
+    // Чтение-изменение-запись одного ключа; функция получает null для отсутствующего значения,
+    // возврат null удаляет ключ. Возвращает новое значение.
+    <V> V update(String namespace, String key, Class<V> type, UnaryOperator<V> fn);
+
+    void remove(String namespace, String key);
+
+    Set<String> keys(String namespace);
+}
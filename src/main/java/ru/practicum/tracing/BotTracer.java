@@ -0,0 +1,119 @@
+package ru.practicum.tracing;
+
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.SpanKind;
+import io.opentelemetry.api.trace.StatusCode;
+import io.opentelemetry.api.trace.Tracer;
+import io.opentelemetry.context.Scope;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+// Спаны этапов обработки апдейта; потомки цепляются к текущему спану потока
+@Component
+@RequiredArgsConstructor
+public class BotTracer {
+    public static final AttributeKey<Long> UPDATE_ID = AttributeKey.longKey("telegram.update_id");
+    public static final AttributeKey<Long> CHAT_ID = AttributeKey.longKey("telegram.chat_id");
+
+    private final Tracer tracer;
+    private final TraceStore traceStore;
+
+    @FunctionalInterface
+    public interface SpanCall<T, E extends Exception> {
+        T call() throws E;
+    }
+
+    @FunctionalInterface
+    public interface SpanRun<E extends Exception> {
+        void run() throws E;
+    }
+
+    // Корневой спан апдейта: по update_id и chatId трассу находят в /traces
+    public <E extends Exception> void inUpdate(Integer updateId, Long chatId, SpanRun<E> body) throws E {
+        Span span = tracer.spanBuilder("telegram.update")
+                .setSpanKind(SpanKind.SERVER)
+                .setAttribute(UPDATE_ID, updateId != null ? updateId.longValue() : -1L)
+                .setAttribute(CHAT_ID, chatId != null ? chatId : -1L)
+                .startSpan();
+        inSpan(span, () -> {
+            body.run();
+            return null;
+        });
+    }
+
+    public <T, E extends Exception> T inSpan(String name, SpanCall<T, E> call) throws E {
+        return inSpan(tracer.spanBuilder(name).startSpan(), call);
+    }
+
+    public <E extends Exception> void runInSpan(String name, SpanRun<E> body) throws E {
+        inSpan(tracer.spanBuilder(name).startSpan(), () -> {
+            body.run();
+            return null;
+        });
+    }
+
+    // Атрибут текущего спана (модель, формат ответа и т.п.)
+    public void tag(String key, String value) {
+        Span.current().setAttribute(key, value);
+    }
+
+    public void tag(String key, long value) {
+        Span.current().setAttribute(key, value);
+    }
+
+    private <T, E extends Exception> T inSpan(Span span, SpanCall<T, E> call) throws E {
+        try (Scope ignored = span.makeCurrent()) {
+            return call.call();
+        } catch (Throwable t) {
+            span.recordException(t);
+            span.setStatus(StatusCode.ERROR);
+            throw t;
+        } finally {
+            span.end();
+        }
+    }
+
+    // Самые долгие из последних трасс: заголовок и дерево спанов с длительностями
+    public String formatSlowest(int limit) {
+        List<TraceStore.Trace> traces = traceStore.slowest(limit);
+        if (traces.isEmpty()) return "Трасс пока нет.";
+
+        StringBuilder sb = new StringBuilder();
+        for (TraceStore.Trace trace : traces) {
+            sb.append("<b>").append(millis(trace.durationNanos())).append(" ms</b> · update ")
+                    .append(trace.attribute(UPDATE_ID)).append(" · chat ").append(trace.attribute(CHAT_ID))
+                    .append("\n<pre>");
+
+            Map<String, List<SpanData>> children = new HashMap<>();
+            for (SpanData span : trace.spans()) {
+                children.computeIfAbsent(span.getParentSpanId(), k -> new ArrayList<>()).add(span);
+            }
+            appendTree(sb, trace.root(), children, 0);
+            sb.append("</pre>\n");
+        }
+        return sb.toString();
+    }
+
+    private void appendTree(StringBuilder sb, SpanData span, Map<String, List<SpanData>> children, int depth) {
+        sb.append("  ".repeat(depth)).append(span.getName()).append(' ')
+                .append(millis(span.getEndEpochNanos() - span.getStartEpochNanos())).append(" ms");
+        if (span.getStatus().getStatusCode() == StatusCode.ERROR) sb.append(" ✗");
+        sb.append('\n');
+
+        List<SpanData> kids = children.get(span.getSpanId());
+        if (kids == null) return;
+        kids.sort(Comparator.comparingLong(SpanData::getStartEpochNanos));
+        for (SpanData child : kids) {
+            appendTree(sb, child, children, depth + 1);
+        }
+    }
+
+    private static long millis(long nanos) {
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+}
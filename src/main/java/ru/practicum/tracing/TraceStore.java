@@ -0,0 +1,120 @@
+package ru.practicum.tracing;
+
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.sdk.trace.export.SpanExporter;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+// Экспортёр в память: собирает спаны по traceId, завершённую трассу кладёт в кольцевой буфер.
+// Потомок, закрывшийся уже после корня (запрос /compare или inline, не успевший к сроку), дописывается
+// к трассе в буфере; потомки, так и не дождавшиеся корня, выбрасываются по возрасту.
+public class TraceStore implements SpanExporter {
+    // Защита от трасс, чей корневой спан так и не закрылся
+    private static final int MAX_PENDING = 10_000;
+    private static final long PENDING_TTL_NANOS = TimeUnit.MINUTES.toNanos(5);
+    private static final long SWEEP_INTERVAL_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    private final Map<String, Pending> pending = new ConcurrentHashMap<>();
+    private final AtomicReferenceArray<Trace> recent;
+    // traceId → ячейка буфера с этой трассой
+    private final Map<String, Integer> slots = new ConcurrentHashMap<>();
+    private final AtomicLong cursor = new AtomicLong();
+    private final AtomicLong lastSweep = new AtomicLong(System.nanoTime());
+
+    private record Pending(long since, List<SpanData> spans) {
+    }
+
+    // Завершённая трасса: корневой спан и все его потомки
+    public record Trace(SpanData root, List<SpanData> spans) {
+        public long durationNanos() {
+            return root.getEndEpochNanos() - root.getStartEpochNanos();
+        }
+
+        public <T> T attribute(AttributeKey<T> key) {
+            return root.getAttributes().get(key);
+        }
+    }
+
+    public TraceStore(int capacity) {
+        this.recent = new AtomicReferenceArray<>(Math.max(1, capacity));
+    }
+
+    @Override
+    public CompletableResultCode export(Collection<SpanData> spans) {
+        sweep();
+        for (SpanData span : spans) {
+            String traceId = span.getTraceId();
+            if (span.getParentSpanContext().isValid()) {
+                if (attachLate(span)) continue;
+                // потомки обычно закрываются раньше корня: копим до его завершения
+                if (pending.size() < MAX_PENDING || pending.containsKey(traceId)) {
+                    pending.computeIfAbsent(traceId, k -> new Pending(System.nanoTime(),
+                            Collections.synchronizedList(new ArrayList<>()))).spans().add(span);
+                }
+                continue;
+            }
+
+            Pending children = pending.remove(traceId);
+            List<SpanData> all = new ArrayList<>(children == null ? 1 : children.spans().size() + 1);
+            all.add(span);
+            if (children != null) all.addAll(children.spans());
+
+            int slot = (int) (cursor.getAndIncrement() % recent.length());
+            Trace evicted = recent.getAndSet(slot, new Trace(span, all));
+            if (evicted != null) slots.remove(evicted.root().getTraceId(), slot);
+            slots.put(traceId, slot);
+        }
+        return CompletableResultCode.ofSuccess();
+    }
+
+    // Корень уже в буфере: трассу заменяем копией с новым потомком
+    private boolean attachLate(SpanData span) {
+        Integer slot = slots.get(span.getTraceId());
+        if (slot == null) return false;
+        while (true) {
+            Trace trace = recent.get(slot);
+            if (trace == null || !trace.root().getTraceId().equals(span.getTraceId())) return false;
+            List<SpanData> all = new ArrayList<>(trace.spans().size() + 1);
+            all.addAll(trace.spans());
+            all.add(span);
+            if (recent.compareAndSet(slot, trace, new Trace(trace.root(), all))) return true;
+        }
+    }
+
+    // Не чаще раза в минуту выбрасывает потомков, чей корень так и не пришёл
+    private void sweep() {
+        long now = System.nanoTime();
+        long last = lastSweep.get();
+        if (now - last < SWEEP_INTERVAL_NANOS || !lastSweep.compareAndSet(last, now)) return;
+        pending.values().removeIf(p -> now - p.since() > PENDING_TTL_NANOS);
+    }
+
+    // Самые долгие из последних завершённых трасс
+    public List<Trace> slowest(int limit) {
+        List<Trace> traces = new ArrayList<>(recent.length());
+        for (int i = 0; i < recent.length(); i++) {
+            Trace trace = recent.get(i);
+            if (trace != null) traces.add(trace);
+        }
+        traces.sort(Comparator.comparingLong(Trace::durationNanos).reversed());
+        return traces.subList(0, Math.min(limit, traces.size()));
+    }
+
+    @Override
+    public CompletableResultCode flush() {
+        return CompletableResultCode.ofSuccess();
+    }
+
+    @Override
+    public CompletableResultCode shutdown() {
+        pending.clear();
+        slots.clear();
+        return CompletableResultCode.ofSuccess();
+    }
+}
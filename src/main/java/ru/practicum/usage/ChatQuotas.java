@@ -0,0 +1,246 @@
+package ru.practicum.usage;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ru.practicum.config.QuotaConfig;
+import ru.practicum.config.SchedulerConfig;
+import ru.practicum.config.UsageConfig;
+import ru.practicum.metrics.BotMetrics;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Квоты чатов: запросы в минуту, токены в сутки, изображения в час.
+// Состояние разбито на полосы по chatId: проверка чата берёт замок только своей полосы.
+// Дневной расход токенов и лимит изображений периодически сбрасываются в TSV,
+// минутное окно запросов не сохраняется — после рестарта оно и так бы истекло.
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ChatQuotas {
+    private static final int STRIPES = 64;
+    private static final long MINUTE_MS = 60_000;
+    private static final long HOUR_MS = 3_600_000;
+
+    private final QuotaConfig quotaConfig;
+    private final SchedulerConfig schedulerConfig;
+    private final UsageConfig usageConfig;
+    private final BotMetrics botMetrics;
+
+    private final Stripe[] stripes = new Stripe[STRIPES];
+    private final AtomicBoolean dirty = new AtomicBoolean();
+    private ZoneId zone;
+
+    @PostConstruct
+    public void load() {
+        for (int i = 0; i < STRIPES; i++) stripes[i] = new Stripe();
+        zone = ZoneId.of(usageConfig.getZone());
+
+        Path file = Path.of(quotaConfig.getFile());
+        if (!Files.exists(file)) return;
+
+        LocalDate today = LocalDate.now(zone);
+        int loaded = 0;
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] f = line.split("\t");
+                if (f.length != 5) continue;
+                Long chatId = Long.parseLong(f[0]);
+                Stripe stripe = stripe(chatId);
+                stripe.lock.lock();
+                try {
+                    ChatState state = stripe.state(chatId);
+                    if (LocalDate.parse(f[1]).equals(today)) {
+                        state.day = today;
+                        state.tokensToday = Long.parseLong(f[2]);
+                    }
+                    state.images.permits = Double.parseDouble(f[3]);
+                    state.images.updatedAt = Long.parseLong(f[4]);
+                } finally {
+                    stripe.lock.unlock();
+                }
+                loaded++;
+            }
+            log.info("Chat quotas loaded from {}: {} chats", file, loaded);
+        } catch (IOException | RuntimeException e) {
+            log.error("Failed to load chat quotas from {}", file, e);
+        }
+    }
+
+    // Проверка перед вызовом провайдера: разрешения списываются, только если прошли все лимиты
+    public QuotaDecision check(Long chatId, boolean image) {
+        return check(chatId, image, 1);
+    }
+
+    // requests — сколько вызовов моделей стоит запрос: /compare списывает по одному на каждую модель
+    public QuotaDecision check(Long chatId, boolean image, int requests) {
+        if (!quotaConfig.isEnabled() || chatId == null) return QuotaDecision.ALLOWED;
+
+        String tier = schedulerConfig.tierOf(chatId);
+        QuotaConfig.Limits limits = quotaConfig.limitsFor(chatId, tier);
+        long now = System.currentTimeMillis();
+
+        QuotaDecision decision;
+        Stripe stripe = stripe(chatId);
+        stripe.lock.lock();
+        try {
+            ChatState state = stripe.state(chatId);
+            decision = decide(state, limits, image, requests, now);
+            if (decision.allowed()) {
+                if (limits.getRequestsPerMinute() > 0) state.requests.permits -= requests;
+                if (image && limits.getImagesPerHour() > 0) state.images.permits -= 1;
+                if (image) dirty.set(true);
+            }
+        } finally {
+            stripe.lock.unlock();
+        }
+
+        if (!decision.allowed()) {
+            botMetrics.recordQuotaThrottled(decision.kind().name().toLowerCase(), tier);
+            log.info("Chat {} throttled by {} quota (tier {}, limit {})", chatId, decision.kind(), tier, decision.limit());
+        }
+        return decision;
+    }
+
+    // Фактический расход токенов из ответа провайдера
+    public void onUsage(Long chatId, TokenUsage usage) {
+        if (chatId == null) return;
+        long tokens = usage.inputTokens() + usage.outputTokens();
+        if (tokens <= 0) return;
+
+        Stripe stripe = stripe(chatId);
+        stripe.lock.lock();
+        try {
+            ChatState state = stripe.state(chatId);
+            rollDay(state);
+            state.tokensToday += tokens;
+        } finally {
+            stripe.lock.unlock();
+        }
+        dirty.set(true);
+    }
+
+    @Scheduled(fixedDelayString = "${quota.flush-interval-ms:60000}", initialDelayString = "${quota.flush-interval-ms:60000}")
+    public void flush() {
+        if (!dirty.getAndSet(false)) return;
+
+        Path file = Path.of(quotaConfig.getFile());
+        try {
+            Path dir = file.toAbsolutePath().getParent();
+            Files.createDirectories(dir);
+            Path tmp = Files.createTempFile(dir, file.getFileName().toString(), ".tmp");
+
+            LocalDate today = LocalDate.now(zone);
+            try (BufferedWriter writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+                for (Stripe stripe : stripes) {
+                    stripe.lock.lock();
+                    try {
+                        for (Map.Entry<Long, ChatState> e : stripe.chats.entrySet()) {
+                            ChatState s = e.getValue();
+                            long tokens = today.equals(s.day) ? s.tokensToday : 0;
+                            writer.write(e.getKey() + "\t" + today + '\t' + tokens + '\t'
+                                    + s.images.permits + '\t' + s.images.updatedAt);
+                            writer.newLine();
+                        }
+                    } finally {
+                        stripe.lock.unlock();
+                    }
+                }
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            log.debug("Chat quotas flushed to {}", file);
+        } catch (IOException e) {
+            dirty.set(true);
+            log.error("Failed to flush chat quotas to {}", file, e);
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        flush();
+    }
+
+    private QuotaDecision decide(ChatState state, QuotaConfig.Limits limits, boolean image, int requests, long now) {
+        rollDay(state);
+        if (limits.getTokensPerDay() > 0 && state.tokensToday >= limits.getTokensPerDay()) {
+            ZonedDateTime midnight = state.day.plusDays(1).atStartOfDay(zone);
+            long retry = Duration.between(ZonedDateTime.now(zone), midnight).toMillis();
+            return new QuotaDecision(QuotaDecision.Kind.TOKENS, limits.getTokensPerDay(), Math.max(retry, 0));
+        }
+        if (image && limits.getImagesPerHour() > 0) {
+            long retry = state.images.retryAfter(limits.getImagesPerHour(), HOUR_MS, 1, now);
+            if (retry > 0) return new QuotaDecision(QuotaDecision.Kind.IMAGES, limits.getImagesPerHour(), retry);
+        }
+        if (limits.getRequestsPerMinute() > 0) {
+            // больше ёмкости ведро не накопит: ждём полного, остаток уходит в долг следующим запросам
+            int needed = Math.min(requests, limits.getRequestsPerMinute());
+            long retry = state.requests.retryAfter(limits.getRequestsPerMinute(), MINUTE_MS, needed, now);
+            if (retry > 0) return new QuotaDecision(QuotaDecision.Kind.REQUESTS, limits.getRequestsPerMinute(), retry);
+        }
+        return QuotaDecision.ALLOWED;
+    }
+
+    private void rollDay(ChatState state) {
+        LocalDate today = LocalDate.now(zone);
+        if (!today.equals(state.day)) {
+            state.day = today;
+            state.tokensToday = 0;
+        }
+    }
+
+    private Stripe stripe(Long chatId) {
+        return stripes[Math.floorMod(Long.hashCode(chatId), STRIPES)];
+    }
+
+    private static final class Stripe {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Map<Long, ChatState> chats = new HashMap<>();
+
+        ChatState state(Long chatId) {
+            return chats.computeIfAbsent(chatId, k -> new ChatState());
+        }
+    }
+
+    private static final class ChatState {
+        private final Bucket requests = new Bucket();
+        private final Bucket images = new Bucket();
+        private LocalDate day;
+        private long tokensToday;
+    }
+
+    // Token bucket: ёмкость — лимит окна, пополняется равномерно за окно
+    private static final class Bucket {
+        private double permits = -1;
+        private long updatedAt;
+
+        // Пополняет ведро; 0 — разрешений хватает, иначе через сколько мс их станет needed
+        long retryAfter(int capacity, long windowMs, int needed, long now) {
+            double rate = (double) capacity / windowMs;
+            if (permits < 0 && updatedAt == 0) {
+                permits = capacity;
+            } else {
+                permits = Math.min(capacity, permits + (now - updatedAt) * rate);
+            }
+            updatedAt = now;
+            return permits >= needed ? 0 : (long) Math.ceil((needed - permits) / rate);
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package ru.practicum.usage;
+
+// Результат проверки квот чата: какой лимит сработал, его значение и когда можно повторить
+public record QuotaDecision(Kind kind, long limit, long retryAfterMs) {
+
+    public enum Kind {
+        ALLOWED, REQUESTS, TOKENS, IMAGES
+    }
+
+    public static final QuotaDecision ALLOWED = new QuotaDecision(Kind.ALLOWED, 0, 0);
+
+    public boolean allowed() {
+        return kind == Kind.ALLOWED;
+    }
+}
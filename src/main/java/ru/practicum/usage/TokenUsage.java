@@ -0,0 +1,35 @@
+package ru.practicum.usage;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+// Токены одного ответа провайдера
+public record TokenUsage(long inputTokens, long outputTokens) {
+
+    public static final TokenUsage EMPTY = new TokenUsage(0, 0);
+
+    // Достаёт usage из ответа любого провайдера:
+    // usage.prompt_tokens/completion_tokens (chat completions), usage.input_tokens/output_tokens
+    // (Anthropic, OpenAI Responses), usageMetadata (Gemini, токены рассуждений считаются выходными)
+    public static TokenUsage from(JsonNode root) {
+        if (root == null) return EMPTY;
+
+        JsonNode usage = root.get("usage");
+        if (usage != null && usage.isObject()) {
+            if (usage.has("prompt_tokens") || usage.has("completion_tokens")) {
+                return new TokenUsage(usage.path("prompt_tokens").asLong(), usage.path("completion_tokens").asLong());
+            }
+            return new TokenUsage(usage.path("input_tokens").asLong(), usage.path("output_tokens").asLong());
+        }
+
+        JsonNode metadata = root.get("usageMetadata");
+        if (metadata != null && metadata.isObject()) {
+            return new TokenUsage(metadata.path("promptTokenCount").asLong(),
+                    metadata.path("candidatesTokenCount").asLong() + metadata.path("thoughtsTokenCount").asLong());
+        }
+        return EMPTY;
+    }
+
+    public boolean isEmpty() {
+        return inputTokens == 0 && outputTokens == 0;
+    }
+}
@@ -0,0 +1,169 @@
+package ru.practicum.usage;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ru.practicum.config.AiModelsConfig;
+import ru.practicum.config.UsageConfig;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+// Учёт токенов и стоимости: агрегаты по чатам, моделям и дням.
+// Счётчики — LongAdder, запись из параллельных ответов не конкурирует за одну ячейку.
+// Агрегаты периодически сбрасываются в компактный TSV и поднимаются из него при старте.
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class UsageLedger {
+    private static final String CHAT = "chat";
+    private static final String MODEL = "model";
+    private static final String DAY = "day";
+
+    // Стоимость храним в миллионных долях доллара, чтобы складывать целыми
+    private static final double MICROS = 1_000_000d;
+
+    private final AiModelsConfig aiConfig;
+    private final UsageConfig usageConfig;
+
+    private final Map<Long, Counters> byChat = new ConcurrentHashMap<>();
+    private final Map<String, Counters> byModel = new ConcurrentHashMap<>();
+    private final Map<LocalDate, Counters> byDay = new ConcurrentHashMap<>();
+
+    private final AtomicBoolean dirty = new AtomicBoolean();
+    private ZoneId zone;
+
+    @PostConstruct
+    public void load() {
+        zone = ZoneId.of(usageConfig.getZone());
+
+        Path file = Path.of(usageConfig.getFile());
+        if (!Files.exists(file)) return;
+
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] f = line.split("\t");
+                if (f.length != 6) continue;
+                Counters counters = switch (f[0]) {
+                    case CHAT -> byChat.computeIfAbsent(Long.parseLong(f[1]), k -> new Counters());
+                    case MODEL -> byModel.computeIfAbsent(f[1], k -> new Counters());
+                    case DAY -> byDay.computeIfAbsent(LocalDate.parse(f[1]), k -> new Counters());
+                    default -> null;
+                };
+                if (counters != null) {
+                    counters.add(Long.parseLong(f[2]), Long.parseLong(f[3]), Long.parseLong(f[4]), Long.parseLong(f[5]));
+                }
+            }
+            log.info("Usage ledger loaded from {}: {} chats, {} models, {} days", file, byChat.size(), byModel.size(), byDay.size());
+        } catch (IOException | RuntimeException e) {
+            log.error("Failed to load usage ledger from {}", file, e);
+        }
+    }
+
+    // Привязанный к чату и модели получатель для клиента
+    public UsageListener listener(Long chatId, String modelKey) {
+        return usage -> record(chatId, modelKey, usage);
+    }
+
+    public void record(Long chatId, String modelKey, TokenUsage usage) {
+        long costMicros = costMicros(modelKey, usage);
+
+        byChat.computeIfAbsent(chatId, k -> new Counters()).add(1, usage.inputTokens(), usage.outputTokens(), costMicros);
+        byModel.computeIfAbsent(modelKey, k -> new Counters()).add(1, usage.inputTokens(), usage.outputTokens(), costMicros);
+        byDay.computeIfAbsent(LocalDate.now(zone), k -> new Counters()).add(1, usage.inputTokens(), usage.outputTokens(), costMicros);
+        dirty.set(true);
+    }
+
+    public UsageTotals chatTotals(Long chatId) {
+        return snapshot(byChat.get(chatId));
+    }
+
+    public UsageTotals modelTotals(String modelKey) {
+        return snapshot(byModel.get(modelKey));
+    }
+
+    public UsageTotals dayTotals(LocalDate day) {
+        return snapshot(byDay.get(day));
+    }
+
+    public UsageTotals todayTotals() {
+        return dayTotals(LocalDate.now(zone));
+    }
+
+    @Scheduled(fixedDelayString = "${usage.flush-interval-ms:60000}", initialDelayString = "${usage.flush-interval-ms:60000}")
+    public void flush() {
+        if (!dirty.getAndSet(false)) return;
+
+        Path file = Path.of(usageConfig.getFile());
+        try {
+            Path dir = file.toAbsolutePath().getParent();
+            Files.createDirectories(dir);
+            Path tmp = Files.createTempFile(dir, file.getFileName().toString(), ".tmp");
+
+            try (BufferedWriter writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+                for (Map.Entry<Long, Counters> e : byChat.entrySet()) write(writer, CHAT, e.getKey(), e.getValue());
+                for (Map.Entry<String, Counters> e : byModel.entrySet()) write(writer, MODEL, e.getKey(), e.getValue());
+                for (Map.Entry<LocalDate, Counters> e : byDay.entrySet()) write(writer, DAY, e.getKey(), e.getValue());
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            log.debug("Usage ledger flushed to {}", file);
+        } catch (IOException e) {
+            // не потеряем изменения: следующий сброс попробует снова
+            dirty.set(true);
+            log.error("Failed to flush usage ledger to {}", file, e);
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        flush();
+    }
+
+    private long costMicros(String modelKey, TokenUsage usage) {
+        AiModelsConfig.Model model = aiConfig.getModels().get(modelKey);
+        if (model == null) return 0;
+        // цена за 1M токенов → доллары за токен × 1M микродолларов: множители сокращаются
+        return Math.round(usage.inputTokens() * model.getInputPrice() + usage.outputTokens() * model.getOutputPrice());
+    }
+
+    private static UsageTotals snapshot(Counters counters) {
+        if (counters == null) return UsageTotals.EMPTY;
+        return new UsageTotals(counters.requests.sum(), counters.inputTokens.sum(), counters.outputTokens.sum(),
+                counters.costMicros.sum() / MICROS);
+    }
+
+    private static void write(BufferedWriter writer, String scope, Object key, Counters c) throws IOException {
+        writer.write(scope + '\t' + key + '\t' + c.requests.sum() + '\t' + c.inputTokens.sum() + '\t'
+                + c.outputTokens.sum() + '\t' + c.costMicros.sum());
+        writer.newLine();
+    }
+
+    private static final class Counters {
+        private final LongAdder requests = new LongAdder();
+        private final LongAdder inputTokens = new LongAdder();
+        private final LongAdder outputTokens = new LongAdder();
+        private final LongAdder costMicros = new LongAdder();
+
+        void add(long requestCount, long input, long output, long cost) {
+            requests.add(requestCount);
+            inputTokens.add(input);
+            outputTokens.add(output);
+            costMicros.add(cost);
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package ru.practicum.usage;
+
+// Получатель токенов из ответов клиента; фабрика привязывает его к чату и модели
+@FunctionalInterface
+public interface UsageListener {
+
+    UsageListener NONE = usage -> { };
+
+    void onUsage(TokenUsage usage);
+
+    default UsageListener andThen(UsageListener next) {
+        return usage -> {
+            onUsage(usage);
+            next.onUsage(usage);
+        };
+    }
+}
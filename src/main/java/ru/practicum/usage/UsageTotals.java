@@ -0,0 +1,11 @@
+package ru.practicum.usage;
+
+// Снимок агрегата: число запросов, токены и оценка стоимости в долларах
+public record UsageTotals(long requests, long inputTokens, long outputTokens, double cost) {
+
+    public static final UsageTotals EMPTY = new UsageTotals(0, 0, 0, 0);
+
+    public long totalTokens() {
+        return inputTokens + outputTokens;
+    }
+}
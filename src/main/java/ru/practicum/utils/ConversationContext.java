@@ -1,73 +1,118 @@
 package ru.practicum.utils;
 
-import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
+import ru.practicum.state.StateStore;
 
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.UnaryOperator;
 
 @Slf4j
 @Component
 public class ConversationContext {
-    private final Map<Long, ChatContext> contexts = new ConcurrentHashMap<>();
+    private static final String NAMESPACE = "conversation";
     private static final int MAX_MESSAGES = 7;
+    private static final String DEFAULT_MODEL = "gpt-5-nano"; //Модель по умолчанию
 
-    @Data
-    public static class ChatContext {
-        private List<Map<String, String>> history = new ArrayList<>();
-        private String currentModel = "gpt-5-nano"; //Модель по умолчанию
+    // Тема форума, в которой идёт обработка: у каждой темы группы свой контекст
+    private static final ThreadLocal<Integer> TOPIC = new ThreadLocal<>();
+
+    private final StateStore store;
+
+    @FunctionalInterface
+    public interface Scope extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    // Неизменяемый снимок чата: каждое изменение пишет в хранилище новый экземпляр
+    public record ChatContext(List<Map<String, String>> history, String currentModel) {
+        static final ChatContext EMPTY = new ChatContext(List.of(), DEFAULT_MODEL);
+
+        ChatContext withHistory(List<Map<String, String>> newHistory) {
+            return new ChatContext(List.copyOf(newHistory), currentModel);
+        }
+
+        ChatContext withModel(String modelKey) {
+            return new ChatContext(history, modelKey);
+        }
+    }
+
+    public ConversationContext(StateStore store) {
+        this.store = store;
+    }
+
+    // Все обращения к контексту внутри scope относятся к теме topicId (null — чат целиком)
+    public static Scope inTopic(Integer topicId) {
+        Integer previous = TOPIC.get();
+        TOPIC.set(topicId);
+        return () -> {
+            if (previous != null) TOPIC.set(previous);
+            else TOPIC.remove();
+        };
+    }
+
+    public static Integer currentTopic() {
+        return TOPIC.get();
     }
 
     public ChatContext get(Long chatId) {
-        return contexts.computeIfAbsent(chatId, k -> new ChatContext());
+        ChatContext ctx = store.get(NAMESPACE, key(chatId), ChatContext.class);
+        return ctx != null ? ctx : ChatContext.EMPTY;
     }
 
     public void addMessage(Long chatId, String role, String content) {
-        ChatContext ctx = get(chatId);
-        ctx.getHistory().add(Map.of("role", role, "content", content));
+        ChatContext ctx = update(chatId, old -> {
+            List<Map<String, String>> history = new ArrayList<>(old.history().size() + 1);
+            history.addAll(old.history());
+            history.add(Map.of("role", role, "content", content));
 
-        // Ограничение на длину контекста
-        if (ctx.getHistory().size() > MAX_MESSAGES) {
-            ctx.getHistory().removeFirst();
-            log.debug("Context trimmed for chat {}, now {} messages", chatId, ctx.getHistory().size());
-        }
+            // Ограничение на длину контекста
+            if (history.size() > MAX_MESSAGES) {
+                history.removeFirst();
+            }
+            return old.withHistory(history);
+        });
 
-        log.debug("Added {} message to chat {}: {}", role, chatId,
+        log.debug("Added {} message to chat {} ({} in context): {}", role, chatId, ctx.history().size(),
                 content.length() > 50 ? content.substring(0, 50) + "..." : content);
     }
 
     public List<Map<String, String>> getHistory(Long chatId) {
         ChatContext ctx = get(chatId);
-        log.debug("Retrieved {} messages for chat {}", ctx.getHistory().size(), chatId);
-        return ctx.getHistory();
+        log.debug("Retrieved {} messages for chat {}", ctx.history().size(), chatId);
+        return ctx.history();
     }
 
     public void clearHistory(Long chatId) {
-        ChatContext ctx = contexts.get(chatId);
-        if (ctx != null) {
-            int size = ctx.getHistory().size();
-            ctx.getHistory().clear();
-            log.info("Cleared history for chat {}, removed {} messages", chatId, size);
-        }
+        int size = get(chatId).history().size();
+        update(chatId, old -> old.withHistory(List.of()));
+        log.info("Cleared history for chat {}, removed {} messages", chatId, size);
     }
 
     public void setCurrentModel(Long chatId, String modelKey) {
-        ChatContext ctx = get(chatId);
-        ctx.setCurrentModel(modelKey);
+        update(chatId, old -> old.withModel(modelKey));
         log.info("Chat {} switched to model: {}", chatId, modelKey);
     }
 
     public String getCurrentModel(Long chatId) {
-        ChatContext ctx = get(chatId);
-        return ctx.getCurrentModel();
+        return get(chatId).currentModel();
     }
 
     public void clearAll(Long chatId) {
-        contexts.remove(chatId);
+        store.remove(NAMESPACE, key(chatId));
         log.info("Cleared all context for chat {}", chatId);
     }
-}
\ No newline at end of file
+
+    private ChatContext update(Long chatId, UnaryOperator<ChatContext> fn) {
+        return store.update(NAMESPACE, key(chatId), ChatContext.class,
+                old -> fn.apply(old != null ? old : ChatContext.EMPTY));
+    }
+
+    private static String key(Long chatId) {
+        Integer topic = TOPIC.get();
+        return topic != null ? chatId + ":" + topic : String.valueOf(chatId);
+    }
+}
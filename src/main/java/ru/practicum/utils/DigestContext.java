@@ -2,58 +2,77 @@ package ru.practicum.utils;
 
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
+import ru.practicum.state.StateStore;
 
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
 
 @Slf4j
 @Component
 public class DigestContext {
-    private final Map<Long, List<String>> topicsByChat = new ConcurrentHashMap<>();
+    private static final String NAMESPACE = "digest";
     private static final int MAX_TOPICS = 3;
 
+    private final StateStore store;
+
+    // Неизменяемый список тем чата
+    public record Topics(List<String> topics) {
+    }
+
+    public DigestContext(StateStore store) {
+        this.store = store;
+    }
+
     // Добавить топик пользователю
     public void addTopic(Long chatId, String topic) {
-        topicsByChat.computeIfAbsent(chatId, k -> new ArrayList<>()).add(topic);
+        store.update(NAMESPACE, key(chatId), Topics.class, old -> {
+            List<String> topics = new ArrayList<>(old != null ? old.topics() : List.of());
+            topics.add(topic);
+            return new Topics(List.copyOf(topics));
+        });
         log.info("Topic '{}' added for user {}", topic, chatId);
     }
 
     // Удалить топик
     public boolean removeTopic(Long chatId, String topic) {
-        List<String> topics = topicsByChat.get(chatId);
-        if (topics != null && topics.remove(topic)) {
+        boolean[] removed = {false};
+        store.update(NAMESPACE, key(chatId), Topics.class, old -> {
+            if (old == null) return null;
+            List<String> topics = new ArrayList<>(old.topics());
+            removed[0] = topics.remove(topic);
+            return topics.isEmpty() ? null : new Topics(List.copyOf(topics));
+        });
+        if (removed[0]) {
             log.info("Topic '{}' removed for user {}", topic, chatId);
-            return true;
         }
-        return false;
+        return removed[0];
     }
 
     // Получить все топики пользователя
     public List<String> getTopics(Long chatId) {
-        return topicsByChat.getOrDefault(chatId, new ArrayList<>());
+        Topics topics = store.get(NAMESPACE, key(chatId), Topics.class);
+        return topics != null ? topics.topics() : List.of();
     }
 
     // Проверить, есть ли топики
     public boolean hasTopics(Long chatId) {
-        List<String> topics = topicsByChat.get(chatId);
-        return topics != null && !topics.isEmpty();
+        return !getTopics(chatId).isEmpty();
     }
 
     // Проверить лимит
     public boolean canAddMoreTopics(Long chatId) {
-        List<String> topics = topicsByChat.get(chatId);
-        return topics == null || topics.size() < MAX_TOPICS;
+        return getTopics(chatId).size() < MAX_TOPICS;
     }
 
     // Очистить все топики пользователя
     public void clearTopics(Long chatId) {
-        topicsByChat.remove(chatId);
+        store.remove(NAMESPACE, key(chatId));
         log.info("Topics cleared for user {}", chatId);
     }
 
     // Получить всех пользователей с дайджестами
     public Set<Long> getAllUsersWithDigest() {
-        return topicsByChat.keySet();
+        return store.keys(NAMESPACE).stream().map(Long::valueOf).collect(Collectors.toSet());
     }
 
     // Форматированный вывод топиков
@@ -69,4 +88,8 @@ public class DigestContext {
         }
         return sb.toString();
     }
-}
\ No newline at end of file
+
+    private static String key(Long chatId) {
+        return String.valueOf(chatId);
+    }
+}
@@ -0,0 +1,19 @@
+package ru.practicum.utils;
+
+import org.telegram.telegrambots.meta.api.objects.MessageEntity;
+
+import java.util.List;
+
+// Готовое к отправке сообщение: простой текст + сущности форматирования (смещения в UTF-16)
+public record FormattedText(String text, List<MessageEntity> entities) {
+
+    public static MessageEntity entity(String type, int offset, int length, String url, String language) {
+        MessageEntity entity = new MessageEntity();
+        entity.setType(type);
+        entity.setOffset(offset);
+        entity.setLength(length);
+        entity.setUrl(url);
+        entity.setLanguage(language);
+        return entity;
+    }
+}
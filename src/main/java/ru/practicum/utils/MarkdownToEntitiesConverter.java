@@ -0,0 +1,327 @@
+package ru.practicum.utils;
+
+import com.vladsch.flexmark.ast.*;
+import com.vladsch.flexmark.ext.tables.TableBlock;
+import com.vladsch.flexmark.ext.tables.TablesExtension;
+import com.vladsch.flexmark.parser.Parser;
+import com.vladsch.flexmark.util.ast.Node;
+import com.vladsch.flexmark.util.ast.NodeVisitor;
+import com.vladsch.flexmark.util.ast.VisitHandler;
+import com.vladsch.flexmark.util.misc.Extension;
+import com.vladsch.flexmark.util.sequence.Escaping;
+import org.springframework.stereotype.Component;
+import org.telegram.telegrambots.meta.api.objects.MessageEntity;
+
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Альтернатива MarkdownToHtmlConverter: Markdown → простой текст + MessageEntity, без HTML и экранирования
+@Component
+public class MarkdownToEntitiesConverter {
+
+    // Буфер рендерера не держим больше этого размера между вызовами
+    private static final int MAX_RETAINED_CAPACITY = 64 * 1024;
+    private static final int POOL_SIZE = 8;
+
+    private static final Pattern HREF = Pattern.compile("href\\s*=\\s*[\"']([^\"']*)[\"']", Pattern.CASE_INSENSITIVE);
+
+    private static final Comparator<MessageEntity> BY_POSITION = Comparator
+            .comparingInt(MessageEntity::getOffset)
+            .thenComparing(Comparator.comparingInt(MessageEntity::getLength).reversed());
+
+    private final Parser parser;
+
+    // Небольшой пул рендереров с буферами: вызывающие — короткоживущие виртуальные потоки,
+    // ThreadLocal умер бы вместе с потоком и ничего бы не переиспользовал. Лишние при всплеске просто выбрасываются
+    private final BlockingQueue<EntityRenderer> renderers = new ArrayBlockingQueue<>(POOL_SIZE);
+
+    public MarkdownToEntitiesConverter() {
+        // Включаем поддержку таблиц
+        List<Extension> exts = List.of(TablesExtension.create());
+        this.parser = Parser.builder().extensions(exts).build();
+    }
+
+    public FormattedText convertMarkdownToEntities(String markdown) {
+        if (markdown == null || markdown.isEmpty()) return new FormattedText("", List.of());
+
+        Node document = parser.parse(markdown);
+        EntityRenderer renderer = renderers.poll();
+        if (renderer == null) renderer = new EntityRenderer();
+        try {
+            return renderer.render(document, markdown.length());
+        } finally {
+            renderers.offer(renderer);
+        }
+    }
+
+    // Открытый сырым HTML-тегом формат: закрывается парным тегом или на границе блока
+    private record OpenHtmlTag(String name, String type, int offset, String url) {
+    }
+
+    private static final class EntityRenderer {
+        private final StringBuilder sb = new StringBuilder(1024);
+        private final List<MessageEntity> entities = new ArrayList<>();
+        private final Deque<OpenHtmlTag> openTags = new ArrayDeque<>();
+        private final NodeVisitor visitor;
+
+        EntityRenderer() {
+            this.visitor = new NodeVisitor(
+                    new VisitHandler<>(Text.class, node -> sb.append(node.getChars().unescape())),
+                    new VisitHandler<>(HtmlEntity.class, node -> sb.append(node.getChars().unescape())),
+                    new VisitHandler<>(SoftLineBreak.class, node -> sb.append(' ')),
+                    new VisitHandler<>(HardLineBreak.class, node -> sb.append('\n')),
+                    new VisitHandler<>(Heading.class, this::visitHeading),
+                    new VisitHandler<>(Paragraph.class, this::visitParagraph),
+                    new VisitHandler<>(StrongEmphasis.class, node -> wrap(node, "bold", null)),
+                    new VisitHandler<>(Emphasis.class, node -> wrap(node, "italic", null)),
+                    new VisitHandler<>(Code.class, this::visitCode),
+                    new VisitHandler<>(FencedCodeBlock.class, this::visitFencedCode),
+                    new VisitHandler<>(IndentedCodeBlock.class, node -> appendPre(node.getContentChars(), null)),
+                    new VisitHandler<>(BulletList.class, this::visitBulletList),
+                    new VisitHandler<>(OrderedList.class, this::visitOrderedList),
+                    new VisitHandler<>(Link.class, node -> wrap(node, "text_link", node.getUrl().unescape())),
+                    new VisitHandler<>(LinkRef.class, this::visitLinkRef),
+                    new VisitHandler<>(AutoLink.class, this::visitAutoLink),
+                    new VisitHandler<>(Image.class, node -> { }),
+                    new VisitHandler<>(ThematicBreak.class, node -> { }),
+                    new VisitHandler<>(HtmlInline.class, node -> applyHtmlTag(node.getChars())),
+                    new VisitHandler<>(HtmlBlock.class, this::visitHtmlBlock),
+                    new VisitHandler<>(TableBlock.class, node -> appendPre(MonospaceTable.format(node), null))
+            );
+        }
+
+        FormattedText render(Node document, int sourceLength) {
+            sb.setLength(0);
+            sb.ensureCapacity(sourceLength);
+            entities.clear();
+            openTags.clear();
+
+            visitor.visit(document);
+            closeOpenTags();
+
+            FormattedText result = trimmed();
+            if (sb.capacity() > MAX_RETAINED_CAPACITY) {
+                sb.setLength(0);
+                sb.trimToSize();
+            }
+            return result;
+        }
+
+        private void visitHeading(Heading node) {
+            wrap(node, "bold", null);
+            closeOpenTags();
+            sb.append("\n\n");
+        }
+
+        private void visitParagraph(Paragraph node) {
+            visitor.visitChildren(node);
+            closeOpenTags();
+
+            if (node.getParent() instanceof ListItem) {
+                // внутри пункта списка абзацы идут через перевод строки
+                if (node.getNext() != null) sb.append('\n');
+            } else {
+                sb.append("\n\n");
+            }
+        }
+
+        // Форматы, открытые сырым HTML внутри, закрываем вместе с родителем: сущности не должны пересекаться
+        private void wrap(Node node, String type, String url) {
+            int start = sb.length();
+            int depth = openTags.size();
+            visitor.visitChildren(node);
+            closeOpenTags(depth);
+            add(type, start, url, null);
+        }
+
+        // Ссылка по определению [text][ref]: адрес берём из ссылок документа, неопределённую выводим как текст
+        private void visitLinkRef(LinkRef node) {
+            Reference reference = node.isDefined() ? node.getReferenceNode(node.getDocument()) : null;
+            if (reference == null) {
+                sb.append(node.getChars().unescape());
+                return;
+            }
+            wrap(node, "text_link", reference.getUrl().unescape());
+        }
+
+        private void visitCode(Code node) {
+            int start = sb.length();
+            sb.append(node.getText());
+            add("code", start, null, null);
+        }
+
+        private void visitFencedCode(FencedCodeBlock node) {
+            String info = node.getInfo().toString().trim();
+            int space = info.indexOf(' ');
+            String language = space == -1 ? info : info.substring(0, space);
+            appendPre(node.getContentChars(), language.isEmpty() ? null : language);
+        }
+
+        // блок кода: хвостовые переводы строк в сущность не включаем
+        private void appendPre(CharSequence code, String language) {
+            int end = code.length();
+            while (end > 0 && code.charAt(end - 1) == '\n') end--;
+
+            int start = sb.length();
+            sb.append(code, 0, end);
+            add("pre", start, null, language);
+            sb.append("\n\n");
+        }
+
+        private void visitBulletList(BulletList list) {
+            for (Node item = list.getFirstChild(); item != null; item = item.getNext()) {
+                sb.append("• ");
+                visitor.visitChildren(item);
+                sb.append('\n');
+            }
+            if (!(list.getParent() instanceof ListItem)) sb.append('\n');
+        }
+
+        private void visitOrderedList(OrderedList list) {
+            int idx = list.getStartNumber();
+            for (Node item = list.getFirstChild(); item != null; item = item.getNext()) {
+                sb.append(idx++).append(". ");
+                visitor.visitChildren(item);
+                sb.append('\n');
+            }
+            if (!(list.getParent() instanceof ListItem)) sb.append('\n');
+        }
+
+        private void visitAutoLink(AutoLink node) {
+            int start = sb.length();
+            sb.append(node.getText().unescape());
+            add("text_link", start, node.getUrl().unescape(), null);
+        }
+
+        // Сырой HTML-блок от модели: поддерживаемые теги → сущности, текст декодируем
+        private void visitHtmlBlock(HtmlBlock node) {
+            CharSequence chars = node.getChars();
+            int len = chars.length();
+            int textStart = 0;
+            int i = 0;
+
+            while (i < len) {
+                char next = i + 1 < len ? chars.charAt(i + 1) : 0;
+                if (chars.charAt(i) == '<' && (next == '/' || next == '!' || Character.isLetter(next))) {
+                    int end = indexOf(chars, '>', i + 1);
+                    if (end == -1) break;
+                    appendDecoded(chars, textStart, i);
+                    applyHtmlTag(chars.subSequence(i, end + 1));
+                    i = end + 1;
+                    textStart = i;
+                } else {
+                    i++;
+                }
+            }
+            appendDecoded(chars, textStart, len);
+            closeOpenTags();
+
+            int end = sb.length();
+            while (end > 0 && Character.isWhitespace(sb.charAt(end - 1))) end--;
+            sb.setLength(end);
+            sb.append("\n\n");
+        }
+
+        private void applyHtmlTag(CharSequence tag) {
+            int len = tag.length();
+            if (len < 3 || tag.charAt(1) == '!' || tag.charAt(1) == '?') return;
+
+            boolean closing = tag.charAt(1) == '/';
+            int nameStart = closing ? 2 : 1;
+            int nameEnd = nameStart;
+            while (nameEnd < len && Character.isLetterOrDigit(tag.charAt(nameEnd))) nameEnd++;
+            String name = tag.subSequence(nameStart, nameEnd).toString().toLowerCase();
+
+            String type = switch (name) {
+                case "b", "strong" -> "bold";
+                case "i", "em" -> "italic";
+                case "u", "ins" -> "underline";
+                case "s", "strike", "del" -> "strikethrough";
+                case "code" -> "code";
+                case "a" -> "text_link";
+                case "br" -> {
+                    sb.append('\n');
+                    yield null;
+                }
+                case "p", "div" -> {
+                    if (closing) sb.append('\n');
+                    yield null;
+                }
+                default -> null;
+            };
+            if (type == null) return;
+
+            if (closing) {
+                OpenHtmlTag top = openTags.peek();
+                if (top != null && top.name().equals(name)) {
+                    openTags.pop();
+                    add(top.type(), top.offset(), top.url(), null);
+                }
+                return;
+            }
+
+            String url = null;
+            if ("text_link".equals(type)) {
+                Matcher m = HREF.matcher(tag);
+                if (!m.find()) return;
+                url = Escaping.unescapeString(m.group(1));
+            }
+            openTags.push(new OpenHtmlTag(name, type, sb.length(), url));
+        }
+
+        // Незакрытые моделью теги закрываем на границе блока
+        private void closeOpenTags() {
+            closeOpenTags(0);
+        }
+
+        private void closeOpenTags(int depth) {
+            while (openTags.size() > depth) {
+                OpenHtmlTag tag = openTags.pop();
+                add(tag.type(), tag.offset(), tag.url(), null);
+            }
+        }
+
+        private void appendDecoded(CharSequence chars, int from, int to) {
+            if (to > from) sb.append(Escaping.unescapeString(chars.subSequence(from, to)));
+        }
+
+        private void add(String type, int start, String url, String language) {
+            int length = sb.length() - start;
+            if (length > 0) {
+                entities.add(FormattedText.entity(type, start, length, url, language));
+            }
+        }
+
+        // Обрезает пробельные символы по краям и сдвигает сущности
+        private FormattedText trimmed() {
+            int start = 0;
+            int end = sb.length();
+            while (start < end && Character.isWhitespace(sb.charAt(start))) start++;
+            while (end > start && Character.isWhitespace(sb.charAt(end - 1))) end--;
+
+            List<MessageEntity> result = new ArrayList<>(entities.size());
+            for (MessageEntity e : entities) {
+                int from = Math.max(e.getOffset(), start);
+                int to = Math.min(e.getOffset() + e.getLength(), end);
+                if (to > from) {
+                    e.setOffset(from - start);
+                    e.setLength(to - from);
+                    result.add(e);
+                }
+            }
+            result.sort(BY_POSITION);
+
+            return new FormattedText(sb.substring(start, end), result);
+        }
+
+        private static int indexOf(CharSequence chars, char c, int from) {
+            for (int i = from; i < chars.length(); i++) {
+                if (chars.charAt(i) == c) return i;
+            }
+            return -1;
+        }
+    }
+}
@@ -1,209 +1,380 @@
 package ru.practicum.utils;
 
+import com.vladsch.flexmark.ast.*;
+import com.vladsch.flexmark.ext.tables.TableBlock;
 import com.vladsch.flexmark.ext.tables.TablesExtension;
-import com.vladsch.flexmark.html.HtmlRenderer;
 import com.vladsch.flexmark.parser.Parser;
+import com.vladsch.flexmark.util.ast.Node;
+import com.vladsch.flexmark.util.ast.NodeVisitor;
+import com.vladsch.flexmark.util.ast.VisitHandler;
 import com.vladsch.flexmark.util.misc.Extension;
-import org.jsoup.Jsoup;
-import org.jsoup.nodes.Document;
-import org.jsoup.nodes.Element;
-import org.jsoup.nodes.Node;
-import org.jsoup.nodes.TextNode;
+import com.vladsch.flexmark.util.sequence.Escaping;
 import org.springframework.stereotype.Component;
 
-import java.util.ArrayList;
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 @Component
 public class MarkdownToHtmlConverter {
 
+    // Таблица экранирования: индекс = символ, значение = HTML-сущность
+    private static final String[] TEXT_ESCAPES = new String[128];
+    private static final String[] ATTR_ESCAPES = new String[128];
+
+    static {
+        TEXT_ESCAPES['&'] = "&amp;";
+        TEXT_ESCAPES['<'] = "&lt;";
+        TEXT_ESCAPES['>'] = "&gt;";
+        System.arraycopy(TEXT_ESCAPES, 0, ATTR_ESCAPES, 0, TEXT_ESCAPES.length);
+        ATTR_ESCAPES['"'] = "&quot;";
+    }
+
+    // Буфер рендерера не держим больше этого размера между вызовами
+    private static final int MAX_RETAINED_CAPACITY = 64 * 1024;
+    private static final int POOL_SIZE = 8;
+
+    private static final Pattern HREF = Pattern.compile("href\\s*=\\s*[\"']([^\"']*)[\"']", Pattern.CASE_INSENSITIVE);
+    private static final Pattern TELEGRAM_ENTITY = Pattern.compile("&(lt|gt|amp|quot|#[0-9]{1,7}|#[xX][0-9a-fA-F]{1,6});");
+
     private final Parser parser;
-    private final HtmlRenderer renderer;
+
+    // Небольшой пул рендереров с буферами: вызывающие — короткоживущие виртуальные потоки,
+    // ThreadLocal умер бы вместе с потоком и ничего бы не переиспользовал. Лишние при всплеске просто выбрасываются
+    private final BlockingQueue<TelegramHtmlRenderer> renderers = new ArrayBlockingQueue<>(POOL_SIZE);
 
     public MarkdownToHtmlConverter() {
         // Включаем поддержку таблиц
         List<Extension> exts = List.of(TablesExtension.create());
         this.parser = Parser.builder().extensions(exts).build();
-        this.renderer = HtmlRenderer.builder().extensions(exts).build();
     }
 
-    // Конвертация Markdown → Telegram HTML
+    // Конвертация Markdown → Telegram HTML: один проход по AST Flexmark без промежуточного HTML
     public String convertMarkdownToTelegramHtml(String markdown) {
         if (markdown == null || markdown.isEmpty()) return "";
 
-        // Рендерим Markdown в HTML (Flexmark с таблицами)
-        String html = renderer.render(parser.parse(markdown));
-        Document doc = Jsoup.parseBodyFragment(html);
-        Element body = doc.body();
-
-        // Конвертируем DOM в Telegram HTML
-        return renderTelegramHtml(body).trim();
+        Node document = parser.parse(markdown);
+        TelegramHtmlRenderer renderer = renderers.poll();
+        if (renderer == null) renderer = new TelegramHtmlRenderer();
+        try {
+            return renderer.render(document, markdown.length());
+        } finally {
+            renderers.offer(renderer);
+        }
     }
 
-    // Рекурсивный рендер DOM дерева в Telegram HTML
-    private String renderTelegramHtml(Node node) {
-        StringBuilder sb = new StringBuilder();
-
-        for (Node child : node.childNodes()) {
-            if (child instanceof TextNode textNode) {
-                sb.append(escapeHtml(textNode.text()));
-            } else if (child instanceof Element el) {
-                String tag = el.tagName();
-
-                switch (tag) {
-                    case "h1": case "h2": case "h3":
-                    case "h4": case "h5": case "h6":
-                        sb.append("<b>").append(renderTelegramHtml(el)).append("</b>\n\n");
-                        break;
-
-                    case "p":
-                        sb.append(renderTelegramHtml(el)).append("\n\n");
-                        break;
-
-                    case "strong": case "b":
-                        sb.append("<b>").append(renderTelegramHtml(el)).append("</b>");
-                        break;
-
-                    case "em": case "i":
-                        sb.append("<i>").append(renderTelegramHtml(el)).append("</i>");
-                        break;
-
-                    case "code":
-                        // inline <code>
-                        sb.append("<code>").append(escapeHtml(el.text())).append("</code>");
-                        break;
-
-                    case "pre":
-                        // блок кода
-                        sb.append("<pre><code>")
-                                .append(escapeHtml(el.text()))
-                                .append("</code></pre>\n\n");
-                        break;
-
-                    case "ul":
-                        for (Element li : el.select("> li")) {
-                            sb.append("• ").append(renderTelegramHtml(li)).append("\n");
-                        }
-                        sb.append("\n");
-                        break;
-
-                    case "ol":
-                        int idx = 1;
-                        for (Element li : el.select("> li")) {
-                            sb.append(idx++).append(". ").append(renderTelegramHtml(li)).append("\n");
-                        }
-                        sb.append("\n");
-                        break;
-
-                    case "li":
-                        sb.append(renderTelegramHtml(el));
-                        break;
-
-                    case "a":
-                        String href = el.attr("href");
-                        sb.append("<a href=\"").append(escapeHtmlAttr(href)).append("\">")
-                                .append(renderTelegramHtml(el))
-                                .append("</a>");
-                        break;
-
-                    case "br":
-                        sb.append("\n");
-                        break;
-
-                    case "table":
-                        // преобразуем таблицу в выровненный моноширинный текст и оборачиваем в <pre>
-                        sb.append("<pre>").append(escapeHtml(parseTableToMonospace(el))).append("</pre>\n\n");
-                        break;
-
-                    default:
-                        sb.append(renderTelegramHtml(el));
-                }
+    // Обходит AST и пишет подмножество HTML, которое понимает Telegram
+    private static final class TelegramHtmlRenderer {
+        private final StringBuilder sb = new StringBuilder(1024);
+        private final Deque<String> openTags = new ArrayDeque<>();
+        private final NodeVisitor visitor;
+
+        TelegramHtmlRenderer() {
+            this.visitor = new NodeVisitor(
+                    new VisitHandler<>(Text.class, this::visitText),
+                    new VisitHandler<>(HtmlEntity.class, node -> escape(node.getChars().unescape(), TEXT_ESCAPES)),
+                    new VisitHandler<>(SoftLineBreak.class, node -> sb.append(' ')),
+                    new VisitHandler<>(HardLineBreak.class, node -> sb.append('\n')),
+                    new VisitHandler<>(Heading.class, this::visitHeading),
+                    new VisitHandler<>(Paragraph.class, this::visitParagraph),
+                    new VisitHandler<>(StrongEmphasis.class, node -> wrap(node, "<b>", "</b>")),
+                    new VisitHandler<>(Emphasis.class, node -> wrap(node, "<i>", "</i>")),
+                    new VisitHandler<>(Code.class, this::visitCode),
+                    new VisitHandler<>(FencedCodeBlock.class, node -> appendCodeBlock(node.getContentChars())),
+                    new VisitHandler<>(IndentedCodeBlock.class, node -> appendCodeBlock(node.getContentChars())),
+                    new VisitHandler<>(BulletList.class, this::visitBulletList),
+                    new VisitHandler<>(OrderedList.class, this::visitOrderedList),
+                    new VisitHandler<>(Link.class, node -> appendLink(node.getUrl().unescape(), node)),
+                    new VisitHandler<>(LinkRef.class, this::visitLinkRef),
+                    new VisitHandler<>(AutoLink.class, this::visitAutoLink),
+                    new VisitHandler<>(Image.class, node -> { }),
+                    new VisitHandler<>(ThematicBreak.class, node -> { }),
+                    new VisitHandler<>(HtmlInline.class, node -> appendHtmlTag(node.getChars())),
+                    new VisitHandler<>(HtmlBlock.class, this::visitHtmlBlock),
+                    new VisitHandler<>(TableBlock.class, this::visitTable)
+            );
+        }
+
+        String render(Node document, int sourceLength) {
+            sb.setLength(0);
+            sb.ensureCapacity(sourceLength + (sourceLength >> 2));
+            openTags.clear();
+
+            visitor.visit(document);
+            closeOpenTags();
+
+            String result = trim();
+            if (sb.capacity() > MAX_RETAINED_CAPACITY) {
+                sb.setLength(0);
+                sb.trimToSize();
             }
+            return result;
         }
 
-        return sb.toString();
-    }
+        private void visitText(Text node) {
+            escape(node.getChars().unescape(), TEXT_ESCAPES);
+        }
+
+        private void visitHeading(Heading node) {
+            sb.append("<b>");
+            visitor.visitChildren(node);
+            closeOpenTags();
+            sb.append("</b>\n\n");
+        }
 
-    // Берёт HTML-таблицу (Jsoup Element) и возвращает строку: выровненный моноширинный текст (строки + ' | ' разделитель).
-    private String parseTableToMonospace(Element table) {
-        List<List<String>> rows = new ArrayList<>();
-        List<Boolean> headerFlags = new ArrayList<>();
-        int columnCount = 0;
-
-        for (Element row : table.select("tr")) {
-            List<String> cols = new ArrayList<>();
-            boolean isHeader = false;
-            for (Element cell : row.select("th, td")) {
-                String txt = cell.text().trim();
-                cols.add(txt);
-                if ("th".equals(cell.tagName())) isHeader = true;
+        private void visitParagraph(Paragraph node) {
+            visitor.visitChildren(node);
+            closeOpenTags();
+
+            if (node.getParent() instanceof ListItem) {
+                // внутри пункта списка абзацы идут через перевод строки
+                if (node.getNext() != null) sb.append('\n');
+            } else {
+                sb.append("\n\n");
             }
-            columnCount = Math.max(columnCount, cols.size());
-            if (!cols.isEmpty()) {
-                rows.add(cols);
-                headerFlags.add(isHeader);
+        }
+
+        // Теги, открытые сырым HTML внутри, закрываем до закрывающего тега родителя: <b>a <i>b</i></b>
+        private void wrap(Node node, String open, String close) {
+            sb.append(open);
+            int depth = openTags.size();
+            visitor.visitChildren(node);
+            closeOpenTags(depth);
+            sb.append(close);
+        }
+
+        private void visitCode(Code node) {
+            sb.append("<code>");
+            escape(node.getText(), TEXT_ESCAPES);
+            sb.append("</code>");
+        }
+
+        // блок кода
+        private void appendCodeBlock(CharSequence code) {
+            sb.append("<pre><code>");
+            escape(code, TEXT_ESCAPES);
+            sb.append("</code></pre>\n\n");
+        }
+
+        private void visitBulletList(BulletList list) {
+            for (Node item = list.getFirstChild(); item != null; item = item.getNext()) {
+                sb.append("• ");
+                visitor.visitChildren(item);
+                sb.append('\n');
             }
+            if (!(list.getParent() instanceof ListItem)) sb.append('\n');
         }
 
-        // вычисляем максимальную ширину по колонкам
-        int[] widths = new int[columnCount];
-        for (List<String> row : rows) {
-            for (int i = 0; i < row.size(); i++) {
-                widths[i] = Math.max(widths[i], row.get(i).length());
+        private void visitOrderedList(OrderedList list) {
+            int idx = list.getStartNumber();
+            for (Node item = list.getFirstChild(); item != null; item = item.getNext()) {
+                sb.append(idx++).append(". ");
+                visitor.visitChildren(item);
+                sb.append('\n');
             }
+            if (!(list.getParent() instanceof ListItem)) sb.append('\n');
+        }
+
+        private void visitAutoLink(AutoLink node) {
+            String url = node.getUrl().unescape();
+            sb.append("<a href=\"");
+            escape(url, ATTR_ESCAPES);
+            sb.append("\">");
+            escape(node.getText().unescape(), TEXT_ESCAPES);
+            sb.append("</a>");
+        }
+
+        private void appendLink(String href, Node content) {
+            sb.append("<a href=\"");
+            escape(href, ATTR_ESCAPES);
+            sb.append("\">");
+            int depth = openTags.size();
+            visitor.visitChildren(content);
+            closeOpenTags(depth);
+            sb.append("</a>");
         }
 
-        StringBuilder sb = new StringBuilder();
-        for (int r = 0; r < rows.size(); r++) {
-            List<String> row = rows.get(r);
-            for (int c = 0; c < columnCount; c++) {
-                String cell = c < row.size() ? row.get(c) : "";
-                sb.append(padRight(cell, widths[c]));
-                if (c < columnCount - 1) sb.append(" | ");
+        // Ссылка по определению [text][ref]: адрес берём из ссылок документа, неопределённую выводим как текст
+        private void visitLinkRef(LinkRef node) {
+            Reference reference = node.isDefined() ? node.getReferenceNode(node.getDocument()) : null;
+            if (reference == null) {
+                escape(node.getChars().unescape(), TEXT_ESCAPES);
+                return;
             }
-            sb.append("\n");
+            appendLink(reference.getUrl().unescape(), node);
+        }
 
-            // если это заголовок — добавим разделитель строкой дефисов
-            if (headerFlags.get(r)) {
-                for (int c = 0; c < columnCount; c++) {
-                    sb.append(repeatChar('-', widths[c]));
-                    if (c < columnCount - 1) sb.append("-+-");
+        // Сырой HTML-блок от модели: переносим поддерживаемые теги, остальное отдаём как текст
+        private void visitHtmlBlock(HtmlBlock node) {
+            CharSequence chars = node.getChars();
+            int len = chars.length();
+            int textStart = 0;
+            int i = 0;
+
+            while (i < len) {
+                if (chars.charAt(i) == '<' && i + 1 < len && isTagStart(chars.charAt(i + 1))) {
+                    int end = indexOf(chars, '>', i + 1);
+                    if (end == -1) break;
+                    appendRawHtmlText(chars, textStart, i);
+                    appendHtmlTag(chars.subSequence(i, end + 1));
+                    i = end + 1;
+                    textStart = i;
+                } else {
+                    i++;
                 }
-                sb.append("\n");
             }
+            appendRawHtmlText(chars, textStart, len);
+            closeOpenTags();
+
+            trimTrailingWhitespace();
+            sb.append("\n\n");
         }
 
-        return sb.toString();
-    }
+        // Переводит одиночный HTML-тег в разрешённый Telegram, неизвестные теги отбрасывает
+        private void appendHtmlTag(CharSequence tag) {
+            int len = tag.length();
+            if (len < 3 || tag.charAt(1) == '!' || tag.charAt(1) == '?') return;
+
+            boolean closing = tag.charAt(1) == '/';
+            int nameStart = closing ? 2 : 1;
+            int nameEnd = nameStart;
+            while (nameEnd < len && Character.isLetterOrDigit(tag.charAt(nameEnd))) nameEnd++;
+            String name = tag.subSequence(nameStart, nameEnd).toString().toLowerCase();
+
+            String tgTag = switch (name) {
+                case "b", "strong" -> "b";
+                case "i", "em" -> "i";
+                case "u", "ins" -> "u";
+                case "s", "strike", "del" -> "s";
+                case "code" -> "code";
+                case "a" -> "a";
+                case "br" -> {
+                    sb.append('\n');
+                    yield null;
+                }
+                case "p", "div" -> {
+                    if (closing) sb.append('\n');
+                    yield null;
+                }
+                default -> null;
+            };
+            if (tgTag == null) return;
+
+            if (closing) {
+                // закрываем только то, что сами открыли
+                if (tgTag.equals(openTags.peek())) {
+                    openTags.pop();
+                    sb.append("</").append(tgTag).append('>');
+                }
+                return;
+            }
 
-    private String padRight(String s, int width) {
-        if (s == null) s = "";
-        if (s.length() >= width) return s;
-        StringBuilder sb = new StringBuilder(s);
-        while (sb.length() < width) sb.append(' ');
-        return sb.toString();
-    }
+            if ("a".equals(tgTag)) {
+                Matcher m = HREF.matcher(tag);
+                if (!m.find()) return;
+                sb.append("<a href=\"");
+                escape(m.group(1), ATTR_ESCAPES);
+                sb.append("\">");
+            } else {
+                sb.append('<').append(tgTag).append('>');
+            }
+            openTags.push(tgTag);
+        }
 
-    private String repeatChar(char ch, int count) {
-        if (count <= 0) return "";
-        StringBuilder sb = new StringBuilder();
-        for (int i = 0; i < count; i++) sb.append(ch);
-        return sb.toString();
-    }
+        // Незакрытые моделью теги закрываем на границе блока, иначе Telegram отклонит сообщение
+        private void closeOpenTags() {
+            closeOpenTags(0);
+        }
 
-    // Экранирование текста для HTML (для безопасной вставки в <pre> / <code> / <a>)
-    private String escapeHtml(String s) {
-        if (s == null) return "";
-        return s.replace("&", "&amp;")
-                .replace("<", "&lt;")
-                .replace(">", "&gt;");
-    }
+        private void closeOpenTags(int depth) {
+            while (openTags.size() > depth) {
+                sb.append("</").append(openTags.pop()).append('>');
+            }
+        }
+
+        // Текст из сырого HTML: сущности (&amp; и т.п.) оставляем, одиночные & и > экранируем
+        // Telegram понимает только &lt; &gt; &amp; &quot; и числовые сущности: прочие именованные (&nbsp;, &mdash;)
+        // декодируем в символ, нераспознанные выводим как текст
+        private void appendRawHtmlText(CharSequence chars, int from, int to) {
+            for (int i = from; i < to; i++) {
+                char c = chars.charAt(i);
+                int end = c == '&' ? entityEnd(chars, i, to) : -1;
+                if (end != -1) {
+                    String entity = chars.subSequence(i, end + 1).toString();
+                    if (TELEGRAM_ENTITY.matcher(entity).matches()) {
+                        sb.append(entity);
+                    } else {
+                        // неизвестная сущность декодируется в саму себя и экранируется как текст
+                        escape(Escaping.unescapeString(entity), TEXT_ESCAPES);
+                    }
+                    i = end;
+                } else if (c < 128 && TEXT_ESCAPES[c] != null) {
+                    sb.append(TEXT_ESCAPES[c]);
+                } else {
+                    sb.append(c);
+                }
+            }
+        }
 
-    private String escapeHtmlAttr(String s) {
-        if (s == null) return "";
-        return s.replace("&", "&amp;")
-                .replace("\"", "&quot;")
-                .replace("<", "&lt;")
-                .replace(">", "&gt;");
+        private void visitTable(TableBlock table) {
+            // преобразуем таблицу в выровненный моноширинный текст и оборачиваем в <pre>
+            sb.append("<pre>");
+            escape(MonospaceTable.format(table), TEXT_ESCAPES);
+            sb.append("</pre>\n\n");
+        }
+
+        // Экранирование за один проход по таблице замен
+        private void escape(CharSequence s, String[] table) {
+            if (s == null) return;
+            int len = s.length();
+            int start = 0;
+            for (int i = 0; i < len; i++) {
+                char c = s.charAt(i);
+                if (c < 128 && table[c] != null) {
+                    if (i > start) sb.append(s, start, i);
+                    sb.append(table[c]);
+                    start = i + 1;
+                }
+            }
+            if (start < len) sb.append(s, start, len);
+        }
+
+        private void trimTrailingWhitespace() {
+            int end = sb.length();
+            while (end > 0 && Character.isWhitespace(sb.charAt(end - 1))) end--;
+            sb.setLength(end);
+        }
+
+        private String trim() {
+            int start = 0;
+            int end = sb.length();
+            while (start < end && Character.isWhitespace(sb.charAt(start))) start++;
+            while (end > start && Character.isWhitespace(sb.charAt(end - 1))) end--;
+            return sb.substring(start, end);
+        }
+
+        private static boolean isTagStart(char c) {
+            return c == '/' || c == '!' || Character.isLetter(c);
+        }
+
+        // Позиция ';' сущности, начинающейся с '&', или -1
+        private static int entityEnd(CharSequence chars, int ampPos, int limit) {
+            int i = ampPos + 1;
+            if (i < limit && chars.charAt(i) == '#') i++;
+            int nameStart = i;
+            while (i < limit && i - nameStart < 32 && Character.isLetterOrDigit(chars.charAt(i))) i++;
+            return i > nameStart && i < limit && chars.charAt(i) == ';' ? i : -1;
+        }
+
+        private static int indexOf(CharSequence chars, char c, int from) {
+            for (int i = from; i < chars.length(); i++) {
+                if (chars.charAt(i) == c) return i;
+            }
+            return -1;
+        }
     }
 }
@@ -1,6 +1,7 @@
 package ru.practicum.utils;
 
 import org.springframework.stereotype.Component;
+import org.telegram.telegrambots.meta.api.objects.MessageEntity;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -8,49 +9,261 @@ import java.util.List;
 @Component
 public class MessageSplitter {
 
-    // Разбивает текст на чанки для Telegram, учитывая блоки кода <pre><code>...</code></pre>.
+    // Типы точек разреза в порядке предпочтения
+    private static final int PARAGRAPH = 0;
+    private static final int LINE = 1;
+    private static final int SPACE = 2;
+
+    // Неизменяемый стек открытых тегов: снимок состояния — просто ссылка на вершину
+    private record OpenTag(String name, String openTag, OpenTag parent) {
+    }
+
+    // Разбивает Telegram HTML на чанки за один проход.
+    // Длина считается как в Telegram: UTF-16 символы текста после разбора тегов и сущностей.
+    // Режем по абзацам/строкам/пробелам, никогда внутри тега или сущности; открытые теги
+    // закрываются в конце чанка и открываются заново в начале следующего.
     public List<String> splitMessageForTelegram(String text, int maxLength) {
         List<String> chunks = new ArrayList<>();
         if (text == null || text.isEmpty()) return chunks;
 
-        int pos = 0;
-        while (pos < text.length()) {
-            int nextPre = text.indexOf("<pre><code>", pos);
+        int len = text.length();
+        int minFill = maxLength / 2;
 
-            if (nextPre == -1 || nextPre >= pos + maxLength) {
-                // В чанке нет кода, обычный текст
-                int end = Math.min(pos + maxLength, text.length());
-                chunks.add(text.substring(pos, end));
-                pos = end;
-            } else {
-                // Есть блок кода
-                if (nextPre > pos) {
-                    // Добавляем текст перед кодом
-                    chunks.add(text.substring(pos, nextPre));
+        int chunkStart = 0;
+        int chunkVisible = 0;
+        OpenTag chunkTags = null;
+
+        int visible = 0;
+        OpenTag tags = null;
+        char prevChar = 0;
+
+        // последняя точка разреза каждого типа: позиция в исходнике, видимая длина до неё, стек тегов
+        int[] breakPos = {-1, -1, -1};
+        int[] breakVisible = new int[3];
+        OpenTag[] breakTags = new OpenTag[3];
+
+        int i = 0;
+        while (i < len) {
+            char c = text.charAt(i);
+
+            if (c == '<') {
+                int end = text.indexOf('>', i);
+                if (end != -1) {
+                    tags = applyTag(text, i, end, tags);
+                    i = end + 1;
+                    continue;
                 }
+            }
+
+            int tokenEnd;
+            int tokenVisible;
+            if (c == '&' && (tokenEnd = entityEnd(text, i)) != -1) {
+                tokenVisible = entityLength(text, i, tokenEnd);
+            } else if (Character.isHighSurrogate(c) && i + 1 < len && Character.isLowSurrogate(text.charAt(i + 1))) {
+                tokenEnd = i + 2;
+                tokenVisible = 2;
+            } else {
+                tokenEnd = i + 1;
+                tokenVisible = 1;
+            }
+
+            while (visible - chunkVisible + tokenVisible > maxLength) {
+                int kind = pickBreak(breakPos, breakVisible, chunkStart, chunkVisible, minFill);
+                int cutPos = kind >= 0 ? breakPos[kind] : i;
+                int cutVisible = kind >= 0 ? breakVisible[kind] : visible;
+                OpenTag cutTags = kind >= 0 ? breakTags[kind] : tags;
+
+                emit(chunks, text, chunkStart, cutPos, chunkTags, cutTags);
+                chunkStart = cutPos;
+                chunkVisible = cutVisible;
+                chunkTags = cutTags;
+            }
+
+            visible += tokenVisible;
+            i = tokenEnd;
 
-                int codeStart = nextPre + "<pre><code>".length();
-                int codeEnd = text.indexOf("</code></pre>", codeStart);
-                if (codeEnd == -1) codeEnd = text.length();
-
-                String codeBlock = text.substring(codeStart, codeEnd);
-
-                // Разбиваем длинный код на чанки, каждый с открытием и закрытием тегов
-                int codePos = 0;
-                int safeLength = maxLength - "<pre><code></code></pre>".length();
-                while (codePos < codeBlock.length()) {
-                    int len = Math.min(safeLength, codeBlock.length() - codePos);
-                    String chunk = "<pre><code>" +
-                            codeBlock.substring(codePos, codePos + len) +
-                            "</code></pre>";
-                    chunks.add(chunk);
-                    codePos += len;
+            if (c == '\n') {
+                int kind = prevChar == '\n' ? PARAGRAPH : LINE;
+                breakPos[kind] = i;
+                breakVisible[kind] = visible;
+                breakTags[kind] = tags;
+            } else if (c == ' ') {
+                breakPos[SPACE] = i;
+                breakVisible[SPACE] = visible;
+                breakTags[SPACE] = tags;
+            }
+            prevChar = c;
+        }
+
+        emit(chunks, text, chunkStart, len, chunkTags, tags);
+        return chunks;
+    }
+
+    // Разбивает текст с MessageEntity: длина — это просто длина строки в UTF-16,
+    // сущности на границе чанка обрезаются и сдвигаются, ничего не экранируется.
+    public List<FormattedText> splitFormattedText(FormattedText message, int maxLength) {
+        List<FormattedText> chunks = new ArrayList<>();
+        String text = message.text();
+        if (text == null || text.isEmpty()) return chunks;
+
+        List<MessageEntity> entities = message.entities();
+        List<MessageEntity> carried = new ArrayList<>();
+        int nextEntity = 0;
+
+        int len = text.length();
+        int start = 0;
+        while (start < len) {
+            int end;
+            int nextStart;
+            if (len - start <= maxLength) {
+                end = len;
+                nextStart = len;
+            } else {
+                int limit = start + maxLength;
+                int minEnd = start + maxLength / 2;
+                int cut;
+                if ((cut = lastIndexOf(text, "\n\n", limit - 2, minEnd)) != -1) {
+                    end = cut;
+                    nextStart = cut + 2;
+                } else if ((cut = lastIndexOf(text, "\n", limit - 1, minEnd)) != -1) {
+                    end = cut;
+                    nextStart = cut + 1;
+                } else if ((cut = lastIndexOf(text, " ", limit - 1, start + 1)) != -1) {
+                    end = cut;
+                    nextStart = cut + 1;
+                } else {
+                    // жёсткий разрез, но не посреди суррогатной пары
+                    end = Character.isLowSurrogate(text.charAt(limit)) ? limit - 1 : limit;
+                    nextStart = end;
                 }
+            }
+
+            // сущности отсортированы по смещению: берём перенесённые из прошлого чанка и начинающиеся в этом
+            List<MessageEntity> chunkEntities = new ArrayList<>();
+            List<MessageEntity> stillOpen = new ArrayList<>();
+            for (MessageEntity e : carried) {
+                clipEntity(e, start, end, chunkEntities, stillOpen);
+            }
+            while (nextEntity < entities.size() && entities.get(nextEntity).getOffset() < end) {
+                clipEntity(entities.get(nextEntity++), start, end, chunkEntities, stillOpen);
+            }
+            carried = stillOpen;
 
-                pos = codeEnd + "</code></pre>".length();
+            if (end > start) {
+                chunks.add(new FormattedText(text.substring(start, end), chunkEntities));
             }
+            start = nextStart;
         }
 
         return chunks;
     }
+
+    private void clipEntity(MessageEntity e, int start, int end, List<MessageEntity> chunkEntities,
+                            List<MessageEntity> stillOpen) {
+        int entityEnd = e.getOffset() + e.getLength();
+        int from = Math.max(e.getOffset(), start);
+        int to = Math.min(entityEnd, end);
+        if (to > from) {
+            chunkEntities.add(FormattedText.entity(e.getType(), from - start, to - from, e.getUrl(), e.getLanguage()));
+        }
+        if (entityEnd > end) {
+            stillOpen.add(e);
+        }
+    }
+
+    // lastIndexOf, который не уходит левее min: поиск разреза остаётся в пределах чанка
+    private int lastIndexOf(String text, String separator, int from, int min) {
+        for (int i = from; i >= min; i--) {
+            if (text.startsWith(separator, i)) return i;
+        }
+        return -1;
+    }
+
+    // Абзац или строка, если чанк заполнен хотя бы наполовину; иначе самая дальняя из доступных точек
+    private int pickBreak(int[] breakPos, int[] breakVisible, int chunkStart, int chunkVisible, int minFill) {
+        for (int kind = PARAGRAPH; kind <= LINE; kind++) {
+            if (breakPos[kind] > chunkStart && breakVisible[kind] - chunkVisible >= minFill) return kind;
+        }
+
+        int best = -1;
+        for (int kind = PARAGRAPH; kind <= SPACE; kind++) {
+            if (breakPos[kind] > chunkStart && (best == -1 || breakPos[kind] > breakPos[best])) best = kind;
+        }
+        return best;
+    }
+
+    private OpenTag applyTag(String text, int start, int end, OpenTag tags) {
+        boolean closing = start + 1 < end && text.charAt(start + 1) == '/';
+        int nameStart = closing ? start + 2 : start + 1;
+        int nameEnd = nameStart;
+        while (nameEnd < end && Character.isLetterOrDigit(text.charAt(nameEnd))) nameEnd++;
+        if (nameEnd == nameStart) return tags;
+
+        String name = text.substring(nameStart, nameEnd).toLowerCase();
+        if (!closing) {
+            return new OpenTag(name, text.substring(start, end + 1), tags);
+        }
+
+        // закрывающий тег снимает ближайший одноимённый открытый
+        for (OpenTag t = tags; t != null; t = t.parent()) {
+            if (t.name().equals(name)) return t.parent();
+        }
+        return tags;
+    }
+
+    private void emit(List<String> chunks, String text, int from, int to, OpenTag openAtStart, OpenTag openAtEnd) {
+        while (from < to && text.charAt(from) == '\n') from++;
+        while (to > from && text.charAt(to - 1) == '\n') to--;
+        if (!hasVisibleText(text, from, to)) return;
+
+        StringBuilder sb = new StringBuilder(to - from + 64);
+        appendOpenTags(sb, openAtStart);
+        sb.append(text, from, to);
+        for (OpenTag t = openAtEnd; t != null; t = t.parent()) {
+            sb.append("</").append(t.name()).append('>');
+        }
+        chunks.add(sb.toString());
+    }
+
+    private void appendOpenTags(StringBuilder sb, OpenTag tag) {
+        if (tag == null) return;
+        appendOpenTags(sb, tag.parent());
+        sb.append(tag.openTag());
+    }
+
+    private boolean hasVisibleText(String text, int from, int to) {
+        boolean inTag = false;
+        for (int i = from; i < to; i++) {
+            char c = text.charAt(i);
+            if (c == '<') inTag = true;
+            else if (c == '>' && inTag) inTag = false;
+            else if (!inTag && !Character.isWhitespace(c)) return true;
+        }
+        return false;
+    }
+
+    // Конец HTML-сущности (&amp; &#123; &#x1F600;) или -1, если это одиночный &
+    private int entityEnd(String text, int ampPos) {
+        int limit = Math.min(text.length(), ampPos + 34);
+        int i = ampPos + 1;
+        if (i < limit && text.charAt(i) == '#') i++;
+        int nameStart = i;
+        while (i < limit && Character.isLetterOrDigit(text.charAt(i))) i++;
+        return i > nameStart && i < limit && text.charAt(i) == ';' ? i + 1 : -1;
+    }
+
+    // Длина сущности в UTF-16: символы вне BMP занимают две единицы
+    private int entityLength(String text, int start, int end) {
+        if (text.charAt(start + 1) != '#') return 1;
+
+        try {
+            boolean hex = text.charAt(start + 2) == 'x' || text.charAt(start + 2) == 'X';
+            int codePoint = hex
+                    ? Integer.parseInt(text, start + 3, end - 1, 16)
+                    : Integer.parseInt(text, start + 2, end - 1, 10);
+            return Character.charCount(codePoint);
+        } catch (NumberFormatException e) {
+            return 1;
+        }
+    }
 }
@@ -0,0 +1,80 @@
+package ru.practicum.utils;
+
+import com.vladsch.flexmark.ext.tables.*;
+import com.vladsch.flexmark.util.ast.Node;
+import com.vladsch.flexmark.util.ast.TextCollectingVisitor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Markdown-таблица → выровненный моноширинный текст (Telegram не умеет таблицы)
+final class MonospaceTable {
+
+    private MonospaceTable() {
+    }
+
+    // Возвращает строки таблицы, разделённые ' | ', заголовок подчёркнут дефисами
+    static String format(TableBlock table) {
+        List<List<String>> rows = new ArrayList<>();
+        List<Boolean> headerFlags = new ArrayList<>();
+        TextCollectingVisitor textCollector = new TextCollectingVisitor();
+        int columnCount = 0;
+
+        for (Node section = table.getFirstChild(); section != null; section = section.getNext()) {
+            if (!(section instanceof TableHead) && !(section instanceof TableBody)) continue;
+            boolean isHeader = section instanceof TableHead;
+
+            for (Node row = section.getFirstChild(); row != null; row = row.getNext()) {
+                if (!(row instanceof TableRow)) continue;
+                List<String> cols = new ArrayList<>();
+                for (Node cell = row.getFirstChild(); cell != null; cell = cell.getNext()) {
+                    if (cell instanceof TableCell) {
+                        cols.add(textCollector.collectAndGetText(cell).trim());
+                    }
+                }
+                if (!cols.isEmpty()) {
+                    rows.add(cols);
+                    headerFlags.add(isHeader);
+                    columnCount = Math.max(columnCount, cols.size());
+                }
+            }
+        }
+
+        // вычисляем максимальную ширину по колонкам
+        int[] widths = new int[columnCount];
+        for (List<String> row : rows) {
+            for (int i = 0; i < row.size(); i++) {
+                widths[i] = Math.max(widths[i], row.get(i).length());
+            }
+        }
+
+        StringBuilder sb = new StringBuilder();
+        for (int r = 0; r < rows.size(); r++) {
+            List<String> row = rows.get(r);
+            for (int c = 0; c < columnCount; c++) {
+                String cell = c < row.size() ? row.get(c) : "";
+                sb.append(cell);
+                if (c < columnCount - 1) {
+                    repeat(sb, ' ', widths[c] - cell.length());
+                    sb.append(" | ");
+                }
+            }
+            sb.append('\n');
+
+            // если это заголовок — добавим разделитель строкой дефисов
+            if (headerFlags.get(r)) {
+                for (int c = 0; c < columnCount; c++) {
+                    repeat(sb, '-', widths[c]);
+                    if (c < columnCount - 1) sb.append("-+-");
+                }
+                sb.append('\n');
+            }
+        }
+
+        return sb.toString();
+    }
+
+    private static void repeat(StringBuilder sb, char ch, int count) {
+        for (int i = 0; i < count; i++) sb.append(ch);
+    }
+}
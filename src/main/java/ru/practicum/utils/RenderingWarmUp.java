@@ -0,0 +1,63 @@
+package ru.practicum.utils;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import ru.practicum.config.StartupConfig;
+
+// Прогрев горячего пути ответа: Markdown → HTML/entities и нарезка на чанки на типичных ответах.
+// После него первые пользователи получают ответ от скомпилированного JIT кода, а не от интерпретатора.
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class RenderingWarmUp {
+    private static final int TG_LIMIT = 4096;
+
+    private static final String SAMPLE = """
+            # Заголовок ответа
+
+            Обычный абзац с **жирным**, *курсивом*, `кодом` и [ссылкой](https://example.com?a=1&b=2).
+            Ещё строка с символами < > & и эмодзи 🚀, чтобы пройти экранирование и суррогатные пары.
+
+            ## Список
+
+            - первый пункт
+            - второй пункт с **выделением**
+              1. вложенный
+              2. нумерованный
+
+            ```java
+            public static void main(String[] args) {
+                System.out.println("<hello & world>");
+            }
+            ```
+
+            | Модель | Задержка | Цена |
+            |--------|----------|------|
+            | groq   | 150 мс   | 0.11 |
+            | gemini | 800 мс   | 0.30 |
+
+            <b>Сырой HTML</b> от модели и <i>незакрытый тег
+            """;
+
+    private final MarkdownToHtmlConverter htmlConverter;
+    private final MarkdownToEntitiesConverter entitiesConverter;
+    private final MessageSplitter messageSplitter;
+    private final StartupConfig startupConfig;
+
+    public void run() {
+        if (!startupConfig.isWarmUp()) return;
+
+        // длинный ответ, чтобы нарезка действительно резала
+        String longSample = SAMPLE.repeat(12);
+        long started = System.nanoTime();
+        int chunks = 0;
+        for (int i = 0; i < startupConfig.getWarmUpIterations(); i++) {
+            String markdown = (i & 1) == 0 ? SAMPLE : longSample;
+            chunks += messageSplitter.splitMessageForTelegram(htmlConverter.convertMarkdownToTelegramHtml(markdown), TG_LIMIT).size();
+            chunks += messageSplitter.splitFormattedText(entitiesConverter.convertMarkdownToEntities(markdown), TG_LIMIT).size();
+        }
+        log.info("Rendering warm-up: {} iterations, {} chunks in {} ms", startupConfig.getWarmUpIterations(), chunks,
+                (System.nanoTime() - started) / 1_000_000);
+    }
+}
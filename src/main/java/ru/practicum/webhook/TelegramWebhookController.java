@@ -0,0 +1,90 @@
+package ru.practicum.webhook;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RestController;
+import org.telegram.telegrambots.meta.api.objects.Update;
+import ru.practicum.cluster.ClusterRouter;
+import ru.practicum.config.TelegramBotConfig;
+import ru.practicum.service.GroupFilter;
+import ru.practicum.service.TelegramChatService;
+import ru.practicum.service.UpdateDispatcher;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+// Приём апдейтов от Telegram: проверяем секрет, разбираем Update и сразу отвечаем 200,
+// обработка идёт асинхронно в UpdateDispatcher
+@Slf4j
+@RestController
+@ConditionalOnProperty(name = "telegrambot.mode", havingValue = "webhook")
+public class TelegramWebhookController {
+    private static final String SECRET_HEADER = "X-Telegram-Bot-Api-Secret-Token";
+
+    private final UpdateDispatcher dispatcher;
+    private final ClusterRouter router;
+    private final UpdateForwarder forwarder;
+    private final GroupFilter groupFilter;
+    private final byte[] secret;
+
+    // Читатель Update собран один раз; новые поля Bot API не ломают разбор
+    private final ObjectReader updateReader = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false)
+            .readerFor(Update.class);
+
+    public TelegramWebhookController(TelegramBotConfig config, UpdateDispatcher dispatcher, ClusterRouter router,
+                                     UpdateForwarder forwarder, GroupFilter groupFilter) {
+        this.dispatcher = dispatcher;
+        this.router = router;
+        this.forwarder = forwarder;
+        this.groupFilter = groupFilter;
+        // без секрета не принимаем ничего: WebhookRegistrar остановит запуск с понятной ошибкой
+        this.secret = config.getWebhookSecret() != null
+                ? config.getWebhookSecret().getBytes(StandardCharsets.UTF_8)
+                : new byte[0];
+    }
+
+    @PostMapping("${telegrambot.webhook-path:/telegram/webhook}")
+    public ResponseEntity<Void> onUpdate(@RequestHeader(value = SECRET_HEADER, required = false) String token,
+                                         @RequestHeader(value = UpdateForwarder.FORWARDED_HEADER, required = false) String forwardedBy,
+                                         @RequestBody byte[] body) {
+        // сравнение за постоянное время, чтобы секрет нельзя было подобрать по задержке
+        if (token == null || secret.length == 0 || !MessageDigest.isEqual(secret, token.getBytes(StandardCharsets.UTF_8))) {
+            log.warn("Rejected webhook request with invalid secret token");
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+
+        Update update;
+        try {
+            update = updateReader.readValue(body);
+        } catch (IOException e) {
+            // повтор от Telegram тот же битый JSON не исправит: подтверждаем и пропускаем
+            log.error("Failed to parse webhook update", e);
+            return ResponseEntity.ok().build();
+        }
+
+        // болтовню в группах не пересылаем между экземплярами
+        if (!groupFilter.addressed(update)) {
+            return ResponseEntity.ok().build();
+        }
+
+        // чат другого экземпляра пересылаем владельцу; пересланное уже не гоняем дальше,
+        // даже если кольцо успело перестроиться
+        String ownerUrl = forwardedBy == null ? router.ownerUrl(TelegramChatService.chatIdOf(update)) : null;
+        if (ownerUrl != null) {
+            forwarder.forward(ownerUrl, body, update);
+        } else {
+            dispatcher.dispatch(update);
+        }
+        return ResponseEntity.ok().build();
+    }
+}
@@ -0,0 +1,48 @@
+package ru.practicum.webhook;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.telegram.telegrambots.meta.api.objects.Update;
+import ru.practicum.cluster.ClusterRouter;
+import ru.practicum.config.TelegramBotConfig;
+import ru.practicum.service.UpdateDispatcher;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+
+// Пересылает апдейт экземпляру-владельцу чата; если владелец недоступен — обрабатываем сами
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class UpdateForwarder {
+    public static final String FORWARDED_HEADER = "X-Bot-Forwarded-By";
+
+    private final TelegramBotConfig config;
+    private final ClusterRouter router;
+    private final UpdateDispatcher dispatcher;
+
+    private final HttpClient httpClient = HttpClient.newBuilder()
+            .connectTimeout(Duration.ofSeconds(2))
+            .build();
+
+    public void forward(String ownerUrl, byte[] body, Update update) {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(ownerUrl + config.getWebhookPath()))
+                .timeout(Duration.ofSeconds(5))
+                .header("Content-Type", "application/json")
+                .header("X-Telegram-Bot-Api-Secret-Token", config.getWebhookSecret())
+                .header(FORWARDED_HEADER, router.nodeId())
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body))
+                .build();
+
+        httpClient.sendAsync(request, HttpResponse.BodyHandlers.discarding()).whenComplete((response, e) -> {
+            if (e == null && response.statusCode() == 200) return;
+            log.warn("Forwarding update {} to {} failed ({}), processing locally", update.getUpdateId(), ownerUrl,
+                    e != null ? e.getMessage() : "HTTP " + response.statusCode());
+            dispatcher.dispatch(update);
+        });
+    }
+}
@@ -0,0 +1,62 @@
+package ru.practicum.webhook;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import ru.practicum.config.TelegramBotConfig;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+// Регистрирует webhook через setWebhook: адрес, секрет и типы апдейтов, которые обрабатывает бот
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class WebhookRegistrar {
+    private static final Pattern SECRET = Pattern.compile("[A-Za-z0-9_-]{1,256}");
+    private static final List<String> ALLOWED_UPDATES = List.of("message", "callback_query", "inline_query");
+
+    private final TelegramBotConfig config;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    public void register() throws IOException, InterruptedException {
+        if (config.getWebhookUrl() == null || config.getWebhookUrl().isBlank()) {
+            throw new IllegalStateException("telegrambot.webhook-url is required in webhook mode");
+        }
+        if (config.getWebhookSecret() == null || !SECRET.matcher(config.getWebhookSecret()).matches()) {
+            throw new IllegalStateException("telegrambot.webhook-secret must be 1-256 characters of A-Z, a-z, 0-9, _ and -");
+        }
+
+        String url = config.getWebhookUrl().replaceAll("/+$", "") + config.getWebhookPath();
+        String body = objectMapper.writeValueAsString(Map.of(
+                "url", url,
+                "secret_token", config.getWebhookSecret(),
+                "allowed_updates", ALLOWED_UPDATES,
+                "max_connections", config.getWebhookMaxConnections()
+        ));
+
+        HttpRequest request = HttpRequest.newBuilder(URI.create(config.getApiUrl() + "/bot" + config.getBotToken() + "/setWebhook"))
+                .timeout(Duration.ofSeconds(30))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+
+        try (HttpClient client = HttpClient.newHttpClient()) {
+            HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+            JsonNode result = objectMapper.readTree(response.body());
+            if (!result.path("ok").asBoolean()) {
+                throw new IllegalStateException("setWebhook failed: " + result.path("description").asText(response.body()));
+            }
+        }
+        log.info("Webhook registered: {}", url);
+    }
+}
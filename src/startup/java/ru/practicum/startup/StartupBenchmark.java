@@ -0,0 +1,78 @@
+package ru.practicum.startup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+// Время старта приложения до поднятого контекста: обычный запуск, AOT и AOT + CDS-архив.
+// Каждый вариант — отдельный процесс с -Dspring.context.exit=onRefresh, первый прогон отбрасывается.
+// Запуск: mvn -Pstartup verify -Dstartup.args="--runs=10"
+public class StartupBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parseArgs(args);
+        Path appDir = Path.of(options.getOrDefault("app-dir", "target/app"));
+        Path jar = Path.of(options.getOrDefault("jar", appDir.resolve("TelegramGPT-1.0-SNAPSHOT.jar").toString()));
+        Path archive = appDir.resolve("application.jsa");
+        int runs = Integer.parseInt(options.getOrDefault("runs", "5"));
+
+        if (!Files.exists(jar)) {
+            throw new IllegalStateException("Extracted jar not found: " + jar + " (run mvn -Pstartup package first)");
+        }
+
+        Map<String, List<String>> variants = new LinkedHashMap<>();
+        variants.put("jit", List.of());
+        variants.put("aot", List.of("-Dspring.aot.enabled=true"));
+        if (Files.exists(archive)) {
+            variants.put("aot+cds", List.of("-Dspring.aot.enabled=true", "-XX:SharedArchiveFile=" + archive));
+        } else {
+            System.out.println("No CDS archive at " + archive + ", skipping aot+cds");
+        }
+
+        System.out.printf("%-10s %8s %8s %8s%n", "variant", "p50 ms", "min ms", "max ms");
+        for (Map.Entry<String, List<String>> variant : variants.entrySet()) {
+            // прогрев page cache и файловой системы
+            launch(jar, variant.getValue());
+
+            long[] millis = new long[runs];
+            for (int i = 0; i < runs; i++) {
+                millis[i] = launch(jar, variant.getValue());
+            }
+            Arrays.sort(millis);
+            System.out.printf("%-10s %8d %8d %8d%n", variant.getKey(), millis[runs / 2], millis[0], millis[runs - 1]);
+        }
+    }
+
+    private static long launch(Path jar, List<String> jvmArgs) throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>();
+        command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(jvmArgs);
+        command.add("-Dspring.context.exit=onRefresh");
+        command.add("-jar");
+        command.add(jar.toString());
+
+        long started = System.nanoTime();
+        Process process = new ProcessBuilder(command)
+                .redirectErrorStream(true)
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .start();
+        int exit = process.waitFor();
+        long millis = (System.nanoTime() - started) / 1_000_000;
+        if (exit != 0) {
+            throw new IllegalStateException("Application exited with " + exit + ": " + String.join(" ", command));
+        }
+        return millis;
+    }
+
+    private static Map<String, String> parseArgs(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--")) continue;
+            int eq = arg.indexOf('=');
+            if (eq == -1) options.put(arg.substring(2), "true");
+            else options.put(arg.substring(2, eq), arg.substring(eq + 1));
+        }
+        return options;
+    }
+}